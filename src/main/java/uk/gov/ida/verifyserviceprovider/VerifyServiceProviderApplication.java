@@ -10,9 +10,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.gov.ida.saml.core.IdaSamlBootstrap;
 import uk.gov.ida.verifyserviceprovider.configuration.VerifyServiceProviderConfiguration;
+import uk.gov.ida.verifyserviceprovider.exceptions.BatchTooLargeExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.JerseyViolationExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.JsonProcessingExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.RequestTooLargeExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.ServiceOverloadedExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.factories.VerifyServiceProviderFactory;
 import uk.gov.ida.verifyserviceprovider.listeners.VerifyServiceProviderServerListener;
 import uk.gov.ida.verifyserviceprovider.utils.ConfigurationFileFinder;
@@ -58,6 +61,10 @@ public class VerifyServiceProviderApplication extends Application<VerifyServiceP
         environment.jersey().register(new JerseyViolationExceptionMapper());
         environment.jersey().register(new JsonProcessingExceptionMapper());
         environment.jersey().register(new InvalidEntityIdExceptionMapper());
+        environment.jersey().register(new ServiceOverloadedExceptionMapper());
+        environment.jersey().register(new RequestTooLargeExceptionMapper());
+        environment.jersey().register(new BatchTooLargeExceptionMapper());
+        environment.jersey().register(factory.getRequestSizeLimitFeature());
         environment.jersey().register(factory.getVersionNumberResource());
         environment.jersey().register(factory.getGenerateAuthnRequestResource());
         environment.jersey().register(factory.getTranslateSamlResponseResource());
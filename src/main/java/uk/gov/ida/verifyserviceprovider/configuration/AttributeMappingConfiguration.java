@@ -0,0 +1,34 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.NotNull;
+
+public class AttributeMappingConfiguration {
+
+    @JsonProperty
+    @NotNull
+    private String name;
+
+    @JsonProperty
+    @NotNull
+    private String verifiedName;
+
+    @JsonCreator
+    public AttributeMappingConfiguration(
+        @JsonProperty("name") String name,
+        @JsonProperty("verifiedName") String verifiedName
+    ) {
+        this.name = name;
+        this.verifiedName = verifiedName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVerifiedName() {
+        return verifiedName;
+    }
+}
@@ -0,0 +1,41 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.joda.time.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+public class AuthnRequestPoolConfiguration {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    @JsonProperty
+    @Min(1)
+    private int size = 20;
+
+    @JsonProperty
+    @NotNull
+    private Duration maxAge = Duration.standardMinutes(1);
+
+    @JsonProperty
+    @Min(1)
+    private int refillThreads = 1;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public int getRefillThreads() {
+        return refillThreads;
+    }
+}
@@ -0,0 +1,24 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class BatchConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int maxBatchSize = 100;
+
+    @JsonProperty
+    @Min(1)
+    private int parallelism = 4;
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+}
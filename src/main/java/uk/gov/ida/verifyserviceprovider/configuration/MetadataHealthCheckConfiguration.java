@@ -0,0 +1,16 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class MetadataHealthCheckConfiguration {
+
+    @JsonProperty
+    @Min(100)
+    private long intervalMillis = 5000;
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+}
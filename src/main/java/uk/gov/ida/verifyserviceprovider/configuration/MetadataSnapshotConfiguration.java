@@ -0,0 +1,16 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class MetadataSnapshotConfiguration {
+
+    @JsonProperty
+    private String directory;
+
+    /**
+     * @return where to keep snapshots of the hub and MSA metadata, or null to not keep any
+     */
+    public String getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,24 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.joda.time.Duration;
+
+import javax.validation.constraints.NotNull;
+
+public class ReplayCacheConfiguration {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    @JsonProperty
+    @NotNull
+    private Duration expiryBucketSize = Duration.standardSeconds(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getExpiryBucketSize() {
+        return expiryBucketSize;
+    }
+}
@@ -0,0 +1,32 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class RequestSizeLimitsConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private long translateResponseBytes = 64 * 1024;
+
+    @JsonProperty
+    @Min(1)
+    private long generateRequestBytes = 16 * 1024;
+
+    @JsonProperty
+    @Min(1)
+    private long batchBytes = 8 * 1024 * 1024;
+
+    public long getTranslateResponseBytes() {
+        return translateResponseBytes;
+    }
+
+    public long getGenerateRequestBytes() {
+        return generateRequestBytes;
+    }
+
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+}
@@ -0,0 +1,31 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class SpeculativeDecryptionConfiguration {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    @JsonProperty
+    @Min(1)
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @JsonProperty
+    @Min(1)
+    private int maxQueuedDecryptions = 64;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxQueuedDecryptions() {
+        return maxQueuedDecryptions;
+    }
+}
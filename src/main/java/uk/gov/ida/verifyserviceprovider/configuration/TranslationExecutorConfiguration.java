@@ -0,0 +1,42 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.joda.time.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+public class TranslationExecutorConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @JsonProperty
+    @Min(1)
+    private int maxQueuedTranslations = 64;
+
+    @JsonProperty
+    @NotNull
+    private Duration queueDeadline = Duration.standardSeconds(5);
+
+    @JsonProperty
+    @NotNull
+    private Duration retryAfter = Duration.standardSeconds(1);
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxQueuedTranslations() {
+        return maxQueuedTranslations;
+    }
+
+    public Duration getQueueDeadline() {
+        return queueDeadline;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -10,6 +10,7 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.net.URI;
 import java.security.PrivateKey;
+import java.util.Collections;
 import java.util.List;
 
 public class VerifyServiceProviderConfiguration extends Configuration {
@@ -54,6 +55,59 @@ public class VerifyServiceProviderConfiguration extends Configuration {
     @Valid
     private Duration clockSkew;
 
+    @JsonProperty
+    @NotNull
+    @Valid
+    private AuthnRequestPoolConfiguration authnRequestPool = new AuthnRequestPoolConfiguration();
+
+    @JsonProperty
+    private String requestIdHmacKey;
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private BatchConfiguration batch = new BatchConfiguration();
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private XmlParserPoolConfiguration xmlParserPool = new XmlParserPoolConfiguration();
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private SpeculativeDecryptionConfiguration speculativeDecryption = new SpeculativeDecryptionConfiguration();
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private ReplayCacheConfiguration replayCache = new ReplayCacheConfiguration();
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private TranslationExecutorConfiguration translationExecutor = new TranslationExecutorConfiguration();
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private List<AttributeMappingConfiguration> additionalAttributes = Collections.emptyList();
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private RequestSizeLimitsConfiguration requestSizeLimits = new RequestSizeLimitsConfiguration();
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private MetadataSnapshotConfiguration metadataSnapshots = new MetadataSnapshotConfiguration();
+
+    @JsonProperty
+    @NotNull
+    @Valid
+    private MetadataHealthCheckConfiguration metadataHealthCheck = new MetadataHealthCheckConfiguration();
+
     public List<String> getServiceEntityIds() {
         return serviceEntityIds;
     }
@@ -85,4 +139,48 @@ public class VerifyServiceProviderConfiguration extends Configuration {
     public Duration getClockSkew() {
         return clockSkew;
     }
+
+    public AuthnRequestPoolConfiguration getAuthnRequestPool() {
+        return authnRequestPool;
+    }
+
+    public String getRequestIdHmacKey() {
+        return requestIdHmacKey;
+    }
+
+    public BatchConfiguration getBatch() {
+        return batch;
+    }
+
+    public XmlParserPoolConfiguration getXmlParserPool() {
+        return xmlParserPool;
+    }
+
+    public SpeculativeDecryptionConfiguration getSpeculativeDecryption() {
+        return speculativeDecryption;
+    }
+
+    public ReplayCacheConfiguration getReplayCache() {
+        return replayCache;
+    }
+
+    public TranslationExecutorConfiguration getTranslationExecutor() {
+        return translationExecutor;
+    }
+
+    public List<AttributeMappingConfiguration> getAdditionalAttributes() {
+        return additionalAttributes;
+    }
+
+    public RequestSizeLimitsConfiguration getRequestSizeLimits() {
+        return requestSizeLimits;
+    }
+
+    public MetadataSnapshotConfiguration getMetadataSnapshots() {
+        return metadataSnapshots;
+    }
+
+    public MetadataHealthCheckConfiguration getMetadataHealthCheck() {
+        return metadataHealthCheck;
+    }
 }
@@ -0,0 +1,32 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class XmlParserPoolConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int size = 2 * Runtime.getRuntime().availableProcessors();
+
+    @JsonProperty
+    @Min(1)
+    private int maxElementDepth = 64;
+
+    @JsonProperty
+    @Min(1)
+    private int maxElementCount = 10000;
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxElementDepth() {
+        return maxElementDepth;
+    }
+
+    public int getMaxElementCount() {
+        return maxElementCount;
+    }
+}
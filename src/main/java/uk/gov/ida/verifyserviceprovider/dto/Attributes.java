@@ -7,6 +7,7 @@ import org.apache.commons.collections.CollectionUtils;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include;
 
@@ -20,6 +21,19 @@ public class Attributes {
     private final VerifiableAttribute<Address> address;
     private final List<VerifiableAttribute<Address>> addressHistory;
     private final String cycle3;
+    private final Map<String, VerifiableAttribute<String>> additionalAttributes;
+
+    public Attributes(
+        VerifiableAttribute<String> firstName,
+        VerifiableAttribute<String> middleName,
+        VerifiableAttribute<String> surname,
+        VerifiableAttribute<LocalDate> dateOfBirth,
+        VerifiableAttribute<Address> address,
+        List<VerifiableAttribute<Address>> addressHistory,
+        String cycle3
+    ) {
+        this(firstName, middleName, surname, dateOfBirth, address, addressHistory, cycle3, null);
+    }
 
     @JsonCreator
     public Attributes(
@@ -29,7 +43,8 @@ public class Attributes {
         @JsonProperty("dateOfBirth") VerifiableAttribute<LocalDate> dateOfBirth,
         @JsonProperty("address") VerifiableAttribute<Address> address,
         @JsonProperty("addressHistory") List<VerifiableAttribute<Address>> addressHistory,
-        @JsonProperty("cycle3") String cycle3
+        @JsonProperty("cycle3") String cycle3,
+        @JsonProperty("additionalAttributes") Map<String, VerifiableAttribute<String>> additionalAttributes
     ) {
         this.firstName = firstName;
         this.middleName = middleName;
@@ -38,6 +53,7 @@ public class Attributes {
         this.address = address;
         this.addressHistory = addressHistory;
         this.cycle3 = cycle3;
+        this.additionalAttributes = additionalAttributes;
     }
 
     public VerifiableAttribute<String> getFirstName() {
@@ -68,6 +84,10 @@ public class Attributes {
         return cycle3;
     }
 
+    public Map<String, VerifiableAttribute<String>> getAdditionalAttributes() {
+        return additionalAttributes;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -80,7 +100,8 @@ public class Attributes {
         if (dateOfBirth != null ? !dateOfBirth.equals(that.dateOfBirth) : that.dateOfBirth != null) return false;
         if (address != null ? !address.equals(that.address) : that.address != null) return false;
         if (addressHistory != null ? !(that.addressHistory != null && CollectionUtils.isEqualCollection(addressHistory, that.addressHistory)) : that.addressHistory != null) return false;
-        return cycle3 != null ? cycle3.equals(that.cycle3) : that.cycle3 == null;
+        if (cycle3 != null ? !cycle3.equals(that.cycle3) : that.cycle3 != null) return false;
+        return additionalAttributes != null ? additionalAttributes.equals(that.additionalAttributes) : that.additionalAttributes == null;
     }
 
     @Override
@@ -92,14 +113,15 @@ public class Attributes {
         result = 31 * result + (address != null ? address.hashCode() : 0);
         result = 31 * result + (addressHistory != null ? addressHistory.hashCode() : 0);
         result = 31 * result + (cycle3 != null ? cycle3.hashCode() : 0);
+        result = 31 * result + (additionalAttributes != null ? additionalAttributes.hashCode() : 0);
         return result;
     }
 
     @Override
     public String toString() {
         return String.format(
-            "Attributes{ firstName=%s, middleName=%s, surname=%s, dateOfBirth=%s, address=%s, addressHistory=%s, cycle3=%s}",
-            firstName, middleName, surname, dateOfBirth, address, addressHistory, cycle3);
+            "Attributes{ firstName=%s, middleName=%s, surname=%s, dateOfBirth=%s, address=%s, addressHistory=%s, cycle3=%s, additionalAttributes=%s}",
+            firstName, middleName, surname, dateOfBirth, address, addressHistory, cycle3, additionalAttributes);
     }
 
 }
@@ -0,0 +1,34 @@
+package uk.gov.ida.verifyserviceprovider.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.jersey.errors.ErrorMessage;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResponseBody<T> {
+    private final int index;
+    private final T result;
+    private final ErrorMessage error;
+
+    @JsonCreator
+    public BatchItemResponseBody(@JsonProperty("index") int index,
+                                 @JsonProperty("result") T result,
+                                 @JsonProperty("error") ErrorMessage error) {
+        this.index = index;
+        this.result = result;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public T getResult() {
+        return result;
+    }
+
+    public ErrorMessage getError() {
+        return error;
+    }
+}
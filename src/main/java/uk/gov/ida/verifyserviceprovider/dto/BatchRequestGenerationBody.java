@@ -0,0 +1,30 @@
+package uk.gov.ida.verifyserviceprovider.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class BatchRequestGenerationBody extends RequestGenerationBody {
+
+    private final int count;
+
+    public BatchRequestGenerationBody(LevelOfAssurance levelOfAssurance, String entityId, Integer count) {
+        this(levelOfAssurance, entityId, null, count);
+    }
+
+    @JsonCreator
+    public BatchRequestGenerationBody(
+        @JsonProperty("levelOfAssurance") LevelOfAssurance levelOfAssurance,
+        @JsonProperty("entityId") String entityId,
+        @JsonProperty("binding") Binding binding,
+        @JsonProperty("count") Integer count) {
+        super(levelOfAssurance, entityId, binding);
+        this.count = count == null ? 1 : count;
+    }
+
+    @Min(1)
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,6 @@
+package uk.gov.ida.verifyserviceprovider.dto;
+
+public enum Binding {
+    POST,
+    REDIRECT
+}
@@ -9,13 +9,20 @@ public class RequestGenerationBody {
 
     private final LevelOfAssurance levelOfAssurance;
     private final String entityId;
+    private final Binding binding;
+
+    public RequestGenerationBody(LevelOfAssurance levelOfAssurance, String entityId) {
+        this(levelOfAssurance, entityId, null);
+    }
 
     @JsonCreator
     public RequestGenerationBody(
         @JsonProperty("levelOfAssurance") LevelOfAssurance levelOfAssurance,
-        @JsonProperty("entityId") String entityId) {
+        @JsonProperty("entityId") String entityId,
+        @JsonProperty("binding") Binding binding) {
         this.levelOfAssurance = levelOfAssurance;
         this.entityId = entityId;
+        this.binding = binding == null ? Binding.POST : binding;
     }
 
     @NotNull
@@ -26,4 +33,8 @@ public class RequestGenerationBody {
     public String getEntityId() {
         return entityId;
     }
+
+    public Binding getBinding() {
+        return binding;
+    }
 }
@@ -1,6 +1,7 @@
 package uk.gov.ida.verifyserviceprovider.dto;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.net.URI;
@@ -9,14 +10,21 @@ public class RequestResponseBody {
     private final String samlRequest;
     private final String requestId;
     private final URI ssoLocation;
+    private final URI redirectUrl;
+
+    public RequestResponseBody(String samlRequest, String requestId, URI ssoLocation) {
+        this(samlRequest, requestId, ssoLocation, null);
+    }
 
     @JsonCreator
     public RequestResponseBody(@JsonProperty("samlRequest") String samlRequest,
                                @JsonProperty("requestId") String requestId,
-                               @JsonProperty("ssoLocation") URI ssoLocation) {
+                               @JsonProperty("ssoLocation") URI ssoLocation,
+                               @JsonProperty("redirectUrl") URI redirectUrl) {
         this.samlRequest = samlRequest;
         this.requestId = requestId;
         this.ssoLocation = ssoLocation;
+        this.redirectUrl = redirectUrl;
     }
 
     public String getSamlRequest() {
@@ -30,4 +38,9 @@ public class RequestResponseBody {
     public URI getSsoLocation() {
         return ssoLocation;
     }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public URI getRedirectUrl() {
+        return redirectUrl;
+    }
 }
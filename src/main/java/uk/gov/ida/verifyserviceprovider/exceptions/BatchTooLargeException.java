@@ -0,0 +1,8 @@
+package uk.gov.ida.verifyserviceprovider.exceptions;
+
+public class BatchTooLargeException extends RuntimeException {
+
+    public BatchTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package uk.gov.ida.verifyserviceprovider.exceptions;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import org.apache.http.HttpStatus;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+public class BatchTooLargeExceptionMapper implements ExceptionMapper<BatchTooLargeException> {
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(BatchTooLargeExceptionMapper.class);
+
+    @Override
+    public Response toResponse(BatchTooLargeException exception) {
+        LOG.warn(exception.getMessage());
+
+        return Response
+            .status(HttpStatus.SC_UNPROCESSABLE_ENTITY)
+            .type(MediaType.APPLICATION_JSON_TYPE)
+            .entity(new ErrorMessage(HttpStatus.SC_UNPROCESSABLE_ENTITY, exception.getMessage()))
+            .build();
+    }
+}
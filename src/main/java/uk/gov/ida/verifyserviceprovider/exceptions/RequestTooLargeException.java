@@ -0,0 +1,8 @@
+package uk.gov.ida.verifyserviceprovider.exceptions;
+
+public class RequestTooLargeException extends RuntimeException {
+
+    public RequestTooLargeException(String message) {
+        super(message);
+    }
+}
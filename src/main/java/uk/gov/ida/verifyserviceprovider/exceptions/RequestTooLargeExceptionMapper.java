@@ -0,0 +1,22 @@
+package uk.gov.ida.verifyserviceprovider.exceptions;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import org.apache.http.HttpStatus;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+public class RequestTooLargeExceptionMapper implements ExceptionMapper<RequestTooLargeException> {
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RequestTooLargeExceptionMapper.class);
+
+    @Override
+    public Response toResponse(RequestTooLargeException exception) {
+        LOG.warn(String.format("Rejecting request body. %s", exception.getMessage()));
+
+        return Response
+            .status(HttpStatus.SC_REQUEST_TOO_LONG)
+            .entity(new ErrorMessage(HttpStatus.SC_REQUEST_TOO_LONG, exception.getMessage()))
+            .build();
+    }
+}
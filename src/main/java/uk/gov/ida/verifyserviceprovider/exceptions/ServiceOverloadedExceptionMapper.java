@@ -0,0 +1,24 @@
+package uk.gov.ida.verifyserviceprovider.exceptions;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import org.apache.http.HttpStatus;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+public class ServiceOverloadedExceptionMapper implements ExceptionMapper<ServiceOverloadedException> {
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ServiceOverloadedExceptionMapper.class);
+
+    @Override
+    public Response toResponse(ServiceOverloadedException exception) {
+        LOG.warn(String.format("Shedding request. %s", exception.getMessage()));
+
+        return Response
+            .status(HttpStatus.SC_SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, exception.getRetryAfterSeconds())
+            .entity(new ErrorMessage(HttpStatus.SC_SERVICE_UNAVAILABLE, exception.getMessage()))
+            .build();
+    }
+}
@@ -1,58 +1,99 @@
 package uk.gov.ida.verifyserviceprovider.factories;
 
 import io.dropwizard.setup.Environment;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.impl.MetadataFilterChain;
 import uk.gov.ida.saml.metadata.ExpiredCertificateMetadataFilter;
-import uk.gov.ida.saml.metadata.MetadataResolverConfiguration;
+import uk.gov.ida.saml.metadata.MetadataConfiguration;
 import uk.gov.ida.saml.metadata.PKIXSignatureValidationFilterProvider;
 import uk.gov.ida.saml.metadata.factories.MetadataClientFactory;
-import uk.gov.ida.saml.metadata.factories.MetadataResolverFactory;
+import uk.gov.ida.verifyserviceprovider.configuration.MetadataSnapshotConfiguration;
+import uk.gov.ida.verifyserviceprovider.metadata.JerseyMetadataResolver;
+import uk.gov.ida.verifyserviceprovider.metadata.MetadataSnapshotStore;
+import uk.gov.ida.verifyserviceprovider.metadata.RetainedEntitiesMetadataFilter;
 
 import javax.ws.rs.client.Client;
-import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.util.List;
 
 import static java.util.Arrays.asList;
-import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
 
 public class DropwizardMetadataResolverFactory {
 
-    private final MetadataResolverFactory metadataResolverFactory = new MetadataResolverFactory();
     private final ExpiredCertificateMetadataFilter expiredCertificateMetadataFilter = new ExpiredCertificateMetadataFilter();
     private final MetadataClientFactory metadataClientFactory = new MetadataClientFactory();
+    private final Path snapshotDirectory;
 
-    public MetadataResolver createMetadataResolver(Environment environment, MetadataResolverConfiguration metadataConfiguration) {
-        return createMetadataResolver(environment, metadataConfiguration, true);
+    public DropwizardMetadataResolverFactory(MetadataSnapshotConfiguration snapshotConfiguration) {
+        String directory = snapshotConfiguration.getDirectory();
+        this.snapshotDirectory = directory == null ? null : Paths.get(directory);
     }
 
-    public MetadataResolver createMetadataResolverWithoutSignatureValidation(Environment environment, MetadataResolverConfiguration metadataConfiguration) {
-        return createMetadataResolver(environment, metadataConfiguration, false);
+    public MetadataResolver createMetadataResolver(Environment environment, String name, MetadataConfiguration metadataConfiguration) {
+        return createMetadataResolver(environment, name, metadataConfiguration, true);
     }
 
-    private MetadataResolver createMetadataResolver(Environment environment, MetadataResolverConfiguration metadataConfiguration, boolean validateSignatures) {
-        URI uri = metadataConfiguration.getUri();
-        Long minRefreshDelay = metadataConfiguration.getMinRefreshDelay();
-        Long maxRefreshDelay = metadataConfiguration.getMaxRefreshDelay();
+    public MetadataResolver createMetadataResolverWithoutSignatureValidation(Environment environment, String name, MetadataConfiguration metadataConfiguration) {
+        return createMetadataResolver(environment, name, metadataConfiguration, false);
+    }
+
+    private MetadataResolver createMetadataResolver(Environment environment, String name, MetadataConfiguration metadataConfiguration, boolean validateSignatures) {
         Client client = metadataClientFactory.getClient(environment, metadataConfiguration);
+        MetadataSnapshotStore snapshotStore = getSnapshotStore(name, validateSignatures);
 
-        return metadataResolverFactory.create(
-            client,
-            uri,
-            getMetadataFilters(metadataConfiguration, validateSignatures),
-            minRefreshDelay,
-            maxRefreshDelay
-        );
+        MetadataFilterChain metadataFilterChain = new MetadataFilterChain();
+        metadataFilterChain.setFilters(getMetadataFilters(environment, name, metadataConfiguration, validateSignatures));
+
+        JerseyMetadataResolver metadataResolver = new JerseyMetadataResolver(client, metadataConfiguration.getUri(), snapshotStore, environment.metrics(), name);
+        metadataResolver.setId(name + "-metadata");
+        metadataResolver.setParserPool(XMLObjectProviderRegistrySupport.getParserPool());
+        metadataResolver.setMetadataFilter(metadataFilterChain);
+        metadataResolver.setMinRefreshDelay(metadataConfiguration.getMinRefreshDelay());
+        metadataResolver.setMaxRefreshDelay(metadataConfiguration.getMaxRefreshDelay());
+        metadataResolver.setRequireValidMetadata(true);
+        metadataResolver.setFailFastInitialization(false);
+        try {
+            metadataResolver.initialize();
+        } catch (ComponentInitializationException e) {
+            throw new RuntimeException(e);
+        }
+        return metadataResolver;
     }
 
-    private List<MetadataFilter> getMetadataFilters(MetadataResolverConfiguration metadataConfiguration, boolean validateSignatures) {
+    /**
+     * A snapshot is trusted on nothing more than the digest stored beside it, so only metadata whose signature
+     * is validated again when it is loaded is snapshotted.
+     */
+    private MetadataSnapshotStore getSnapshotStore(String name, boolean validateSignatures) {
+        if (snapshotDirectory == null || !validateSignatures) {
+            return null;
+        }
+        return new MetadataSnapshotStore(snapshotDirectory, name);
+    }
+
+    /**
+     * Everything but the expected entity is dropped straight after signature validation, which needs the
+     * whole document.
+     */
+    private List<MetadataFilter> getMetadataFilters(Environment environment, String name, MetadataConfiguration metadataConfiguration, boolean validateSignatures) {
+        RetainedEntitiesMetadataFilter retainedEntitiesMetadataFilter = new RetainedEntitiesMetadataFilter(
+            singleton(metadataConfiguration.getExpectedEntityId()),
+            environment.metrics(),
+            name
+        );
         if (!validateSignatures) {
-            return emptyList();
+            return singletonList(retainedEntitiesMetadataFilter);
         }
 
         KeyStore metadataTrustStore = metadataConfiguration.getTrustStore();
         PKIXSignatureValidationFilterProvider pkixSignatureValidationFilterProvider = new PKIXSignatureValidationFilterProvider(metadataTrustStore);
-        return asList(pkixSignatureValidationFilterProvider.get(), expiredCertificateMetadataFilter);
+        return asList(pkixSignatureValidationFilterProvider.get(), retainedEntitiesMetadataFilter, expiredCertificateMetadataFilter);
     }
 }
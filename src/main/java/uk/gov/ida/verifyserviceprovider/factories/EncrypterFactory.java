@@ -4,16 +4,27 @@ import org.opensaml.saml.saml2.encryption.Encrypter;
 import org.opensaml.security.credential.BasicCredential;
 import uk.gov.ida.verifyserviceprovider.metadata.MetadataPublicKeyExtractor;
 
+import java.security.PublicKey;
+
 public class EncrypterFactory extends uk.gov.ida.saml.security.EncrypterFactory {
 
     private final MetadataPublicKeyExtractor metadataPublicKeyExtractor;
+    private volatile BasicCredential encryptionCredential;
 
     public EncrypterFactory(MetadataPublicKeyExtractor metadataPublicKeyExtractor) {
         this.metadataPublicKeyExtractor = metadataPublicKeyExtractor;
     }
 
     public Encrypter createEncrypter() {
-        BasicCredential credential = new BasicCredential(metadataPublicKeyExtractor.getEncryptionPublicKey());
-        return super.createEncrypter(credential);
+        return super.createEncrypter(getEncryptionCredential());
+    }
+
+    public BasicCredential getEncryptionCredential() {
+        PublicKey publicKey = metadataPublicKeyExtractor.getEncryptionPublicKey();
+        BasicCredential credential = encryptionCredential;
+        if (credential == null || credential.getPublicKey() != publicKey) {
+            encryptionCredential = credential = new BasicCredential(publicKey);
+        }
+        return credential;
     }
 }
@@ -1,39 +1,63 @@
 package uk.gov.ida.verifyserviceprovider.factories;
 
+import com.codahale.metrics.health.HealthCheck;
 import io.dropwizard.setup.Environment;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.security.crypto.KeySupport;
 import uk.gov.ida.saml.security.PublicKeyFactory;
 import uk.gov.ida.shared.utils.manifest.ManifestReader;
+import uk.gov.ida.verifyserviceprovider.configuration.AuthnRequestPoolConfiguration;
+import uk.gov.ida.verifyserviceprovider.configuration.BatchConfiguration;
+import uk.gov.ida.verifyserviceprovider.configuration.ReplayCacheConfiguration;
+import uk.gov.ida.verifyserviceprovider.configuration.SpeculativeDecryptionConfiguration;
+import uk.gov.ida.verifyserviceprovider.configuration.TranslationExecutorConfiguration;
 import uk.gov.ida.verifyserviceprovider.configuration.VerifyServiceProviderConfiguration;
 import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.HmacRequestIdGenerator;
+import uk.gov.ida.verifyserviceprovider.factories.saml.PooledAuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.RedirectBindingEncoder;
+import uk.gov.ida.verifyserviceprovider.factories.saml.RequestIdGenerator;
 import uk.gov.ida.verifyserviceprovider.factories.saml.ResponseFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.SecureRandomRequestIdGenerator;
 import uk.gov.ida.verifyserviceprovider.healthcheck.MetadataHealthCheck;
+import uk.gov.ida.verifyserviceprovider.healthcheck.ScheduledHealthCheck;
 import uk.gov.ida.verifyserviceprovider.metadata.MetadataPublicKeyExtractor;
 import uk.gov.ida.verifyserviceprovider.resources.GenerateAuthnRequestResource;
+import uk.gov.ida.verifyserviceprovider.resources.RequestSizeLimitFeature;
 import uk.gov.ida.verifyserviceprovider.resources.TranslateSamlResponseResource;
 import uk.gov.ida.verifyserviceprovider.resources.VersionNumberResource;
+import uk.gov.ida.verifyserviceprovider.saml.XmlParserPool;
+import uk.gov.ida.verifyserviceprovider.services.AttributeTranslationService;
+import uk.gov.ida.verifyserviceprovider.services.BatchProcessor;
 import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
+import uk.gov.ida.verifyserviceprovider.services.ReplayCache;
+import uk.gov.ida.verifyserviceprovider.services.SheddingExecutor;
 import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
 
 import java.security.KeyException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 
 public class VerifyServiceProviderFactory {
 
-    private final DropwizardMetadataResolverFactory metadataResolverFactory = new DropwizardMetadataResolverFactory();
+    private final DropwizardMetadataResolverFactory metadataResolverFactory;
     private final Environment environment;
     private final VerifyServiceProviderConfiguration configuration;
     private final ResponseFactory responseFactory;
 
     private volatile MetadataResolver hubMetadataResolver;
     private volatile MetadataResolver msaMetadataResolver;
+    private volatile BatchProcessor batchProcessor;
     private final DateTimeComparator dateTimeComparator;
     private final EntityIdService entityIdService;
     private final ManifestReader manifestReader;
@@ -44,7 +68,11 @@ public class VerifyServiceProviderFactory {
     ) throws KeyException {
         this.environment = environment;
         this.configuration = configuration;
-        this.responseFactory = new ResponseFactory(getDecryptionKeyPairs(configuration.getSamlPrimaryEncryptionKey(), configuration.getSamlSecondaryEncryptionKey()));
+        this.metadataResolverFactory = new DropwizardMetadataResolverFactory(configuration.getMetadataSnapshots());
+        this.responseFactory = new ResponseFactory(
+            getDecryptionKeyPairs(configuration.getSamlPrimaryEncryptionKey(), configuration.getSamlSecondaryEncryptionKey()),
+            new XmlParserPool(configuration.getXmlParserPool(), environment.metrics())
+        );
         this.dateTimeComparator = new DateTimeComparator(configuration.getClockSkew());
         this.entityIdService = new EntityIdService(configuration.getServiceEntityIds());
         this.manifestReader = new ManifestReader();
@@ -62,65 +90,186 @@ public class VerifyServiceProviderFactory {
         return new KeyPair(KeySupport.derivePublicKey(key), key);
     }
 
-    public MetadataHealthCheck getHubMetadataHealthCheck() {
-        return new MetadataHealthCheck(
-            getHubMetadataResolver(),
-            configuration.getVerifyHubMetadata().getExpectedEntityId()
+    public HealthCheck getHubMetadataHealthCheck() {
+        return scheduleHealthCheck(
+            new MetadataHealthCheck(getHubMetadataResolver(), configuration.getVerifyHubMetadata().getExpectedEntityId()),
+            "hub-metadata-healthcheck-%d"
+        );
+    }
+
+    public HealthCheck getMsaMetadataHealthCheck() {
+        return scheduleHealthCheck(
+            new MetadataHealthCheck(getMsaMetadataResolver(), configuration.getMsaMetadata().getExpectedEntityId()),
+            "msa-metadata-healthcheck-%d"
         );
     }
 
-    public MetadataHealthCheck getMsaMetadataHealthCheck() {
-        return new MetadataHealthCheck(
-            getMsaMetadataResolver(),
-            configuration.getMsaMetadata().getExpectedEntityId()
+    private HealthCheck scheduleHealthCheck(HealthCheck healthCheck, String threadNameFormat) {
+        ScheduledHealthCheck scheduledHealthCheck = new ScheduledHealthCheck(
+            healthCheck,
+            environment.lifecycle().scheduledExecutorService(threadNameFormat).build(),
+            configuration.getMetadataHealthCheck().getIntervalMillis()
         );
+        environment.lifecycle().manage(scheduledHealthCheck);
+        return scheduledHealthCheck;
     }
 
     public GenerateAuthnRequestResource getGenerateAuthnRequestResource() throws Exception {
         MetadataPublicKeyExtractor metadataPublicKeyExtractor = new MetadataPublicKeyExtractor(
             configuration.getVerifyHubMetadata().getExpectedEntityId(),
             getHubMetadataResolver(),
-            new PublicKeyFactory()
+            new PublicKeyFactory(),
+            environment.metrics()
         );
         EncrypterFactory encrypterFactory = new EncrypterFactory(metadataPublicKeyExtractor);
 
         PrivateKey signingKey = configuration.getSamlSigningKey();
 
-        AuthnRequestFactory authnRequestFactory = new AuthnRequestFactory(
-                configuration.getHubSsoLocation(),
-                createKeyPair(signingKey),
-                manifestReader, encrypterFactory
-        );
+        AuthnRequestFactory authnRequestFactory = createAuthnRequestFactory(createKeyPair(signingKey), encrypterFactory);
 
         return new GenerateAuthnRequestResource(
             authnRequestFactory,
             configuration.getHubSsoLocation(),
-            entityIdService
+            entityIdService,
+            getBatchProcessor(),
+            new RedirectBindingEncoder(signingKey)
         );
     }
 
+    private AuthnRequestFactory createAuthnRequestFactory(KeyPair signingKeyPair, EncrypterFactory encrypterFactory) {
+        AuthnRequestPoolConfiguration poolConfiguration = configuration.getAuthnRequestPool();
+        if (!poolConfiguration.isEnabled()) {
+            return new AuthnRequestFactory(
+                configuration.getHubSsoLocation(),
+                signingKeyPair,
+                manifestReader,
+                encrypterFactory,
+                createRequestIdGenerator()
+            );
+        }
+
+        return new PooledAuthnRequestFactory(
+            configuration.getHubSsoLocation(),
+            signingKeyPair,
+            manifestReader,
+            encrypterFactory,
+            createRequestIdGenerator(),
+            configuration.getServiceEntityIds(),
+            poolConfiguration,
+            environment.lifecycle().scheduledExecutorService("authn-request-pool-%d")
+                .threads(poolConfiguration.getRefillThreads())
+                .build(),
+            environment.metrics()
+        );
+    }
+
+    private RequestIdGenerator createRequestIdGenerator() {
+        String hmacKey = configuration.getRequestIdHmacKey();
+        if (hmacKey == null) {
+            return new SecureRandomRequestIdGenerator();
+        }
+        return new HmacRequestIdGenerator(Base64.getDecoder().decode(hmacKey));
+    }
+
     public TranslateSamlResponseResource getTranslateSamlResponseResource() throws ComponentInitializationException {
         return new TranslateSamlResponseResource(
             responseFactory.createResponseService(
                 getHubMetadataResolver(),
-                responseFactory.createAssertionTranslator(getMsaMetadataResolver(), dateTimeComparator),
-                dateTimeComparator
+                responseFactory.createAssertionTranslator(
+                    getMsaMetadataResolver(),
+                    createReplayCache(),
+                    new AttributeTranslationService(configuration.getAdditionalAttributes()),
+                    environment.metrics()
+                ),
+                dateTimeComparator,
+                configuration.getVerifyHubMetadata().getExpectedEntityId(),
+                createSpeculativeDecryptionExecutor(),
+                environment.metrics()
             ),
-            entityIdService
+            entityIdService,
+            getBatchProcessor(),
+            createTranslationExecutor()
         );
     }
 
+    private SheddingExecutor createTranslationExecutor() {
+        TranslationExecutorConfiguration translationExecutor = configuration.getTranslationExecutor();
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(translationExecutor.getMaxQueuedTranslations());
+        return new SheddingExecutor(
+            "translate-response",
+            environment.lifecycle().executorService("translate-response-%d")
+                .minThreads(translationExecutor.getThreads())
+                .maxThreads(translationExecutor.getThreads())
+                .workQueue(queue)
+                .rejectionPolicy(new ThreadPoolExecutor.AbortPolicy())
+                .build(),
+            queue,
+            translationExecutor.getQueueDeadline(),
+            translationExecutor.getRetryAfter(),
+            environment.metrics()
+        );
+    }
+
+    private ReplayCache createReplayCache() {
+        ReplayCacheConfiguration replayCache = configuration.getReplayCache();
+        if (!replayCache.isEnabled()) {
+            return null;
+        }
+        return new ReplayCache(replayCache.getExpiryBucketSize(), environment.metrics());
+    }
+
+    private ExecutorService createSpeculativeDecryptionExecutor() {
+        SpeculativeDecryptionConfiguration speculativeDecryption = configuration.getSpeculativeDecryption();
+        if (!speculativeDecryption.isEnabled()) {
+            return null;
+        }
+        return environment.lifecycle().executorService("speculative-decryption-%d")
+            .minThreads(speculativeDecryption.getThreads())
+            .maxThreads(speculativeDecryption.getThreads())
+            .workQueue(new ArrayBlockingQueue<>(speculativeDecryption.getMaxQueuedDecryptions()))
+            .rejectionPolicy(new ThreadPoolExecutor.AbortPolicy())
+            .build();
+    }
+
     public VersionNumberResource getVersionNumberResource() {
         return new VersionNumberResource(manifestReader);
     }
 
+    public RequestSizeLimitFeature getRequestSizeLimitFeature() {
+        return new RequestSizeLimitFeature(configuration.getRequestSizeLimits(), environment.metrics());
+    }
+
+    private BatchProcessor getBatchProcessor() {
+        BatchProcessor processor = batchProcessor;
+        if (processor == null) {
+            synchronized (this) {
+                processor = batchProcessor;
+                if (processor == null) {
+                    BatchConfiguration batchConfiguration = configuration.getBatch();
+                    batchProcessor = processor = new BatchProcessor(
+                        environment.lifecycle().executorService("batch-%d")
+                            .minThreads(batchConfiguration.getParallelism())
+                            .maxThreads(batchConfiguration.getParallelism())
+                            .workQueue(new ArrayBlockingQueue<>(batchConfiguration.getMaxBatchSize()))
+                            .rejectionPolicy(new ThreadPoolExecutor.AbortPolicy())
+                            .build(),
+                        batchConfiguration.getMaxBatchSize(),
+                        environment.getObjectMapper(),
+                        environment.getValidator()
+                    );
+                }
+            }
+        }
+        return processor;
+    }
+
     private MetadataResolver getHubMetadataResolver() {
         MetadataResolver resolver = hubMetadataResolver;
         if (resolver == null) {
             synchronized (this) {
                 resolver = hubMetadataResolver;
                 if (resolver == null) {
-                    hubMetadataResolver = resolver = metadataResolverFactory.createMetadataResolver(environment, configuration.getVerifyHubMetadata());
+                    hubMetadataResolver = resolver = metadataResolverFactory.createMetadataResolver(environment, "hub", configuration.getVerifyHubMetadata());
                 }
             }
         }
@@ -133,7 +282,7 @@ public class VerifyServiceProviderFactory {
             synchronized (this) {
                 resolver = msaMetadataResolver;
                 if (resolver == null) {
-                    msaMetadataResolver = resolver = metadataResolverFactory.createMetadataResolverWithoutSignatureValidation(environment, configuration.getMsaMetadata());
+                    msaMetadataResolver = resolver = metadataResolverFactory.createMetadataResolverWithoutSignatureValidation(environment, "msa", configuration.getMsaMetadata());
                 }
             }
         }
@@ -3,6 +3,7 @@ package uk.gov.ida.verifyserviceprovider.factories.saml;
 import org.joda.time.DateTime;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.saml.common.SAMLRuntimeException;
 import org.opensaml.saml.saml2.core.Attribute;
 import org.opensaml.saml.saml2.core.AuthnRequest;
@@ -13,14 +14,15 @@ import org.opensaml.saml.saml2.core.impl.AttributeBuilder;
 import org.opensaml.saml.saml2.core.impl.AuthnRequestBuilder;
 import org.opensaml.saml.saml2.core.impl.ExtensionsBuilder;
 import org.opensaml.saml.saml2.core.impl.IssuerBuilder;
+import org.opensaml.security.credential.BasicCredential;
 import org.opensaml.xmlsec.algorithm.descriptors.DigestSHA256;
 import org.opensaml.xmlsec.algorithm.descriptors.SignatureRSASHA256;
 import org.opensaml.xmlsec.encryption.support.EncryptionException;
-import org.opensaml.xmlsec.signature.Signature;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.opensaml.xmlsec.signature.support.Signer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
 import uk.gov.ida.saml.core.extensions.versioning.Version;
 import uk.gov.ida.saml.core.extensions.versioning.VersionImpl;
 import uk.gov.ida.saml.core.extensions.versioning.application.ApplicationVersion;
@@ -32,71 +34,114 @@ import uk.gov.ida.shared.utils.manifest.ManifestReader;
 import uk.gov.ida.verifyserviceprovider.VerifyServiceProviderApplication;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
+import uk.gov.ida.verifyserviceprovider.utils.PublicKeyFingerprint;
 
 import java.io.IOException;
 import java.net.URI;
 import java.security.KeyPair;
+import java.security.PublicKey;
 import java.util.Collections;
-import java.util.UUID;
 
 public class AuthnRequestFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(AuthnRequestFactory.class);
 
-    private final URI destination;
+    private final String destination;
     private final ManifestReader manifestReader;
     private final EncrypterFactory encrypterFactory;
-    private KeyPair signingKeyPair;
+    private final SignatureFactory signatureFactory;
+    private final RequestIdGenerator requestIdGenerator;
+    private volatile EncryptedVersions encryptedVersions;
 
     public AuthnRequestFactory(
             URI destination,
             KeyPair signingKeyPair,
             ManifestReader manifestReader,
-            EncrypterFactory encrypterFactory
+            EncrypterFactory encrypterFactory,
+            RequestIdGenerator requestIdGenerator
     ) {
-        this.destination = destination;
+        this.destination = destination.toString();
         this.manifestReader = manifestReader;
         this.encrypterFactory = encrypterFactory;
-        this.signingKeyPair = signingKeyPair;
+        this.signatureFactory = createSignatureFactory(signingKeyPair);
+        this.requestIdGenerator = requestIdGenerator;
     }
 
     public AuthnRequest build(LevelOfAssurance levelOfAssurance, String serviceEntityId) {
+        AuthnRequest authnRequest = buildUnsigned(levelOfAssurance, serviceEntityId);
+        authnRequest.setSignature(signatureFactory.createSignature());
+
+        try {
+            XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(authnRequest).marshall(authnRequest);
+            Signer.signObject(authnRequest.getSignature());
+        } catch (SignatureException | MarshallingException e) {
+            throw new SAMLRuntimeException("Unknown problem while signing SAML object", e);
+        }
+
+        return authnRequest;
+    }
+
+    /**
+     * Builds an AuthnRequest without an enveloped signature, for bindings such as HTTP-Redirect which sign
+     * the encoded message instead.
+     */
+    public AuthnRequest buildUnsigned(LevelOfAssurance levelOfAssurance, String serviceEntityId) {
         AuthnRequest authnRequest = new AuthnRequestBuilder().buildObject();
-        authnRequest.setID(String.format("_%s", UUID.randomUUID()));
+        authnRequest.setID(requestIdGenerator.generate());
         authnRequest.setIssueInstant(DateTime.now());
         authnRequest.setForceAuthn(false);
-        authnRequest.setDestination(destination.toString());
+        authnRequest.setDestination(destination);
         authnRequest.setExtensions(createExtensions());
 
         Issuer issuer = new IssuerBuilder().buildObject();
         issuer.setValue(serviceEntityId);
         authnRequest.setIssuer(issuer);
 
-        authnRequest.setSignature(createSignature());
-
-        try {
-            XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(authnRequest).marshall(authnRequest);
-            Signer.signObject(authnRequest.getSignature());
-        } catch (SignatureException | MarshallingException e) {
-            throw new SAMLRuntimeException("Unknown problem while signing SAML object", e);
-        }
-
         return authnRequest;
     }
 
     private Extensions createExtensions() {
         Extensions extensions = new ExtensionsBuilder().buildObject();
+        extensions.getUnknownXMLObjects().add(getEncryptedVersionsAttribute());
+        return extensions;
+    }
+
+    /**
+     * The Versions attribute never changes for a running application, so it is only encrypted once for each
+     * hub encryption key. Each AuthnRequest gets its own copy of the marshalled ciphertext, and the attribute
+     * is encrypted again when hub metadata publishes a different encryption key.
+     */
+    private EncryptedAttribute getEncryptedVersionsAttribute() {
+        BasicCredential encryptionCredential = encrypterFactory.getEncryptionCredential();
+        EncryptedVersions cached = encryptedVersions;
+        if (cached != null && cached.publicKey == encryptionCredential.getPublicKey()) {
+            return cached.copy();
+        }
+
+        String fingerprint = PublicKeyFingerprint.sha256(encryptionCredential.getPublicKey());
+        if (cached == null || !cached.fingerprint.equals(fingerprint)) {
+            cached = rebuildEncryptedVersions(encryptionCredential, fingerprint);
+        }
+        return cached.copy();
+    }
+
+    private synchronized EncryptedVersions rebuildEncryptedVersions(BasicCredential encryptionCredential, String fingerprint) {
+        EncryptedVersions cached = encryptedVersions;
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            return cached;
+        }
+
         Attribute versionsAttribute = new AttributeBuilder().buildObject();
         versionsAttribute.setName("Versions");
         versionsAttribute.getAttributeValues().add(createApplicationVersion());
-        extensions.getUnknownXMLObjects().add(encrypt(versionsAttribute));
-        return extensions;
-    }
 
-    private EncryptedAttribute encrypt(Attribute attribute) {
         try {
-            return encrypterFactory.createEncrypter().encrypt(attribute);
-        } catch (EncryptionException e) {
+            EncryptedAttribute encryptedAttribute = encrypterFactory.createEncrypter(encryptionCredential).encrypt(versionsAttribute);
+            Element element = XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(encryptedAttribute).marshall(encryptedAttribute);
+            LOG.info(String.format("Encrypted Versions extension for hub encryption key with fingerprint %s", fingerprint));
+            encryptedVersions = cached = new EncryptedVersions(encryptionCredential.getPublicKey(), fingerprint, element);
+            return cached;
+        } catch (EncryptionException | MarshallingException e) {
             throw new RuntimeException(e);
         }
     }
@@ -118,12 +163,35 @@ public class AuthnRequestFactory {
         return version;
     }
 
-    private Signature createSignature() {
+    private SignatureFactory createSignatureFactory(KeyPair signingKeyPair) {
         IdaKeyStore keyStore = new IdaKeyStore(signingKeyPair, Collections.emptyList());
         IdaKeyStoreCredentialRetriever keyStoreCredentialRetriever = new IdaKeyStoreCredentialRetriever(keyStore);
         SignatureRSASHA256 signatureAlgorithm = new SignatureRSASHA256();
         DigestSHA256 digestAlgorithm = new DigestSHA256();
-        SignatureFactory signatureFactory = new SignatureFactory(keyStoreCredentialRetriever, signatureAlgorithm, digestAlgorithm);
-        return signatureFactory.createSignature();
+        return new SignatureFactory(keyStoreCredentialRetriever, signatureAlgorithm, digestAlgorithm);
+    }
+
+    private static class EncryptedVersions {
+        private final PublicKey publicKey;
+        private final String fingerprint;
+        private final Element element;
+
+        private EncryptedVersions(PublicKey publicKey, String fingerprint, Element element) {
+            this.publicKey = publicKey;
+            this.fingerprint = fingerprint;
+            this.element = element;
+        }
+
+        private EncryptedAttribute copy() {
+            Element clonedElement;
+            synchronized (element) {
+                clonedElement = (Element) element.cloneNode(true);
+            }
+            try {
+                return (EncryptedAttribute) XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshaller(clonedElement).unmarshall(clonedElement);
+            } catch (UnmarshallingException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 }
@@ -0,0 +1,77 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import uk.gov.ida.verifyserviceprovider.utils.Hex;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Generates request IDs made up of 128 random bits followed by a truncated HMAC-SHA256 of those bits,
+ * so that an ID can later be checked as one issued by a VSP holding the same key.
+ */
+public class HmacRequestIdGenerator implements RequestIdGenerator {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MAC_BYTES = 16;
+    private static final int ID_LENGTH = 1 + (SecureRandomRequestIdGenerator.RANDOM_BYTES + MAC_BYTES) * 2;
+
+    private final ThreadLocal<Mac> mac;
+
+    public HmacRequestIdGenerator(byte[] key) {
+        SecretKeySpec secretKey = new SecretKeySpec(key, ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> createMac(secretKey));
+        this.mac.get();
+    }
+
+    @Override
+    public String generate() {
+        byte[] random = SecureRandomRequestIdGenerator.randomBytes();
+        return "_" + Hex.encode(random) + Hex.encode(macOf(random));
+    }
+
+    public boolean isIssuedByThisService(String requestId) {
+        if (requestId == null || requestId.length() != ID_LENGTH || requestId.charAt(0) != '_') {
+            return false;
+        }
+
+        byte[] bytes = decodeHex(requestId.substring(1));
+        if (bytes == null) {
+            return false;
+        }
+
+        byte[] random = Arrays.copyOfRange(bytes, 0, SecureRandomRequestIdGenerator.RANDOM_BYTES);
+        byte[] expectedMac = Arrays.copyOfRange(bytes, SecureRandomRequestIdGenerator.RANDOM_BYTES, bytes.length);
+        return MessageDigest.isEqual(expectedMac, macOf(random));
+    }
+
+    private byte[] macOf(byte[] random) {
+        return Arrays.copyOf(mac.get().doFinal(random), MAC_BYTES);
+    }
+
+    private static byte[] decodeHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static Mac createMac(SecretKeySpec secretKey) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.shared.utils.manifest.ManifestReader;
+import uk.gov.ida.verifyserviceprovider.configuration.AuthnRequestPoolConfiguration;
+import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
+import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
+
+import java.net.URI;
+import java.security.KeyPair;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Serves signed AuthnRequests from a pool per service entity ID, which background threads keep topped up,
+ * so that the RSA signing operation is normally not on the request thread. Pooled requests are discarded
+ * once their IssueInstant is older than the configured maximum age, and requests are built inline whenever
+ * the pool is empty.
+ */
+public class PooledAuthnRequestFactory extends AuthnRequestFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledAuthnRequestFactory.class);
+
+    private final Map<String, Pool> pools = new HashMap<>();
+    private final int size;
+    private final long maxAgeMillis;
+    private final ScheduledExecutorService executor;
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter expired;
+    private final Timer refillLag;
+
+    public PooledAuthnRequestFactory(
+            URI destination,
+            KeyPair signingKeyPair,
+            ManifestReader manifestReader,
+            EncrypterFactory encrypterFactory,
+            RequestIdGenerator requestIdGenerator,
+            List<String> serviceEntityIds,
+            AuthnRequestPoolConfiguration configuration,
+            ScheduledExecutorService executor,
+            MetricRegistry metricRegistry
+    ) {
+        super(destination, signingKeyPair, manifestReader, encrypterFactory, requestIdGenerator);
+        this.size = configuration.getSize();
+        this.maxAgeMillis = configuration.getMaxAge().getMillis();
+        this.executor = executor;
+        this.hits = metricRegistry.meter(name(PooledAuthnRequestFactory.class, "hits"));
+        this.misses = metricRegistry.meter(name(PooledAuthnRequestFactory.class, "misses"));
+        this.expired = metricRegistry.meter(name(PooledAuthnRequestFactory.class, "expired"));
+        this.refillLag = metricRegistry.timer(name(PooledAuthnRequestFactory.class, "refill-lag"));
+
+        for (String serviceEntityId : serviceEntityIds) {
+            Pool pool = new Pool(serviceEntityId);
+            pools.put(serviceEntityId, pool);
+            metricRegistry.register(name(PooledAuthnRequestFactory.class, "depth", serviceEntityId), (Gauge<Integer>) pool.entries::size);
+        }
+
+        long refillIntervalMillis = Math.max(100, Math.min(1000, maxAgeMillis / 4));
+        executor.scheduleWithFixedDelay(this::refillAll, 0, refillIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The level of assurance is not part of the AuthnRequest, so pooled requests can be served for any level.
+     */
+    @Override
+    public AuthnRequest build(LevelOfAssurance levelOfAssurance, String serviceEntityId) {
+        Pool pool = pools.get(serviceEntityId);
+        if (pool == null) {
+            return super.build(levelOfAssurance, serviceEntityId);
+        }
+
+        AuthnRequest authnRequest = pool.take();
+        requestRefill(pool);
+        if (authnRequest == null) {
+            misses.mark();
+            return super.build(levelOfAssurance, serviceEntityId);
+        }
+
+        hits.mark();
+        return authnRequest;
+    }
+
+    private void requestRefill(Pool pool) {
+        if (pool.refillPending.compareAndSet(false, true)) {
+            long requestedAt = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    pool.refill();
+                    refillLag.update(System.nanoTime() - requestedAt, TimeUnit.NANOSECONDS);
+                } finally {
+                    pool.refillPending.set(false);
+                }
+            });
+        }
+    }
+
+    private void refillAll() {
+        for (Pool pool : pools.values()) {
+            pool.evictExpired();
+            pool.refill();
+        }
+    }
+
+    private boolean isExpired(AuthnRequest authnRequest) {
+        return System.currentTimeMillis() - authnRequest.getIssueInstant().getMillis() >= maxAgeMillis;
+    }
+
+    private class Pool {
+        private final String serviceEntityId;
+        private final BlockingDeque<AuthnRequest> entries = new LinkedBlockingDeque<>(size);
+        private final AtomicBoolean refillPending = new AtomicBoolean(false);
+
+        private Pool(String serviceEntityId) {
+            this.serviceEntityId = serviceEntityId;
+        }
+
+        private AuthnRequest take() {
+            AuthnRequest authnRequest = entries.pollFirst();
+            while (authnRequest != null && isExpired(authnRequest)) {
+                expired.mark();
+                authnRequest = entries.pollFirst();
+            }
+            return authnRequest;
+        }
+
+        private void evictExpired() {
+            AuthnRequest oldest = entries.peekFirst();
+            while (oldest != null && isExpired(oldest)) {
+                if (entries.removeFirstOccurrence(oldest)) {
+                    expired.mark();
+                }
+                oldest = entries.peekFirst();
+            }
+        }
+
+        private void refill() {
+            try {
+                while (entries.remainingCapacity() > 0) {
+                    AuthnRequest authnRequest = PooledAuthnRequestFactory.super.build(null, serviceEntityId);
+                    if (!entries.offerLast(authnRequest)) {
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOG.warn(String.format("Failed to refill AuthnRequest pool for entityId: %s. %s", serviceEntityId, e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.saml.common.SAMLRuntimeException;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes unsigned AuthnRequests for the SAML HTTP-Redirect binding: the XML is DEFLATEd and base64 encoded
+ * into the SAMLRequest query parameter, and the query string is signed with RSA-SHA256 in a detached
+ * Signature parameter.
+ */
+public class RedirectBindingEncoder {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    private final PrivateKey signingKey;
+
+    public RedirectBindingEncoder(PrivateKey signingKey) {
+        this.signingKey = signingKey;
+    }
+
+    public String deflateAndEncode(AuthnRequest authnRequest) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(Base64.getEncoder().wrap(buffer), deflater)) {
+                SerializeSupport.writeNode(marshall(authnRequest), deflaterStream);
+            }
+            return buffer.toString(StandardCharsets.US_ASCII.name());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public URI createRedirectUrl(URI ssoLocation, String encodedSamlRequest) {
+        String query = "SAMLRequest=" + urlEncode(encodedSamlRequest)
+            + "&SigAlg=" + urlEncode(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        String signedQuery = query + "&Signature=" + urlEncode(sign(query));
+
+        String location = ssoLocation.toString();
+        return URI.create(location + (ssoLocation.getRawQuery() == null ? "?" : "&") + signedQuery);
+    }
+
+    private Element marshall(AuthnRequest authnRequest) {
+        if (authnRequest.getDOM() != null) {
+            return authnRequest.getDOM();
+        }
+        try {
+            return XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(authnRequest).marshall(authnRequest);
+        } catch (MarshallingException e) {
+            throw new SAMLRuntimeException("Unknown problem while marshalling SAML object", e);
+        }
+    }
+
+    private String sign(String query) {
+        try {
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initSign(signingKey);
+            signature.update(query.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new SAMLRuntimeException("Unknown problem while signing SAML redirect query string", e);
+        }
+    }
+
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
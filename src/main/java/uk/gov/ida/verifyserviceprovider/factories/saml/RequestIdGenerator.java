@@ -0,0 +1,8 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+/**
+ * Generates the IDs of AuthnRequests. IDs must be valid NCNames, so they start with an underscore.
+ */
+public interface RequestIdGenerator {
+    String generate();
+}
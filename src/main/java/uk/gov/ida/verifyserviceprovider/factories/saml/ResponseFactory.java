@@ -1,27 +1,34 @@
 package uk.gov.ida.verifyserviceprovider.factories.saml;
 
+import com.codahale.metrics.MetricRegistry;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.impl.PredicateRoleDescriptorResolver;
 import org.opensaml.saml.saml2.core.Response;
 import org.opensaml.saml.security.impl.MetadataCredentialResolver;
+import org.opensaml.security.credential.CredentialResolver;
 import org.opensaml.xmlsec.config.DefaultSecurityConfigurationBootstrap;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
-import uk.gov.ida.saml.deserializers.OpenSamlXMLObjectUnmarshaller;
 import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
-import uk.gov.ida.saml.deserializers.parser.SamlObjectParser;
 import uk.gov.ida.saml.deserializers.validators.Base64StringDecoder;
 import uk.gov.ida.saml.deserializers.validators.NotNullSamlStringValidator;
-import uk.gov.ida.saml.security.AssertionDecrypter;
 import uk.gov.ida.saml.security.DecrypterFactory;
-import uk.gov.ida.saml.security.IdaKeyStore;
-import uk.gov.ida.saml.security.IdaKeyStoreCredentialRetriever;
 import uk.gov.ida.saml.security.MetadataBackedSignatureValidator;
 import uk.gov.ida.saml.security.SamlAssertionsSignatureValidator;
 import uk.gov.ida.saml.security.SamlMessageSignatureValidator;
 import uk.gov.ida.saml.security.validators.encryptedelementtype.EncryptionAlgorithmValidator;
 import uk.gov.ida.saml.security.validators.signature.SamlResponseSignatureValidator;
+import uk.gov.ida.verifyserviceprovider.metadata.CachingMetadataCredentialResolver;
+import uk.gov.ida.verifyserviceprovider.metadata.IndexedMetadataCredentialResolver;
+import uk.gov.ida.verifyserviceprovider.metadata.JerseyMetadataResolver;
+import uk.gov.ida.verifyserviceprovider.saml.KeyHintedAssertionDecrypter;
+import uk.gov.ida.verifyserviceprovider.saml.PooledResponseUnmarshaller;
+import uk.gov.ida.verifyserviceprovider.saml.ResponsePreScanner;
+import uk.gov.ida.verifyserviceprovider.saml.SpeculativeAssertionDecrypter;
+import uk.gov.ida.verifyserviceprovider.saml.XmlParserPool;
 import uk.gov.ida.verifyserviceprovider.services.AssertionTranslator;
+import uk.gov.ida.verifyserviceprovider.services.AttributeTranslationService;
+import uk.gov.ida.verifyserviceprovider.services.ReplayCache;
 import uk.gov.ida.verifyserviceprovider.services.ResponseService;
 import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
 import uk.gov.ida.verifyserviceprovider.validators.AssertionValidator;
@@ -34,82 +41,105 @@ import uk.gov.ida.verifyserviceprovider.validators.TimeRestrictionValidator;
 
 import java.security.KeyPair;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 public class ResponseFactory {
 
     private static final NotNullSamlStringValidator notNullSamlStringValidator = new NotNullSamlStringValidator();
     private static final Base64StringDecoder base64StringDecoder = new Base64StringDecoder();
     private static final ResponseSizeValidator responseSizeValidator = new ResponseSizeValidator();
-    private static final SamlObjectParser samlObjectParser = new SamlObjectParser();
-    private static final OpenSamlXMLObjectUnmarshaller<Response> responseOpenSamlXMLObjectUnmarshaller = new OpenSamlXMLObjectUnmarshaller<>(samlObjectParser);
     private static final EncryptionAlgorithmValidator encryptionAlgorithmValidator = new EncryptionAlgorithmValidator();
     private static final DecrypterFactory decrypterFactory = new DecrypterFactory();
 
     private List<KeyPair> encryptionKeyPairs;
+    private final PooledResponseUnmarshaller responseUnmarshaller;
 
-    public ResponseFactory(List<KeyPair> encryptionKeyPairs) {
+    public ResponseFactory(List<KeyPair> encryptionKeyPairs, XmlParserPool xmlParserPool) {
         this.encryptionKeyPairs = encryptionKeyPairs;
+        this.responseUnmarshaller = new PooledResponseUnmarshaller(xmlParserPool);
     }
 
-    public static StringToOpenSamlObjectTransformer<Response> createStringToResponseTransformer() {
+    public StringToOpenSamlObjectTransformer<Response> createStringToResponseTransformer() {
         return new StringToOpenSamlObjectTransformer<>(
             notNullSamlStringValidator,
             base64StringDecoder,
             responseSizeValidator,
-            responseOpenSamlXMLObjectUnmarshaller
+            responseUnmarshaller
         );
     }
 
-    public AssertionDecrypter createAssertionDecrypter() {
-        return new AssertionDecrypter(
-            new IdaKeyStoreCredentialRetriever(createEncryptionKeyStore()),
+    public KeyHintedAssertionDecrypter createAssertionDecrypter(MetricRegistry metricRegistry) {
+        return new KeyHintedAssertionDecrypter(
+            encryptionKeyPairs,
             encryptionAlgorithmValidator,
-            decrypterFactory
+            decrypterFactory,
+            metricRegistry
         );
     }
 
     public ResponseService createResponseService(
         MetadataResolver hubMetadataResolver,
         AssertionTranslator assertionTranslator,
-        DateTimeComparator dateTimeComparator
+        DateTimeComparator dateTimeComparator,
+        String hubEntityId,
+        ExecutorService speculativeDecryptionExecutor,
+        MetricRegistry metricRegistry
     ) throws ComponentInitializationException {
-        AssertionDecrypter assertionDecrypter = createAssertionDecrypter();
-        MetadataBackedSignatureValidator metadataBackedSignatureValidator = getMetadataBackedSignatureValidator(hubMetadataResolver);
+        SpeculativeAssertionDecrypter assertionDecrypter = new SpeculativeAssertionDecrypter(
+            createAssertionDecrypter(metricRegistry),
+            speculativeDecryptionExecutor,
+            metricRegistry
+        );
+        MetadataBackedSignatureValidator metadataBackedSignatureValidator = getMetadataBackedSignatureValidator(hubMetadataResolver, metricRegistry, "hub-signing-credentials");
+        InstantValidator instantValidator = new InstantValidator();
 
         return new ResponseService(
+            new ResponsePreScanner(hubEntityId, instantValidator, metricRegistry),
             createStringToResponseTransformer(),
+            responseUnmarshaller,
             assertionDecrypter,
             assertionTranslator,
             new SamlResponseSignatureValidator(new SamlMessageSignatureValidator(metadataBackedSignatureValidator)),
-            new InstantValidator(dateTimeComparator)
+            instantValidator,
+            dateTimeComparator
         );
     }
 
     public AssertionTranslator createAssertionTranslator(
         MetadataResolver msaMetadataResolver,
-        DateTimeComparator dateTimeComparator
+        ReplayCache replayCache,
+        AttributeTranslationService attributeTranslationService,
+        MetricRegistry metricRegistry
     ) throws ComponentInitializationException {
-        MetadataBackedSignatureValidator metadataBackedSignatureValidator = getMetadataBackedSignatureValidator(msaMetadataResolver);
+        MetadataBackedSignatureValidator metadataBackedSignatureValidator = getMetadataBackedSignatureValidator(msaMetadataResolver, metricRegistry, "msa-signing-credentials");
         SamlMessageSignatureValidator samlMessageSignatureValidator = new SamlMessageSignatureValidator(metadataBackedSignatureValidator);
-        TimeRestrictionValidator timeRestrictionValidator = new TimeRestrictionValidator(dateTimeComparator);
+        TimeRestrictionValidator timeRestrictionValidator = new TimeRestrictionValidator();
 
         SamlAssertionsSignatureValidator assertionsSignatureValidator = new SamlAssertionsSignatureValidator(samlMessageSignatureValidator);
         AssertionValidator assertionValidator = new AssertionValidator(
-            new InstantValidator(dateTimeComparator),
+            new InstantValidator(),
             new SubjectValidator(timeRestrictionValidator),
             new ConditionsValidator(timeRestrictionValidator, new AudienceRestrictionValidator())
         );
 
         return new AssertionTranslator(
             assertionsSignatureValidator,
-            assertionValidator
+            assertionValidator,
+            replayCache,
+            attributeTranslationService
         );
     }
 
-    private MetadataBackedSignatureValidator getMetadataBackedSignatureValidator(MetadataResolver metadataResolver) throws ComponentInitializationException {
-        MetadataCredentialResolver metadataCredentialResolver = getMetadataCredentialResolver(metadataResolver);
+    private MetadataBackedSignatureValidator getMetadataBackedSignatureValidator(
+        MetadataResolver metadataResolver,
+        MetricRegistry metricRegistry,
+        String credentialCacheName
+    ) throws ComponentInitializationException {
+        CredentialResolver credentialResolver = metadataResolver instanceof JerseyMetadataResolver
+            ? new IndexedMetadataCredentialResolver((JerseyMetadataResolver) metadataResolver, getMetadataCredentialResolver(metadataResolver))
+            : new CachingMetadataCredentialResolver(getMetadataCredentialResolver(metadataResolver), metadataResolver, metricRegistry, credentialCacheName);
         ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine = new ExplicitKeySignatureTrustEngine(
-            metadataCredentialResolver,
+            credentialResolver,
             DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver()
         );
         return MetadataBackedSignatureValidator.withoutCertificateChainValidation(explicitKeySignatureTrustEngine);
@@ -124,8 +154,4 @@ public class ResponseFactory {
         metadataCredentialResolver.initialize();
         return metadataCredentialResolver;
     }
-
-    private IdaKeyStore createEncryptionKeyStore() {
-        return new IdaKeyStore(null, encryptionKeyPairs);
-    }
 }
@@ -0,0 +1,49 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import uk.gov.ida.verifyserviceprovider.utils.Hex;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Generates 128 bit random request IDs. Each thread has its own SHA1PRNG instance, seeded once from the platform's
+ * default SecureRandom, so threads generating IDs concurrently do not contend on a shared generator. The default
+ * NativePRNG is not used per thread as all of its instances share one globally synchronized source.
+ */
+public class SecureRandomRequestIdGenerator implements RequestIdGenerator {
+
+    static final int RANDOM_BYTES = 16;
+
+    private static final String ALGORITHM = "SHA1PRNG";
+    private static final int SEED_BYTES = 32;
+    private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+    private static final ThreadLocal<SecureRandom> SECURE_RANDOM = ThreadLocal.withInitial(SecureRandomRequestIdGenerator::newSecureRandom);
+
+    @Override
+    public String generate() {
+        return "_" + Hex.encode(randomBytes());
+    }
+
+    public String getAlgorithm() {
+        return SECURE_RANDOM.get().getAlgorithm();
+    }
+
+    static byte[] randomBytes() {
+        byte[] bytes = new byte[RANDOM_BYTES];
+        SECURE_RANDOM.get().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static SecureRandom newSecureRandom() {
+        try {
+            SecureRandom secureRandom = SecureRandom.getInstance(ALGORITHM);
+            byte[] seed = new byte[SEED_BYTES];
+            SEED_SOURCE.nextBytes(seed);
+            secureRandom.setSeed(seed);
+            return secureRandom;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -11,8 +11,9 @@ import static com.codahale.metrics.health.HealthCheck.Result.unhealthy;
 
 public class MetadataHealthCheck extends HealthCheck {
 
-    private MetadataResolver metadataResolver;
-    private String expectedEntityId;
+    private final MetadataResolver metadataResolver;
+    private final String expectedEntityId;
+    private final CriteriaSet criteria;
 
     public MetadataHealthCheck(
         MetadataResolver metadataProvider,
@@ -20,12 +21,12 @@ public class MetadataHealthCheck extends HealthCheck {
     ) {
         this.metadataResolver = metadataProvider;
         this.expectedEntityId = expectedEntityId;
+        this.criteria = new CriteriaSet(new EntityIdCriterion(expectedEntityId));
     }
 
     @Override
     protected Result check() throws Exception {
         try {
-            CriteriaSet criteria = new CriteriaSet(new EntityIdCriterion(expectedEntityId));
             EntityDescriptor entityDescriptor = metadataResolver.resolveSingle(criteria);
             if (entityDescriptor != null) {
                 return healthy();
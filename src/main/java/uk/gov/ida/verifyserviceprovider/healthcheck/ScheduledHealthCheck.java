@@ -0,0 +1,75 @@
+package uk.gov.ida.verifyserviceprovider.healthcheck;
+
+import com.codahale.metrics.health.HealthCheck;
+import io.dropwizard.lifecycle.Managed;
+import org.joda.time.DateTime;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Runs a health check on a background schedule and reports its most recent result, so however often the
+ * health check endpoint is probed, the underlying check only runs once per interval.
+ *
+ * The schedule starts with the application, so startup never waits on the check. Until the check has run,
+ * or if its last result is more than a few intervals old because the check is stuck or the schedule has
+ * stopped, it is reported as unhealthy.
+ */
+public class ScheduledHealthCheck extends HealthCheck implements Managed {
+
+    private static final int STALE_AFTER_INTERVALS = 3;
+
+    private final HealthCheck healthCheck;
+    private final ScheduledExecutorService executorService;
+    private final long intervalMillis;
+    private volatile CheckedResult lastResult;
+    private volatile ScheduledFuture<?> schedule;
+
+    public ScheduledHealthCheck(HealthCheck healthCheck, ScheduledExecutorService executorService, long intervalMillis) {
+        this.healthCheck = healthCheck;
+        this.executorService = executorService;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void start() {
+        schedule = executorService.scheduleWithFixedDelay(this::runCheck, 0, intervalMillis, MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        ScheduledFuture<?> current = schedule;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    @Override
+    protected Result check() {
+        CheckedResult last = lastResult;
+        if (last == null) {
+            return Result.unhealthy("Health check has not run yet");
+        }
+        long ageMillis = DateTime.now().getMillis() - last.checkedAt.getMillis();
+        if (ageMillis > STALE_AFTER_INTERVALS * intervalMillis) {
+            return Result.unhealthy(String.format("Health check last ran at %s, %d ms ago", last.checkedAt, ageMillis));
+        }
+        return last.result;
+    }
+
+    private void runCheck() {
+        lastResult = new CheckedResult(healthCheck.execute(), DateTime.now());
+    }
+
+    private static class CheckedResult {
+        private final Result result;
+        private final DateTime checkedAt;
+
+        private CheckedResult(Result result, DateTime checkedAt) {
+            this.result = result;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
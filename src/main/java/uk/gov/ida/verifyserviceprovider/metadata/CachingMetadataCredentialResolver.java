@@ -0,0 +1,143 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.Criterion;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.criterion.ProtocolCriterion;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.security.SecurityException;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.security.credential.criteria.impl.EvaluableCredentialCriteriaRegistry;
+import org.opensaml.security.credential.criteria.impl.EvaluableCredentialCriterion;
+import org.opensaml.security.criteria.UsageCriterion;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Keeps the credentials resolved from metadata for each (entity ID, role, usage) for as long as the
+ * metadata resolver serves the same generation of metadata, so role descriptors are not walked and
+ * KeyInfo is not parsed again on every signature validation. Queries for any other protocol than
+ * SAML 2.0 go straight to the underlying resolver.
+ *
+ * Only the criteria making up the cache key are passed on to the underlying resolver. Any other criteria,
+ * such as the key algorithm which signature validation takes from the signature being validated, are applied
+ * to the cached credentials on every query, so they cannot decide what is cached for later queries. An empty
+ * result is never cached.
+ */
+public class CachingMetadataCredentialResolver implements CredentialResolver {
+
+    private final CredentialResolver delegate;
+    private final MetadataGenerationCache<MetadataCredentialKey, List<Credential>> credentialCache;
+
+    public CachingMetadataCredentialResolver(
+        CredentialResolver delegate,
+        MetadataResolver metadataResolver,
+        MetricRegistry metricRegistry,
+        String cacheName
+    ) {
+        this.delegate = delegate;
+        this.credentialCache = new MetadataGenerationCache<>(metadataResolver, metricRegistry, cacheName);
+    }
+
+    @Override
+    public Iterable<Credential> resolve(CriteriaSet criteria) throws ResolverException {
+        MetadataCredentialKey key = MetadataCredentialKey.fromCriteria(criteria);
+        if (key == null) {
+            return delegate.resolve(criteria);
+        }
+
+        List<Credential> credentials;
+        try {
+            credentials = credentialCache.get(key, ignored -> resolveUnchecked(keyCriteria(criteria)));
+        } catch (UncheckedResolverException e) {
+            throw e.getCause();
+        }
+        if (credentials == null) {
+            return ImmutableList.of();
+        }
+        return filter(credentials, criteria);
+    }
+
+    @Override
+    public Credential resolveSingle(CriteriaSet criteria) throws ResolverException {
+        Iterator<Credential> credentials = resolve(criteria).iterator();
+        return credentials.hasNext() ? credentials.next() : null;
+    }
+
+    /**
+     * @return the credentials, or null if there are none so that nothing is cached
+     */
+    private List<Credential> resolveUnchecked(CriteriaSet criteria) {
+        try {
+            List<Credential> credentials = ImmutableList.copyOf(delegate.resolve(criteria));
+            return credentials.isEmpty() ? null : credentials;
+        } catch (ResolverException e) {
+            throw new UncheckedResolverException(e);
+        }
+    }
+
+    private static CriteriaSet keyCriteria(CriteriaSet criteria) {
+        CriteriaSet keyCriteria = new CriteriaSet();
+        for (Criterion criterion : criteria) {
+            if (isKeyCriterion(criterion)) {
+                keyCriteria.add(criterion);
+            }
+        }
+        return keyCriteria;
+    }
+
+    private static List<Credential> filter(List<Credential> credentials, CriteriaSet criteria) throws ResolverException {
+        List<Predicate<Credential>> evaluables = new ArrayList<>();
+        for (Criterion criterion : criteria) {
+            if (isKeyCriterion(criterion)) {
+                continue;
+            }
+            Predicate<Credential> evaluable = criterion instanceof EvaluableCredentialCriterion
+                ? (EvaluableCredentialCriterion) criterion
+                : getEvaluator(criterion);
+            if (evaluable != null) {
+                evaluables.add(evaluable);
+            }
+        }
+        if (evaluables.isEmpty()) {
+            return credentials;
+        }
+        return ImmutableList.copyOf(Iterables.filter(credentials, Predicates.and(evaluables)));
+    }
+
+    private static EvaluableCredentialCriterion getEvaluator(Criterion criterion) throws ResolverException {
+        try {
+            return EvaluableCredentialCriteriaRegistry.getEvaluator(criterion);
+        } catch (SecurityException e) {
+            throw new ResolverException("Unable to evaluate credential criterion " + criterion, e);
+        }
+    }
+
+    private static boolean isKeyCriterion(Criterion criterion) {
+        return criterion instanceof EntityIdCriterion
+            || criterion instanceof EntityRoleCriterion
+            || criterion instanceof ProtocolCriterion
+            || criterion instanceof UsageCriterion;
+    }
+
+    private static class UncheckedResolverException extends RuntimeException {
+        private UncheckedResolverException(ResolverException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized ResolverException getCause() {
+            return (ResolverException) super.getCause();
+        }
+    }
+}
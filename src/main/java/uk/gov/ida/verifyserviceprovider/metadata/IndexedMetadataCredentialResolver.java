@@ -0,0 +1,38 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Answers queries for the credentials of a SAML 2.0 role of an entity from the index of a
+ * {@link JerseyMetadataResolver}, which holds them already resolved for the metadata being served. Any other
+ * query, or one made before metadata has been loaded, goes to the underlying resolver.
+ */
+public class IndexedMetadataCredentialResolver implements CredentialResolver {
+
+    private final JerseyMetadataResolver metadataResolver;
+    private final CredentialResolver delegate;
+
+    public IndexedMetadataCredentialResolver(JerseyMetadataResolver metadataResolver, CredentialResolver delegate) {
+        this.metadataResolver = metadataResolver;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Iterable<Credential> resolve(CriteriaSet criteria) throws ResolverException {
+        MetadataCredentialKey key = MetadataCredentialKey.fromCriteria(criteria);
+        List<Credential> credentials = key == null ? null : metadataResolver.resolveCredentials(key);
+        return credentials == null ? delegate.resolve(criteria) : credentials;
+    }
+
+    @Override
+    public Credential resolveSingle(CriteriaSet criteria) throws ResolverException {
+        Iterator<Credential> credentials = resolve(criteria).iterator();
+        return credentials.hasNext() ? credentials.next() : null;
+    }
+}
@@ -0,0 +1,370 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Predicate;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.impl.AbstractReloadingMetadataResolver;
+import org.opensaml.saml.saml2.common.TimeBoundSAMLObject;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.config.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Fetches metadata with a Jersey client and refreshes it in the background.
+ *
+ * Refreshes are conditional on the ETag and Last-Modified of the metadata being served, and metadata which
+ * matches the digest of what is being served is not filtered or indexed again. Some filters depend on the time,
+ * such as the one dropping expired certificates, so metadata is fetched unconditionally and processed in full
+ * again once a certificate in it expires, and at least every six hours.
+ *
+ * When given a {@link MetadataSnapshotStore}, each metadata document which passes the filters is saved to
+ * disk, and the resolver is first initialised from the saved snapshot instead of waiting on the network.
+ * A snapshot goes through the same filters as fetched metadata, so a store should only be given to a resolver
+ * whose filters validate signatures, and one past its validUntil is never used. Metadata is fetched from its
+ * URI shortly after the resolver has been seeded from a snapshot.
+ *
+ * Lookups by entity ID, and of the credentials for an entity's roles, are answered from a {@link MetadataIndex}
+ * which is built on the refresh thread and swapped in whole, so they never wait on a refresh.
+ *
+ * The source metadata is not cached, so the filters work on the unmarshalled document itself rather than a
+ * copy of it, and what they leave is the only copy of the metadata held in memory.
+ */
+public class JerseyMetadataResolver extends AbstractReloadingMetadataResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JerseyMetadataResolver.class);
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final long REFRESH_DELAY_AFTER_SNAPSHOT = 1000;
+    private static final Duration FULL_PROCESSING_INTERVAL = Duration.standardHours(6);
+
+    private final Client client;
+    private final URI metadataUri;
+    private final MetadataSnapshotStore snapshotStore;
+    private final Timer refreshCpuTime;
+    private final Meter fetchedBytes;
+    private final Meter notModified;
+    private final Meter unchanged;
+    private final Meter reprocessed;
+    private final KeyInfoCredentialResolver keyInfoCredentialResolver = DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver();
+    private final AtomicReference<MetadataIndex> index = new AtomicReference<>();
+    private volatile boolean seedFromSnapshot;
+    private volatile MetadataSnapshot snapshotBeingProcessed;
+    private volatile XMLObject filteredBeingProcessed;
+    private volatile DateTime validUntilBeingProcessed;
+    private volatile String servingDigest;
+    private volatile DateTime servingConfirmedAt;
+    private volatile DateTime servingValidUntil;
+    private volatile DateTime fullProcessingDueAt;
+    private volatile Long lastRefreshDurationMillis;
+    private volatile String entityTag;
+    private volatile String lastModified;
+    private volatile String fetchedEntityTag;
+    private volatile String fetchedLastModified;
+
+    public JerseyMetadataResolver(Client client, URI metadataUri, MetadataSnapshotStore snapshotStore, MetricRegistry metricRegistry, String name) {
+        this.client = client;
+        this.metadataUri = metadataUri;
+        this.snapshotStore = snapshotStore;
+        this.seedFromSnapshot = snapshotStore != null;
+        setCacheSourceMetadata(false);
+        this.refreshCpuTime = metricRegistry.timer(name(JerseyMetadataResolver.class, name, "refresh-cpu-time"));
+        this.fetchedBytes = metricRegistry.meter(name(JerseyMetadataResolver.class, name, "fetched-bytes"));
+        this.notModified = metricRegistry.meter(name(JerseyMetadataResolver.class, name, "skipped", "not-modified"));
+        this.unchanged = metricRegistry.meter(name(JerseyMetadataResolver.class, name, "skipped", "unchanged"));
+        this.reprocessed = metricRegistry.meter(name(JerseyMetadataResolver.class, name, "reprocessed"));
+        metricRegistry.register(name(JerseyMetadataResolver.class, name, "snapshot-age"), (Gauge<Long>) this::getSnapshotAgeMillis);
+        metricRegistry.register(name(JerseyMetadataResolver.class, name, "last-successful-refresh"), (Gauge<Long>) () -> toMillis(getLastSuccessfulRefresh()));
+        metricRegistry.register(name(JerseyMetadataResolver.class, name, "next-refresh"), (Gauge<Long>) () -> toMillis(getNextRefresh()));
+        metricRegistry.register(name(JerseyMetadataResolver.class, name, "valid-until"), (Gauge<Long>) () -> toMillis(servingValidUntil));
+        metricRegistry.register(name(JerseyMetadataResolver.class, name, "entity-count"), (Gauge<Integer>) this::getEntityCount);
+        metricRegistry.register(name(JerseyMetadataResolver.class, name, "last-refresh-duration"), (Gauge<Long>) () -> lastRefreshDurationMillis);
+    }
+
+    /**
+     * @return how long ago the metadata being served was last fetched or confirmed unchanged, or null before any
+     * has been loaded
+     */
+    public Long getSnapshotAgeMillis() {
+        DateTime confirmedAt = servingConfirmedAt;
+        return confirmedAt == null ? null : DateTime.now().getMillis() - confirmedAt.getMillis();
+    }
+
+    public int getEntityCount() {
+        MetadataIndex current = index.get();
+        return current == null ? 0 : current.getEntityCount();
+    }
+
+    /**
+     * @return the index of the metadata being served, or null before any has been loaded
+     */
+    public MetadataIndex getIndex() {
+        return index.get();
+    }
+
+    /**
+     * @return the credentials for a SAML 2.0 role of an entity, or null before any metadata has been loaded
+     */
+    public List<Credential> resolveCredentials(MetadataCredentialKey key) {
+        MetadataIndex current = index.get();
+        if (current == null) {
+            return null;
+        }
+        EntityDescriptor entityDescriptor = current.getEntityDescriptor(key.getEntityId());
+        return entityDescriptor != null && isValid(entityDescriptor) ? current.getCredentials(key) : Collections.emptyList();
+    }
+
+    @Override
+    public Iterable<EntityDescriptor> resolve(CriteriaSet criteria) throws ResolverException {
+        MetadataIndex current = index.get();
+        EntityIdCriterion entityIdCriterion = criteria == null ? null : criteria.get(EntityIdCriterion.class);
+        if (current == null || entityIdCriterion == null || criteria.stream().anyMatch(criterion -> criterion instanceof Predicate)) {
+            return super.resolve(criteria);
+        }
+
+        EntityDescriptor entityDescriptor = current.getEntityDescriptor(entityIdCriterion.getEntityId());
+        return entityDescriptor != null && isValid(entityDescriptor) ? Collections.singletonList(entityDescriptor) : Collections.emptyList();
+    }
+
+    @Override
+    public EntityDescriptor resolveSingle(CriteriaSet criteria) throws ResolverException {
+        Iterator<EntityDescriptor> entityDescriptors = resolve(criteria).iterator();
+        return entityDescriptors.hasNext() ? entityDescriptors.next() : null;
+    }
+
+    @Override
+    public synchronized void refresh() throws ResolverException {
+        long cpuTimeAtStart = currentThreadCpuTime();
+        long start = System.nanoTime();
+        try {
+            super.refresh();
+        } finally {
+            refreshCpuTime.update(currentThreadCpuTime() - cpuTimeAtStart, TimeUnit.NANOSECONDS);
+            lastRefreshDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected String getMetadataIdentifier() {
+        return metadataUri.toString();
+    }
+
+    /**
+     * @return the metadata to process, or null when it is the same as the metadata being served
+     */
+    @Override
+    protected byte[] fetchMetadata() throws ResolverException {
+        snapshotBeingProcessed = null;
+        if (seedFromSnapshot) {
+            seedFromSnapshot = false;
+            MetadataSnapshot snapshot = loadSnapshot();
+            if (snapshot != null) {
+                LOG.info(String.format("Loading metadata for %s from a snapshot fetched at %s", metadataUri, snapshot.getFetchedAt()));
+                snapshotBeingProcessed = snapshot;
+                return snapshot.getMetadata();
+            }
+        }
+
+        Invocation.Builder request = client.target(metadataUri).request();
+        String serving = servingDigest;
+        if (serving != null && isFullProcessingDue()) {
+            reprocessed.mark();
+            serving = null;
+        }
+        if (serving != null && entityTag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, entityTag);
+        }
+        if (serving != null && lastModified != null) {
+            request.header(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        Response response;
+        try {
+            response = request.get();
+        } catch (ProcessingException e) {
+            throw new ResolverException(String.format("Unable to fetch metadata from %s", metadataUri), e);
+        }
+
+        try {
+            if (response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() && serving != null) {
+                notModified.mark();
+                servingConfirmedAt = DateTime.now();
+                return null;
+            }
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new ResolverException(String.format("Unable to fetch metadata from %s, received status %d", metadataUri, response.getStatus()));
+            }
+
+            byte[] metadata = response.readEntity(byte[].class);
+            fetchedBytes.mark(metadata.length);
+            fetchedEntityTag = response.getHeaderString(HttpHeaders.ETAG);
+            fetchedLastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+
+            if (serving != null && serving.equals(MetadataSnapshot.sha256(metadata))) {
+                unchanged.mark();
+                entityTag = fetchedEntityTag;
+                lastModified = fetchedLastModified;
+                servingConfirmedAt = DateTime.now();
+                return null;
+            }
+            return metadata;
+        } catch (ProcessingException e) {
+            throw new ResolverException(String.format("Unable to read metadata from %s", metadataUri), e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * OpenSAML works out when metadata expires from the cached source metadata, which is not kept, so the
+     * validUntil of the metadata being served is taken into account here instead. The next refresh is never
+     * later than the time the metadata is next due to be processed in full.
+     */
+    @Override
+    protected long computeNextRefreshDelay(DateTime expectedExpiration) {
+        if (snapshotBeingProcessed != null) {
+            return REFRESH_DELAY_AFTER_SNAPSHOT;
+        }
+        DateTime validUntil = servingValidUntil;
+        long delay = validUntil != null && (expectedExpiration == null || validUntil.isBefore(expectedExpiration))
+            ? super.computeNextRefreshDelay(validUntil)
+            : super.computeNextRefreshDelay(expectedExpiration);
+
+        DateTime dueAt = fullProcessingDueAt;
+        if (dueAt != null) {
+            delay = Math.min(delay, Math.max(getMinRefreshDelay(), dueAt.getMillis() - DateTime.now().getMillis()));
+        }
+        return delay;
+    }
+
+    /**
+     * Keeps hold of what the filter chain returned, which is what the index has to be built from.
+     */
+    @Override
+    protected XMLObject filterMetadata(XMLObject metadata) throws FilterException {
+        XMLObject filtered = super.filterMetadata(metadata);
+        filteredBeingProcessed = filtered;
+        return filtered;
+    }
+
+    /**
+     * Publishes the index of the filtered metadata before OpenSAML swaps in its own backing store and moves
+     * lastUpdate on, so caches keyed on lastUpdate never hold values from the previous generation.
+     */
+    @Override
+    protected BatchEntityBackingStore preProcessNewMetadata(XMLObject root) throws FilterException {
+        filteredBeingProcessed = null;
+        validUntilBeingProcessed = getValidUntil(root);
+        try {
+            BatchEntityBackingStore backingStore = super.preProcessNewMetadata(root);
+            index.set(MetadataIndex.build(filteredBeingProcessed, keyInfoCredentialResolver));
+            return backingStore;
+        } finally {
+            filteredBeingProcessed = null;
+        }
+    }
+
+    @Override
+    protected void postProcessMetadata(byte[] metadataBytes, Document metadataDom, XMLObject originalMetadata, XMLObject filteredMetadata) throws ResolverException {
+        super.postProcessMetadata(metadataBytes, metadataDom, originalMetadata, filteredMetadata);
+
+        MetadataSnapshot snapshot = snapshotBeingProcessed;
+        if (snapshot == null) {
+            snapshot = new MetadataSnapshot(metadataBytes, validUntilBeingProcessed, DateTime.now());
+            entityTag = fetchedEntityTag;
+            lastModified = fetchedLastModified;
+            saveSnapshot(snapshot);
+        }
+        servingDigest = snapshot.getDigest();
+        servingConfirmedAt = snapshot.getFetchedAt();
+        servingValidUntil = validUntilBeingProcessed;
+        fullProcessingDueAt = computeFullProcessingDueAt();
+    }
+
+    private boolean isFullProcessingDue() {
+        DateTime dueAt = fullProcessingDueAt;
+        return dueAt != null && !dueAt.isAfterNow();
+    }
+
+    private DateTime computeFullProcessingDueAt() {
+        DateTime now = DateTime.now();
+        DateTime dueAt = now.plus(FULL_PROCESSING_INTERVAL);
+        MetadataIndex current = index.get();
+        DateTime earliestCertificateExpiry = current == null ? null : current.getEarliestCertificateExpiryAfter(now);
+        if (earliestCertificateExpiry != null && earliestCertificateExpiry.isBefore(dueAt)) {
+            return earliestCertificateExpiry;
+        }
+        return dueAt;
+    }
+
+    private MetadataSnapshot loadSnapshot() {
+        MetadataSnapshot snapshot;
+        try {
+            snapshot = snapshotStore.load();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn(String.format("Unable to load the metadata snapshot for %s", metadataUri), e);
+            return null;
+        }
+
+        if (snapshot != null && snapshot.hasExpired()) {
+            LOG.warn(String.format("Ignoring the metadata snapshot for %s as it expired at %s", metadataUri, snapshot.getValidUntil()));
+            return null;
+        }
+        return snapshot;
+    }
+
+    private void saveSnapshot(MetadataSnapshot snapshot) {
+        if (snapshotStore == null) {
+            return;
+        }
+        try {
+            snapshotStore.save(snapshot);
+        } catch (IOException e) {
+            LOG.warn(String.format("Unable to save a metadata snapshot for %s", metadataUri), e);
+        }
+    }
+
+    private static DateTime getValidUntil(XMLObject metadata) {
+        if (metadata instanceof TimeBoundSAMLObject) {
+            return ((TimeBoundSAMLObject) metadata).getValidUntil();
+        }
+        return null;
+    }
+
+    private static Long toMillis(DateTime dateTime) {
+        return dateTime == null ? null : dateTime.getMillis();
+    }
+
+    private static long currentThreadCpuTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
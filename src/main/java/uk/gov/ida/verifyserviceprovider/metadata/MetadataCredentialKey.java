@@ -0,0 +1,77 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.criterion.ProtocolCriterion;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.criteria.UsageCriterion;
+
+import javax.xml.namespace.QName;
+import java.util.Objects;
+
+public class MetadataCredentialKey {
+
+    private final String entityId;
+    private final QName role;
+    private final UsageType usage;
+
+    public MetadataCredentialKey(String entityId, QName role, UsageType usage) {
+        this.entityId = entityId;
+        this.role = role;
+        this.usage = usage;
+    }
+
+    /**
+     * @return the key for a query for the credentials of a SAML 2.0 role of an entity, or null for any other query
+     */
+    public static MetadataCredentialKey fromCriteria(CriteriaSet criteria) {
+        EntityIdCriterion entityIdCriterion = criteria.get(EntityIdCriterion.class);
+        EntityRoleCriterion entityRoleCriterion = criteria.get(EntityRoleCriterion.class);
+        ProtocolCriterion protocolCriterion = criteria.get(ProtocolCriterion.class);
+        if (entityIdCriterion == null || entityRoleCriterion == null) {
+            return null;
+        }
+        if (protocolCriterion != null && !SAMLConstants.SAML20P_NS.equals(protocolCriterion.getProtocol())) {
+            return null;
+        }
+
+        UsageCriterion usageCriterion = criteria.get(UsageCriterion.class);
+        UsageType usage = usageCriterion == null ? UsageType.UNSPECIFIED : usageCriterion.getUsage();
+        return new MetadataCredentialKey(entityIdCriterion.getEntityId(), entityRoleCriterion.getRole(), usage);
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public QName getRole() {
+        return role;
+    }
+
+    public UsageType getUsage() {
+        return usage;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MetadataCredentialKey that = (MetadataCredentialKey) o;
+        return Objects.equals(entityId, that.entityId) &&
+            Objects.equals(role, that.role) &&
+            usage == that.usage;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(entityId, role, usage);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MetadataCredentialKey{ entityId=%s, role=%s, usage=%s}", entityId, role, usage);
+    }
+}
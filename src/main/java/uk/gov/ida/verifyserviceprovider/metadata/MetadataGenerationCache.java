@@ -0,0 +1,82 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.DateTime;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Caches values derived from a metadata resolver for as long as the resolver keeps serving the same
+ * metadata. The resolver's last update time identifies each generation of metadata, and the whole cache
+ * is swapped for an empty one as soon as a new generation is seen.
+ *
+ * Resolvers which do not refresh have no notion of a generation, so values are never cached for them.
+ */
+public class MetadataGenerationCache<K, V> {
+
+    private final MetadataResolver metadataResolver;
+    private final AtomicReference<Generation<K, V>> generation = new AtomicReference<>(new Generation<>(null));
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter rebuilds;
+
+    public MetadataGenerationCache(MetadataResolver metadataResolver, MetricRegistry metricRegistry, String cacheName) {
+        this.metadataResolver = metadataResolver;
+        this.hits = metricRegistry.meter(name(MetadataGenerationCache.class, cacheName, "hits"));
+        this.misses = metricRegistry.meter(name(MetadataGenerationCache.class, cacheName, "misses"));
+        this.rebuilds = metricRegistry.meter(name(MetadataGenerationCache.class, cacheName, "rebuilds"));
+    }
+
+    public V get(K key, Function<K, V> loader) {
+        if (!(metadataResolver instanceof RefreshableMetadataResolver)) {
+            misses.mark();
+            return loader.apply(key);
+        }
+
+        Generation<K, V> current = currentGeneration(((RefreshableMetadataResolver) metadataResolver).getLastUpdate());
+        V value = current.values.get(key);
+        if (value != null) {
+            hits.mark();
+            return value;
+        }
+
+        misses.mark();
+        value = loader.apply(key);
+        if (value != null) {
+            current.values.putIfAbsent(key, value);
+        }
+        return value;
+    }
+
+    private Generation<K, V> currentGeneration(DateTime lastUpdate) {
+        Generation<K, V> current = generation.get();
+        if (Objects.equals(current.lastUpdate, lastUpdate)) {
+            return current;
+        }
+
+        Generation<K, V> next = new Generation<>(lastUpdate);
+        if (generation.compareAndSet(current, next)) {
+            rebuilds.mark();
+            return next;
+        }
+        return generation.get();
+    }
+
+    private static class Generation<K, V> {
+        private final DateTime lastUpdate;
+        private final Map<K, V> values = new ConcurrentHashMap<>();
+
+        private Generation(DateTime lastUpdate) {
+            this.lastUpdate = lastUpdate;
+        }
+    }
+}
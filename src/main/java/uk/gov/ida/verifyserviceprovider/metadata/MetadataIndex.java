@@ -0,0 +1,158 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml.security.impl.SAMLMDCredentialContext;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.MutableCredential;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.x509.X509Credential;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+
+/**
+ * One generation of metadata, indexed by entity ID, and by (entity ID, role, usage) for the credentials of
+ * each SAML 2.0 role. It is built in full when the metadata is loaded and never changes afterwards, so it
+ * can be read from any number of threads without locking.
+ */
+public class MetadataIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataIndex.class);
+
+    private static final List<UsageType> USAGES = asList(UsageType.SIGNING, UsageType.ENCRYPTION, UsageType.UNSPECIFIED);
+
+    private final Map<String, EntityDescriptor> entityDescriptors;
+    private final Map<MetadataCredentialKey, List<Credential>> credentials;
+
+    private MetadataIndex(Map<String, EntityDescriptor> entityDescriptors, Map<MetadataCredentialKey, List<Credential>> credentials) {
+        this.entityDescriptors = entityDescriptors;
+        this.credentials = credentials;
+    }
+
+    public static MetadataIndex build(XMLObject metadata, KeyInfoCredentialResolver keyInfoCredentialResolver) {
+        Map<String, EntityDescriptor> entityDescriptors = new LinkedHashMap<>();
+        addEntityDescriptors(metadata, entityDescriptors);
+
+        Map<MetadataCredentialKey, List<Credential>> credentials = new LinkedHashMap<>();
+        for (EntityDescriptor entityDescriptor : entityDescriptors.values()) {
+            for (RoleDescriptor role : entityDescriptor.getRoleDescriptors()) {
+                if (!role.isSupportedProtocol(SAMLConstants.SAML20P_NS)) {
+                    continue;
+                }
+                for (UsageType usage : USAGES) {
+                    List<Credential> roleCredentials = resolveCredentials(entityDescriptor.getEntityID(), role, usage, keyInfoCredentialResolver);
+                    for (QName roleName : getRoleNames(role)) {
+                        credentials.computeIfAbsent(new MetadataCredentialKey(entityDescriptor.getEntityID(), roleName, usage), key -> new ArrayList<>())
+                            .addAll(roleCredentials);
+                    }
+                }
+            }
+        }
+
+        ImmutableMap.Builder<MetadataCredentialKey, List<Credential>> immutableCredentials = ImmutableMap.builder();
+        credentials.forEach((key, value) -> immutableCredentials.put(key, ImmutableList.copyOf(value)));
+        return new MetadataIndex(ImmutableMap.copyOf(entityDescriptors), immutableCredentials.build());
+    }
+
+    public EntityDescriptor getEntityDescriptor(String entityId) {
+        return entityDescriptors.get(entityId);
+    }
+
+    /**
+     * @return the credentials for a SAML 2.0 role of an entity, or an empty list if the entity or role is not in
+     * the metadata
+     */
+    public List<Credential> getCredentials(MetadataCredentialKey key) {
+        return credentials.getOrDefault(key, Collections.emptyList());
+    }
+
+    public int getEntityCount() {
+        return entityDescriptors.size();
+    }
+
+    /**
+     * @return the earliest notAfter of the certificates in the index which is later than the given instant, or
+     * null if there is none
+     */
+    public DateTime getEarliestCertificateExpiryAfter(DateTime instant) {
+        DateTime earliest = null;
+        for (List<Credential> roleCredentials : credentials.values()) {
+            for (Credential credential : roleCredentials) {
+                if (credential instanceof X509Credential) {
+                    DateTime notAfter = new DateTime(((X509Credential) credential).getEntityCertificate().getNotAfter());
+                    if (notAfter.isAfter(instant) && (earliest == null || notAfter.isBefore(earliest))) {
+                        earliest = notAfter;
+                    }
+                }
+            }
+        }
+        return earliest;
+    }
+
+    private static void addEntityDescriptors(XMLObject metadata, Map<String, EntityDescriptor> entityDescriptors) {
+        if (metadata instanceof EntityDescriptor) {
+            EntityDescriptor entityDescriptor = (EntityDescriptor) metadata;
+            entityDescriptors.putIfAbsent(entityDescriptor.getEntityID(), entityDescriptor);
+        } else if (metadata instanceof EntitiesDescriptor) {
+            EntitiesDescriptor entitiesDescriptor = (EntitiesDescriptor) metadata;
+            entitiesDescriptor.getEntityDescriptors().forEach(entityDescriptor -> addEntityDescriptors(entityDescriptor, entityDescriptors));
+            entitiesDescriptor.getEntitiesDescriptors().forEach(child -> addEntityDescriptors(child, entityDescriptors));
+        }
+    }
+
+    private static List<QName> getRoleNames(RoleDescriptor role) {
+        QName schemaType = role.getSchemaType();
+        if (schemaType == null || schemaType.equals(role.getElementQName())) {
+            return Collections.singletonList(role.getElementQName());
+        }
+        return asList(role.getElementQName(), schemaType);
+    }
+
+    /**
+     * Resolves credentials the same way as OpenSAML's MetadataCredentialResolver: a key descriptor without a use
+     * applies to every usage, and a query without a usage matches every key descriptor.
+     */
+    private static List<Credential> resolveCredentials(String entityId, RoleDescriptor role, UsageType usage, KeyInfoCredentialResolver keyInfoCredentialResolver) {
+        List<Credential> credentials = new ArrayList<>();
+        for (KeyDescriptor keyDescriptor : role.getKeyDescriptors()) {
+            UsageType keyUsage = keyDescriptor.getUse() == null ? UsageType.UNSPECIFIED : keyDescriptor.getUse();
+            if (keyDescriptor.getKeyInfo() == null || !(usage == UsageType.UNSPECIFIED || keyUsage == UsageType.UNSPECIFIED || keyUsage == usage)) {
+                continue;
+            }
+
+            try {
+                for (Credential credential : keyInfoCredentialResolver.resolve(new CriteriaSet(new KeyInfoCriterion(keyDescriptor.getKeyInfo())))) {
+                    if (credential instanceof MutableCredential) {
+                        ((MutableCredential) credential).setEntityId(entityId);
+                        ((MutableCredential) credential).setUsageType(keyUsage);
+                    }
+                    credential.getCredentialContextSet().add(new SAMLMDCredentialContext(keyDescriptor));
+                    credentials.add(credential);
+                }
+            } catch (ResolverException e) {
+                LOG.warn(String.format("Unable to resolve a credential from the metadata for %s", entityId), e);
+            }
+        }
+        return credentials;
+    }
+}
@@ -1,5 +1,6 @@
 package uk.gov.ida.verifyserviceprovider.metadata;
 
+import com.codahale.metrics.MetricRegistry;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 import org.opensaml.core.criterion.EntityIdCriterion;
@@ -7,6 +8,7 @@ import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
 import org.opensaml.security.credential.UsageType;
 import org.opensaml.xmlsec.signature.X509Certificate;
 import uk.gov.ida.saml.security.PublicKeyFactory;
@@ -20,19 +22,28 @@ public class MetadataPublicKeyExtractor {
 
     private final String entityId;
     private final MetadataResolver metadataResolver;
+    private final MetadataCredentialKey encryptionKey;
+    private final MetadataGenerationCache<MetadataCredentialKey, PublicKey> publicKeyCache;
     private PublicKeyFactory publicKeyFactory;
 
     public MetadataPublicKeyExtractor(
         String entityId,
         MetadataResolver metadataResolver,
-        PublicKeyFactory publicKeyFactory
+        PublicKeyFactory publicKeyFactory,
+        MetricRegistry metricRegistry
     ) {
         this.entityId = entityId;
         this.metadataResolver = metadataResolver;
         this.publicKeyFactory = publicKeyFactory;
+        this.encryptionKey = new MetadataCredentialKey(entityId, SPSSODescriptor.DEFAULT_ELEMENT_NAME, UsageType.ENCRYPTION);
+        this.publicKeyCache = new MetadataGenerationCache<>(metadataResolver, metricRegistry, "public-keys");
     }
 
     public PublicKey getEncryptionPublicKey() {
+        return publicKeyCache.get(encryptionKey, key -> resolveEncryptionPublicKey());
+    }
+
+    private PublicKey resolveEncryptionPublicKey() {
         try {
             CriteriaSet criteria = new CriteriaSet(new EntityIdCriterion(entityId));
             return Optional.ofNullable(metadataResolver.resolveSingle(criteria))
@@ -0,0 +1,53 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import org.joda.time.DateTime;
+import uk.gov.ida.verifyserviceprovider.utils.Hex;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Metadata exactly as it was fetched, with the time it was fetched and the validUntil it declared.
+ */
+public class MetadataSnapshot {
+
+    private final byte[] metadata;
+    private final String digest;
+    private final DateTime validUntil;
+    private final DateTime fetchedAt;
+
+    public MetadataSnapshot(byte[] metadata, DateTime validUntil, DateTime fetchedAt) {
+        this.metadata = metadata;
+        this.digest = sha256(metadata);
+        this.validUntil = validUntil;
+        this.fetchedAt = fetchedAt;
+    }
+
+    public static String sha256(byte[] bytes) {
+        try {
+            return Hex.encode(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] getMetadata() {
+        return metadata;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public DateTime getValidUntil() {
+        return validUntil;
+    }
+
+    public DateTime getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public boolean hasExpired() {
+        return validUntil != null && !validUntil.isAfterNow();
+    }
+}
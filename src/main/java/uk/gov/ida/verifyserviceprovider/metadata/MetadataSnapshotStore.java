@@ -0,0 +1,92 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Keeps the last validated metadata for a resolver on local disk, as the metadata itself alongside a
+ * properties file holding its digest, validUntil and fetch time. Both files are written to temporary files
+ * and moved into place, and a snapshot is only loaded if the metadata still matches the recorded digest.
+ */
+public class MetadataSnapshotStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataSnapshotStore.class);
+
+    private static final String DIGEST = "digest";
+    private static final String VALID_UNTIL = "validUntil";
+    private static final String FETCHED_AT = "fetchedAt";
+
+    private final Path directory;
+    private final Path metadataFile;
+    private final Path propertiesFile;
+
+    public MetadataSnapshotStore(Path directory, String name) {
+        this.directory = directory;
+        this.metadataFile = directory.resolve(name + "-metadata.xml");
+        this.propertiesFile = directory.resolve(name + "-metadata.properties");
+    }
+
+    /**
+     * @return the stored snapshot, or null if there is none or it does not match its digest
+     */
+    public MetadataSnapshot load() throws IOException {
+        Properties properties = new Properties();
+        byte[] metadata;
+        try (InputStream input = Files.newInputStream(propertiesFile)) {
+            properties.load(input);
+            metadata = Files.readAllBytes(metadataFile);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        String validUntil = properties.getProperty(VALID_UNTIL);
+        String fetchedAt = properties.getProperty(FETCHED_AT);
+        MetadataSnapshot snapshot = new MetadataSnapshot(
+            metadata,
+            validUntil == null ? null : DateTime.parse(validUntil),
+            fetchedAt == null ? null : DateTime.parse(fetchedAt)
+        );
+
+        if (fetchedAt == null || !snapshot.getDigest().equals(properties.getProperty(DIGEST))) {
+            LOG.warn(String.format("Ignoring metadata snapshot %s as it does not match its recorded digest", metadataFile));
+            return null;
+        }
+        return snapshot;
+    }
+
+    public void save(MetadataSnapshot snapshot) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(DIGEST, snapshot.getDigest());
+        properties.setProperty(FETCHED_AT, snapshot.getFetchedAt().toString());
+        if (snapshot.getValidUntil() != null) {
+            properties.setProperty(VALID_UNTIL, snapshot.getValidUntil().toString());
+        }
+
+        Files.createDirectories(directory);
+        Path metadataTempFile = Files.createTempFile(directory, metadataFile.getFileName().toString(), ".tmp");
+        Path propertiesTempFile = Files.createTempFile(directory, propertiesFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(metadataTempFile, snapshot.getMetadata());
+            try (OutputStream output = Files.newOutputStream(propertiesTempFile)) {
+                properties.store(output, null);
+            }
+            Files.move(metadataTempFile, metadataFile, ATOMIC_MOVE, REPLACE_EXISTING);
+            Files.move(propertiesTempFile, propertiesFile, ATOMIC_MOVE, REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(metadataTempFile);
+            Files.deleteIfExists(propertiesTempFile);
+        }
+    }
+}
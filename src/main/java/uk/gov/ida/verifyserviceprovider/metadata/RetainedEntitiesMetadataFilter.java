@@ -0,0 +1,94 @@
+package uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Drops every entity except the configured ones from a metadata document, and releases the DOM the document
+ * was unmarshalled from. It must run after signature validation, as the signature covers the whole document.
+ *
+ * The number of entities and XML objects left is published for each resolver, as an indication of how much
+ * of the heap its metadata takes up.
+ */
+public class RetainedEntitiesMetadataFilter implements MetadataFilter {
+
+    private final Set<String> retainedEntityIds;
+    private volatile int retainedEntities;
+    private volatile int droppedEntities;
+    private volatile int retainedXmlObjects;
+
+    public RetainedEntitiesMetadataFilter(Set<String> retainedEntityIds, MetricRegistry metricRegistry, String name) {
+        this.retainedEntityIds = ImmutableSet.copyOf(retainedEntityIds);
+        metricRegistry.register(name(RetainedEntitiesMetadataFilter.class, name, "retained-entities"), (Gauge<Integer>) () -> retainedEntities);
+        metricRegistry.register(name(RetainedEntitiesMetadataFilter.class, name, "dropped-entities"), (Gauge<Integer>) () -> droppedEntities);
+        metricRegistry.register(name(RetainedEntitiesMetadataFilter.class, name, "retained-xml-objects"), (Gauge<Integer>) () -> retainedXmlObjects);
+    }
+
+    @Override
+    public XMLObject filter(XMLObject metadata) throws FilterException {
+        if (metadata == null) {
+            return null;
+        }
+
+        int[] dropped = new int[1];
+        XMLObject filtered = metadata;
+        if (metadata instanceof EntitiesDescriptor && !filterEntitiesDescriptor((EntitiesDescriptor) metadata, dropped)) {
+            filtered = null;
+        } else if (metadata instanceof EntityDescriptor && !retainedEntityIds.contains(((EntityDescriptor) metadata).getEntityID())) {
+            dropped[0] = 1;
+            filtered = null;
+        }
+
+        metadata.releaseChildrenDOM(true);
+        metadata.releaseDOM();
+
+        droppedEntities = dropped[0];
+        retainedEntities = filtered == null ? 0 : countEntities(filtered);
+        retainedXmlObjects = filtered == null ? 0 : countXmlObjects(filtered);
+        return filtered;
+    }
+
+    /**
+     * @return whether any entity was left in the EntitiesDescriptor or its descendants
+     */
+    private boolean filterEntitiesDescriptor(EntitiesDescriptor entitiesDescriptor, int[] dropped) {
+        List<EntityDescriptor> entityDescriptors = entitiesDescriptor.getEntityDescriptors();
+        int before = entityDescriptors.size();
+        entityDescriptors.removeIf(entityDescriptor -> !retainedEntityIds.contains(entityDescriptor.getEntityID()));
+        dropped[0] += before - entityDescriptors.size();
+
+        entitiesDescriptor.getEntitiesDescriptors().removeIf(child -> !filterEntitiesDescriptor(child, dropped));
+        return !entityDescriptors.isEmpty() || !entitiesDescriptor.getEntitiesDescriptors().isEmpty();
+    }
+
+    private static int countEntities(XMLObject metadata) {
+        if (metadata instanceof EntityDescriptor) {
+            return 1;
+        }
+        if (!(metadata instanceof EntitiesDescriptor)) {
+            return 0;
+        }
+        EntitiesDescriptor entitiesDescriptor = (EntitiesDescriptor) metadata;
+        return entitiesDescriptor.getEntityDescriptors().size()
+            + entitiesDescriptor.getEntitiesDescriptors().stream().mapToInt(RetainedEntitiesMetadataFilter::countEntities).sum();
+    }
+
+    private static int countXmlObjects(XMLObject xmlObject) {
+        List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children == null) {
+            return 1;
+        }
+        return 1 + children.stream().filter(child -> child != null).mapToInt(RetainedEntitiesMetadataFilter::countXmlObjects).sum();
+    }
+}
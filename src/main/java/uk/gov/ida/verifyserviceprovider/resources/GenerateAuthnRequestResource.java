@@ -2,11 +2,16 @@ package uk.gov.ida.verifyserviceprovider.resources;
 
 import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.slf4j.LoggerFactory;
-import uk.gov.ida.saml.serializers.XmlObjectToBase64EncodedStringTransformer;
+import uk.gov.ida.verifyserviceprovider.dto.BatchRequestGenerationBody;
+import uk.gov.ida.verifyserviceprovider.dto.Binding;
 import uk.gov.ida.verifyserviceprovider.dto.RequestGenerationBody;
 import uk.gov.ida.verifyserviceprovider.dto.RequestResponseBody;
+import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdException;
 import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.RedirectBindingEncoder;
+import uk.gov.ida.verifyserviceprovider.services.BatchProcessor;
 import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
+import uk.gov.ida.verifyserviceprovider.utils.XmlObjectToBase64EncodedStringSerializer;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -14,9 +19,16 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 @Path("/generate-request")
 @Produces(MediaType.APPLICATION_JSON)
@@ -26,26 +38,87 @@ public class GenerateAuthnRequestResource {
     private final URI ssoLocation;
     private final AuthnRequestFactory authnRequestFactory;
     private final EntityIdService entityIdService;
+    private final BatchProcessor batchProcessor;
+    private final RedirectBindingEncoder redirectBindingEncoder;
+    private final XmlObjectToBase64EncodedStringSerializer base64Serializer = new XmlObjectToBase64EncodedStringSerializer();
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(GenerateAuthnRequestResource.class);
 
-    public GenerateAuthnRequestResource(AuthnRequestFactory authnRequestFactory, URI ssoLocation, EntityIdService entityIdService) {
+    public GenerateAuthnRequestResource(
+        AuthnRequestFactory authnRequestFactory,
+        URI ssoLocation,
+        EntityIdService entityIdService,
+        BatchProcessor batchProcessor,
+        RedirectBindingEncoder redirectBindingEncoder
+    ) {
         this.authnRequestFactory = authnRequestFactory;
         this.ssoLocation = ssoLocation;
         this.entityIdService = entityIdService;
+        this.batchProcessor = batchProcessor;
+        this.redirectBindingEncoder = redirectBindingEncoder;
     }
 
     @POST
     public Response generateAuthnRequest(@NotNull @Valid RequestGenerationBody requestGenerationBody) {
         String entityId = entityIdService.getEntityId(requestGenerationBody);
-        AuthnRequest authnRequest = this.authnRequestFactory.build(requestGenerationBody.getLevelOfAssurance(), entityId);
-        XmlObjectToBase64EncodedStringTransformer xmlToBase64Transformer = new XmlObjectToBase64EncodedStringTransformer();
-        String samlRequest = xmlToBase64Transformer.apply(authnRequest);
+        return Response.ok(generateRequestResponseBody(requestGenerationBody, entityId)).build();
+    }
+
+    @POST
+    @Path("/batch")
+    @Produces({MediaType.APPLICATION_JSON, BatchProcessor.APPLICATION_NDJSON})
+    public Response generateAuthnRequestBatch(@NotNull @Valid List<BatchRequestGenerationBody> batchRequestGenerationBodies,
+                                              @Context HttpHeaders httpHeaders) {
+        long itemCount = 0;
+        for (BatchRequestGenerationBody body : batchRequestGenerationBodies) {
+            itemCount = Math.addExact(itemCount, body.getCount());
+        }
+        batchProcessor.checkBatchSize(itemCount);
+
+        Map<String, String> entityIds = new HashMap<>();
+        Map<String, InvalidEntityIdException> entityIdErrors = new HashMap<>();
+        List<Callable<RequestResponseBody>> tasks = new ArrayList<>();
+
+        for (BatchRequestGenerationBody body : batchRequestGenerationBodies) {
+            String providedEntityId = body.getEntityId();
+            if (!entityIds.containsKey(providedEntityId) && !entityIdErrors.containsKey(providedEntityId)) {
+                try {
+                    entityIds.put(providedEntityId, entityIdService.getEntityId(body));
+                } catch (InvalidEntityIdException e) {
+                    entityIdErrors.put(providedEntityId, e);
+                }
+            }
+
+            String entityId = entityIds.get(providedEntityId);
+            InvalidEntityIdException entityIdError = entityIdErrors.get(providedEntityId);
+            for (int i = 0; i < body.getCount(); i++) {
+                tasks.add(() -> {
+                    if (entityIdError != null) {
+                        throw entityIdError;
+                    }
+                    return generateRequestResponseBody(body, entityId);
+                });
+            }
+        }
+
+        return batchProcessor.process(tasks, BatchProcessor.isStreamingRequested(httpHeaders));
+    }
 
-        RequestResponseBody requestResponseBody = new RequestResponseBody(samlRequest, authnRequest.getID(), ssoLocation);
+    private RequestResponseBody generateRequestResponseBody(RequestGenerationBody requestGenerationBody, String entityId) {
+        RequestResponseBody requestResponseBody;
+        if (requestGenerationBody.getBinding() == Binding.REDIRECT) {
+            AuthnRequest authnRequest = authnRequestFactory.buildUnsigned(requestGenerationBody.getLevelOfAssurance(), entityId);
+            String samlRequest = redirectBindingEncoder.deflateAndEncode(authnRequest);
+            URI redirectUrl = redirectBindingEncoder.createRedirectUrl(ssoLocation, samlRequest);
+            requestResponseBody = new RequestResponseBody(samlRequest, authnRequest.getID(), ssoLocation, redirectUrl);
+        } else {
+            AuthnRequest authnRequest = authnRequestFactory.build(requestGenerationBody.getLevelOfAssurance(), entityId);
+            String samlRequest = base64Serializer.serialize(authnRequest);
+            requestResponseBody = new RequestResponseBody(samlRequest, authnRequest.getID(), ssoLocation);
+        }
 
         LOG.info(String.format("AuthnRequest generated for entityId: %s with requestId: %s", entityId, requestResponseBody.getRequestId()));
         LOG.debug(String.format("AuthnRequest generated for entityId: %s with saml: %s", entityId, requestResponseBody.getSamlRequest()));
 
-        return Response.ok(requestResponseBody).build();
+        return requestResponseBody;
     }
 }
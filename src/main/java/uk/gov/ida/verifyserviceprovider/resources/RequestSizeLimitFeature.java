@@ -0,0 +1,95 @@
+package uk.gov.ida.verifyserviceprovider.resources;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import uk.gov.ida.verifyserviceprovider.configuration.RequestSizeLimitsConfiguration;
+import uk.gov.ida.verifyserviceprovider.exceptions.RequestTooLargeException;
+import uk.gov.ida.verifyserviceprovider.utils.SizeLimitedInputStream;
+
+import javax.ws.rs.Path;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import java.io.IOException;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Caps the size of the request body for each endpoint before it reaches Jackson. A declared Content-Length over
+ * the cap is rejected straight away, and otherwise the entity stream is counted as it is read, so an oversized
+ * body fails with a 413 as soon as the cap is crossed rather than after it has all been buffered.
+ */
+public class RequestSizeLimitFeature implements DynamicFeature {
+
+    private final RequestSizeLimitsConfiguration requestSizeLimits;
+    private final MetricRegistry metricRegistry;
+
+    public RequestSizeLimitFeature(RequestSizeLimitsConfiguration requestSizeLimits, MetricRegistry metricRegistry) {
+        this.requestSizeLimits = requestSizeLimits;
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        Class<?> resourceClass = resourceInfo.getResourceClass();
+        boolean isBatch = isBatch(resourceInfo);
+
+        if (TranslateSamlResponseResource.class.equals(resourceClass)) {
+            register(context, isBatch ? "translate-response-batch" : "translate-response",
+                isBatch ? requestSizeLimits.getBatchBytes() : requestSizeLimits.getTranslateResponseBytes());
+        } else if (GenerateAuthnRequestResource.class.equals(resourceClass)) {
+            register(context, isBatch ? "generate-request-batch" : "generate-request",
+                isBatch ? requestSizeLimits.getBatchBytes() : requestSizeLimits.getGenerateRequestBytes());
+        }
+    }
+
+    private boolean isBatch(ResourceInfo resourceInfo) {
+        Path path = resourceInfo.getResourceMethod().getAnnotation(Path.class);
+        return path != null && path.value().equals("/batch");
+    }
+
+    private void register(FeatureContext context, String endpointName, long maxBytes) {
+        Meter rejected = metricRegistry.meter(name(RequestSizeLimitFeature.class, endpointName, "rejected"));
+        context.register(new RequestSizeLimitInterceptor(endpointName, maxBytes, rejected));
+    }
+
+    private static class RequestSizeLimitInterceptor implements ReaderInterceptor {
+
+        private final String endpointName;
+        private final long maxBytes;
+        private final Meter rejected;
+
+        private RequestSizeLimitInterceptor(String endpointName, long maxBytes, Meter rejected) {
+            this.endpointName = endpointName;
+            this.maxBytes = maxBytes;
+            this.rejected = rejected;
+        }
+
+        @Override
+        public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+            String contentLength = context.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH);
+            if (contentLength != null && isOverLimit(contentLength)) {
+                throw tooLarge();
+            }
+
+            context.setInputStream(new SizeLimitedInputStream(context.getInputStream(), maxBytes, this::tooLarge));
+            return context.proceed();
+        }
+
+        private boolean isOverLimit(String contentLength) {
+            try {
+                return Long.parseLong(contentLength) > maxBytes;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private RequestTooLargeException tooLarge() {
+            rejected.mark();
+            return new RequestTooLargeException(String.format("Request body for %s is larger than %d bytes", endpointName, maxBytes));
+        }
+    }
+}
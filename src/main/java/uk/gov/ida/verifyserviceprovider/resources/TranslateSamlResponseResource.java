@@ -1,23 +1,40 @@
 package uk.gov.ida.verifyserviceprovider.resources;
 
 import io.dropwizard.jersey.errors.ErrorMessage;
+import org.apache.http.HttpStatus;
 import org.slf4j.LoggerFactory;
 import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
+import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.dto.TranslateSamlResponseBody;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.services.BatchProcessor;
 import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
 import uk.gov.ida.verifyserviceprovider.services.ResponseService;
+import uk.gov.ida.verifyserviceprovider.services.SheddingExecutor;
+import uk.gov.ida.verifyserviceprovider.utils.FormFieldInputStream;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 
@@ -26,33 +43,103 @@ import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 @Consumes(MediaType.APPLICATION_JSON)
 public class TranslateSamlResponseResource {
 
+    public static final String REQUEST_ID_HEADER = "X-Verify-Request-Id";
+    public static final String LEVEL_OF_ASSURANCE_HEADER = "X-Verify-Level-Of-Assurance";
+    public static final String ENTITY_ID_HEADER = "X-Verify-Entity-Id";
+
+    private static final String SAML_RESPONSE_FORM_FIELD = "SAMLResponse";
+
     private final ResponseService responseService;
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TranslateSamlResponseResource.class);
     private final EntityIdService entityIdService;
+    private final BatchProcessor batchProcessor;
+    private final SheddingExecutor translationExecutor;
 
 
-    public TranslateSamlResponseResource(ResponseService responseService, EntityIdService entityIdService) {
+    public TranslateSamlResponseResource(
+        ResponseService responseService,
+        EntityIdService entityIdService,
+        BatchProcessor batchProcessor,
+        SheddingExecutor translationExecutor
+    ) {
         this.responseService = responseService;
         this.entityIdService = entityIdService;
+        this.batchProcessor = batchProcessor;
+        this.translationExecutor = translationExecutor;
     }
 
     @POST
-    public Response translateResponse(@NotNull @Valid TranslateSamlResponseBody translateSamlResponseBody) throws IOException {
-        String entityId = entityIdService.getEntityId(translateSamlResponseBody);
-        try {
-            TranslatedResponseBody translatedResponseBody = responseService.convertTranslatedResponseBody(
-                translateSamlResponseBody.getSamlResponse(),
+    public void translateResponse(@Suspended AsyncResponse asyncResponse,
+                                  @NotNull @Valid TranslateSamlResponseBody translateSamlResponseBody) {
+        translationExecutor.submit(asyncResponse, () -> translateResponse(translateSamlResponseBody));
+    }
+
+    /**
+     * Accepts the SAML Response as XML, already decoded, in the request body. The body is read, within the
+     * request size limit, on the request thread before the translation is queued, so that no thread from the
+     * translation executor waits on the client. It is parsed straight from those bytes, without being held as
+     * JSON, a base64 String or a decoded String first.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public void translateResponseXml(@Suspended AsyncResponse asyncResponse,
+                                     @HeaderParam(REQUEST_ID_HEADER) @NotNull String requestId,
+                                     @HeaderParam(LEVEL_OF_ASSURANCE_HEADER) @NotNull LevelOfAssurance levelOfAssurance,
+                                     @HeaderParam(ENTITY_ID_HEADER) String entityId,
+                                     @NotNull byte[] samlResponseXml) {
+        TranslateSamlResponseBody translateSamlResponseBody = new TranslateSamlResponseBody(null, requestId, levelOfAssurance, entityId);
+        translationExecutor.submit(asyncResponse, () -> translateResponse(translateSamlResponseBody, new ByteArrayInputStream(samlResponseXml)));
+    }
+
+    /**
+     * Accepts the SAMLResponse form field exactly as the hub posted it to the relying party. As for XML, the
+     * body is read into bytes, within the request size limit, on the request thread. The field is then URL
+     * decoded and base64 decoded from those bytes as the XML parser reads it, so the only copy of it is the
+     * body itself, where binding it as a form parameter made two more: the form's String and its bytes.
+     * Line breaks and other whitespace in the base64 are ignored.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public void translateResponseForm(@Suspended AsyncResponse asyncResponse,
+                                      @HeaderParam(REQUEST_ID_HEADER) @NotNull String requestId,
+                                      @HeaderParam(LEVEL_OF_ASSURANCE_HEADER) @NotNull LevelOfAssurance levelOfAssurance,
+                                      @HeaderParam(ENTITY_ID_HEADER) String entityId,
+                                      @NotNull byte[] form) {
+        InputStream samlResponse = FormFieldInputStream.open(form, SAML_RESPONSE_FORM_FIELD);
+        if (samlResponse == null) {
+            asyncResponse.resume(Response.status(HttpStatus.SC_UNPROCESSABLE_ENTITY)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(new ErrorMessage(HttpStatus.SC_UNPROCESSABLE_ENTITY, "form field SAMLResponse may not be null"))
+                .build());
+            return;
+        }
+        TranslateSamlResponseBody translateSamlResponseBody = new TranslateSamlResponseBody(null, requestId, levelOfAssurance, entityId);
+        InputStream samlResponseXml = Base64.getMimeDecoder().wrap(samlResponse);
+        translationExecutor.submit(asyncResponse, () -> translateResponse(translateSamlResponseBody, samlResponseXml));
+    }
+
+    private Response translateResponse(TranslateSamlResponseBody translateSamlResponseBody) {
+        return translateResponse(translateSamlResponseBody, entityId -> translate(translateSamlResponseBody, entityId));
+    }
+
+    private Response translateResponse(TranslateSamlResponseBody translateSamlResponseBody, InputStream samlResponseXml) {
+        return translateResponse(translateSamlResponseBody, entityId -> logTranslation(
+            translateSamlResponseBody,
+            entityId,
+            responseService.convertTranslatedResponseXml(
+                samlResponseXml,
                 translateSamlResponseBody.getRequestId(),
                 translateSamlResponseBody.getLevelOfAssurance(),
                 entityId
-            );
-
-            LOG.info(String.format("Translated response for entityId: %s, requestId: %s, got Scenario: %s",
-                    entityId,
-                    translateSamlResponseBody.getRequestId(),
-                    translatedResponseBody.getScenario()));
+            )
+        ));
+    }
 
-            return Response.ok(translatedResponseBody).build();
+    private Response translateResponse(TranslateSamlResponseBody translateSamlResponseBody,
+                                       Function<String, TranslatedResponseBody> translation) {
+        String entityId = entityIdService.getEntityId(translateSamlResponseBody);
+        try {
+            return Response.ok(translation.apply(entityId)).build();
         } catch (SamlResponseValidationException | SamlTransformationErrorException e) {
             LOG.warn(String.format("Error translating saml response for entityId: %s, requestId: %s, got Message: %s", entityId, translateSamlResponseBody.getRequestId(), e.getMessage()));
             return Response
@@ -61,4 +148,56 @@ public class TranslateSamlResponseResource {
                 .build();
         }
     }
+
+    @POST
+    @Path("/batch")
+    @Produces({MediaType.APPLICATION_JSON, BatchProcessor.APPLICATION_NDJSON})
+    public Response translateResponseBatch(@NotNull @Valid List<TranslateSamlResponseBody> translateSamlResponseBodies,
+                                           @Context HttpHeaders httpHeaders) {
+        return translateBatch(translateSamlResponseBodies, false, httpHeaders);
+    }
+
+    @POST
+    @Path("/batch")
+    @Consumes(BatchProcessor.APPLICATION_NDJSON)
+    @Produces({MediaType.APPLICATION_JSON, BatchProcessor.APPLICATION_NDJSON})
+    public Response translateResponseNdjsonBatch(InputStream inputStream, @Context HttpHeaders httpHeaders) throws IOException {
+        return translateBatch(batchProcessor.readNdjson(inputStream, TranslateSamlResponseBody.class), true, httpHeaders);
+    }
+
+    private Response translateBatch(List<TranslateSamlResponseBody> translateSamlResponseBodies, boolean validateItems, HttpHeaders httpHeaders) {
+        List<Callable<TranslatedResponseBody>> tasks = new ArrayList<>();
+        for (TranslateSamlResponseBody body : translateSamlResponseBodies) {
+            tasks.add(() -> {
+                if (validateItems) {
+                    batchProcessor.validate(body);
+                }
+                return translate(body, entityIdService.getEntityId(body));
+            });
+        }
+
+        return batchProcessor.process(tasks, BatchProcessor.isStreamingRequested(httpHeaders), translationExecutor);
+    }
+
+    private TranslatedResponseBody translate(TranslateSamlResponseBody translateSamlResponseBody, String entityId) {
+        TranslatedResponseBody translatedResponseBody = responseService.convertTranslatedResponseBody(
+            translateSamlResponseBody.getSamlResponse(),
+            translateSamlResponseBody.getRequestId(),
+            translateSamlResponseBody.getLevelOfAssurance(),
+            entityId
+        );
+
+        return logTranslation(translateSamlResponseBody, entityId, translatedResponseBody);
+    }
+
+    private TranslatedResponseBody logTranslation(TranslateSamlResponseBody translateSamlResponseBody,
+                                                  String entityId,
+                                                  TranslatedResponseBody translatedResponseBody) {
+        LOG.info(String.format("Translated response for entityId: %s, requestId: %s, got Scenario: %s",
+                entityId,
+                translateSamlResponseBody.getRequestId(),
+                translatedResponseBody.getScenario()));
+
+        return translatedResponseBody;
+    }
 }
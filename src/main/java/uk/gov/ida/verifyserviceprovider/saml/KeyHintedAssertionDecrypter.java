@@ -0,0 +1,171 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.encryption.EncryptedKey;
+import org.opensaml.xmlsec.encryption.support.DecryptionException;
+import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.saml.security.DecrypterFactory;
+import uk.gov.ida.saml.security.validators.ValidatedResponse;
+import uk.gov.ida.saml.security.validators.encryptedelementtype.EncryptionAlgorithmValidator;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+
+import java.security.KeyException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Decrypts assertions with the private key matching the certificate or public key in each EncryptedKey's
+ * KeyInfo, so that during a key rotation assertions encrypted for the secondary key are not first tried
+ * against the primary key. Keys are only tried in turn when an EncryptedKey carries no usable hint.
+ *
+ * Successes, misses and decryption latency are recorded for each key, named primary and secondary. A failure
+ * with a key named in the KeyInfo is counted as a hint miss, and a failure while trying keys in turn as a
+ * trial miss.
+ */
+public class KeyHintedAssertionDecrypter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeyHintedAssertionDecrypter.class);
+    private static final List<String> KEY_NAMES = Arrays.asList("primary", "secondary");
+
+    private final EncryptionAlgorithmValidator encryptionAlgorithmValidator;
+    private final DecrypterFactory decrypterFactory;
+    private final List<DecryptionKey> decryptionKeys = new ArrayList<>();
+
+    public KeyHintedAssertionDecrypter(
+        List<KeyPair> encryptionKeyPairs,
+        EncryptionAlgorithmValidator encryptionAlgorithmValidator,
+        DecrypterFactory decrypterFactory,
+        MetricRegistry metricRegistry
+    ) {
+        this.encryptionAlgorithmValidator = encryptionAlgorithmValidator;
+        this.decrypterFactory = decrypterFactory;
+
+        for (int i = 0; i < encryptionKeyPairs.size(); i++) {
+            String keyName = i < KEY_NAMES.size() ? KEY_NAMES.get(i) : "key-" + i;
+            decryptionKeys.add(new DecryptionKey(keyName, encryptionKeyPairs.get(i), metricRegistry));
+        }
+    }
+
+    public List<Assertion> decryptAssertions(ValidatedResponse validatedResponse) {
+        return decryptAssertions(validatedResponse.getEncryptedAssertions());
+    }
+
+    public List<Assertion> decryptAssertions(List<EncryptedAssertion> encryptedAssertions) {
+        ImmutableList.Builder<Assertion> assertions = ImmutableList.builder();
+        for (EncryptedAssertion encryptedAssertion : encryptedAssertions) {
+            encryptionAlgorithmValidator.validate(encryptedAssertion);
+            assertions.add(decrypt(encryptedAssertion));
+        }
+        return assertions.build();
+    }
+
+    private Assertion decrypt(EncryptedAssertion encryptedAssertion) {
+        List<DecryptionKey> hintedKeys = findHintedKeys(encryptedAssertion);
+        boolean trial = hintedKeys.isEmpty();
+
+        for (DecryptionKey decryptionKey : trial ? decryptionKeys : hintedKeys) {
+            long start = System.nanoTime();
+            try {
+                Assertion assertion = decryptionKey.createDecrypter().decrypt(encryptedAssertion);
+                decryptionKey.successes.mark();
+                return assertion;
+            } catch (DecryptionException e) {
+                if (trial) {
+                    decryptionKey.trialMisses.mark();
+                } else {
+                    LOG.warn(String.format("Problem decrypting assertion with %s key named in its KeyInfo", decryptionKey.name), e);
+                    decryptionKey.hintMisses.mark();
+                }
+            } finally {
+                decryptionKey.latency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        throw new SamlResponseValidationException("Unable to decrypt assertion with any configured encryption key");
+    }
+
+    private List<DecryptionKey> findHintedKeys(EncryptedAssertion encryptedAssertion) {
+        List<EncryptedKey> encryptedKeys = new ArrayList<>(encryptedAssertion.getEncryptedKeys());
+        KeyInfo dataKeyInfo = encryptedAssertion.getEncryptedData() == null ? null : encryptedAssertion.getEncryptedData().getKeyInfo();
+        if (dataKeyInfo != null) {
+            encryptedKeys.addAll(dataKeyInfo.getEncryptedKeys());
+        }
+
+        List<DecryptionKey> hintedKeys = new ArrayList<>();
+        for (EncryptedKey encryptedKey : encryptedKeys) {
+            for (PublicKey hintedPublicKey : getHintedPublicKeys(encryptedKey.getKeyInfo())) {
+                for (DecryptionKey decryptionKey : decryptionKeys) {
+                    if (decryptionKey.matches(hintedPublicKey) && !hintedKeys.contains(decryptionKey)) {
+                        hintedKeys.add(decryptionKey);
+                    }
+                }
+            }
+        }
+        return hintedKeys;
+    }
+
+    private List<PublicKey> getHintedPublicKeys(KeyInfo keyInfo) {
+        if (keyInfo == null) {
+            return Collections.emptyList();
+        }
+
+        List<PublicKey> publicKeys = new ArrayList<>();
+        try {
+            for (X509Certificate certificate : KeyInfoSupport.getCertificates(keyInfo)) {
+                publicKeys.add(certificate.getPublicKey());
+            }
+            publicKeys.addAll(KeyInfoSupport.getPublicKeys(keyInfo));
+        } catch (CertificateException | KeyException e) {
+            LOG.warn("Unable to read key hint from EncryptedKey KeyInfo", e);
+        }
+        return publicKeys;
+    }
+
+    private class DecryptionKey {
+        private final String name;
+        private final byte[] encodedPublicKey;
+        private final List<Credential> credentials;
+        private final Meter successes;
+        private final Meter trialMisses;
+        private final Meter hintMisses;
+        private final Timer latency;
+
+        private DecryptionKey(String name, KeyPair keyPair, MetricRegistry metricRegistry) {
+            this.name = name;
+            this.encodedPublicKey = keyPair.getPublic().getEncoded();
+            this.credentials = Collections.singletonList(new BasicCredential(keyPair.getPublic(), keyPair.getPrivate()));
+            this.successes = metricRegistry.meter(name(KeyHintedAssertionDecrypter.class, name, "successes"));
+            this.trialMisses = metricRegistry.meter(name(KeyHintedAssertionDecrypter.class, name, "trial-misses"));
+            this.hintMisses = metricRegistry.meter(name(KeyHintedAssertionDecrypter.class, name, "hint-misses"));
+            this.latency = metricRegistry.timer(name(KeyHintedAssertionDecrypter.class, name, "latency"));
+        }
+
+        private boolean matches(PublicKey hintedPublicKey) {
+            return Arrays.equals(encodedPublicKey, hintedPublicKey.getEncoded());
+        }
+
+        private Decrypter createDecrypter() {
+            return decrypterFactory.createDecrypter(credentials);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.core.Response;
+import org.w3c.dom.Element;
+import uk.gov.ida.saml.deserializers.OpenSamlXMLObjectUnmarshaller;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unmarshalls SAML Responses from XML parsed by an {@link XmlParserPool}, rather than the shared parser
+ * behind SamlObjectParser. Both ways in are overridden, so the superclass is given no parser of its own.
+ */
+public class PooledResponseUnmarshaller extends OpenSamlXMLObjectUnmarshaller<Response> {
+
+    private final XmlParserPool xmlParserPool;
+
+    public PooledResponseUnmarshaller(XmlParserPool xmlParserPool) {
+        super(null);
+        this.xmlParserPool = xmlParserPool;
+    }
+
+    @Override
+    public Response fromString(String input) {
+        return fromInputStream(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Parses XML straight from the stream, so callers holding the raw bytes never need them as a String.
+     */
+    public Response fromInputStream(InputStream input) {
+        Element element = xmlParserPool.parse(input).getDocumentElement();
+        Unmarshaller unmarshaller = XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshaller(element);
+        if (unmarshaller == null) {
+            throw new SamlResponseValidationException(String.format("Unable to unmarshall SAML element: %s", element.getLocalName()));
+        }
+
+        XMLObject xmlObject;
+        try {
+            xmlObject = unmarshaller.unmarshall(element);
+        } catch (UnmarshallingException e) {
+            throw new SamlResponseValidationException(String.format("Unable to unmarshall SAML element: %s", e.getMessage()));
+        }
+
+        if (!(xmlObject instanceof Response)) {
+            throw new SamlResponseValidationException(String.format("Expected a SAML Response but got: %s", element.getLocalName()));
+        }
+        return (Response) xmlObject;
+    }
+}
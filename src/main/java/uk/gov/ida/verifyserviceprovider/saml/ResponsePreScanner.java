@@ -0,0 +1,164 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.DateTime;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.core.Response;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Reads just the start of a base64 encoded SAML Response with a streaming parser, and rejects it before any
+ * DOM parsing or signature validation if its root element, InResponseTo, Issuer or IssueInstant could never
+ * be accepted. Nothing is trusted on the strength of this scan: payloads it cannot read are passed on, and
+ * payloads it passes are still fully validated.
+ *
+ * A Response which has already been parsed, such as one read straight from a request body, is given the same
+ * checks before any of its assertions are decrypted or its signature is validated.
+ */
+public class ResponsePreScanner {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private final String expectedIssuer;
+    private final InstantValidator instantValidator;
+    private final MetricRegistry metricRegistry;
+    private final Meter passed;
+    private final Meter deferred;
+
+    public ResponsePreScanner(String expectedIssuer, InstantValidator instantValidator, MetricRegistry metricRegistry) {
+        this.expectedIssuer = expectedIssuer;
+        this.instantValidator = instantValidator;
+        this.metricRegistry = metricRegistry;
+        this.passed = metricRegistry.meter(name(ResponsePreScanner.class, "passed"));
+        this.deferred = metricRegistry.meter(name(ResponsePreScanner.class, "deferred"));
+    }
+
+    public void scan(String samlResponse, ValidationContext validationContext) {
+        if (samlResponse == null) {
+            deferred.mark();
+            return;
+        }
+
+        ScannedResponse scannedResponse;
+        try {
+            scannedResponse = read(samlResponse);
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            deferred.mark();
+            return;
+        }
+
+        check(scannedResponse, validationContext);
+
+        if (scannedResponse.issueInstant != null) {
+            DateTime issueInstant;
+            try {
+                issueInstant = DateTime.parse(scannedResponse.issueInstant);
+            } catch (IllegalArgumentException e) {
+                deferred.mark();
+                return;
+            }
+            checkIssueInstant(issueInstant, validationContext);
+        }
+
+        passed.mark();
+    }
+
+    public void scan(Response response, ValidationContext validationContext) {
+        ScannedResponse scannedResponse = new ScannedResponse();
+        scannedResponse.rootNamespace = response.getElementQName().getNamespaceURI();
+        scannedResponse.rootName = response.getElementQName().getLocalPart();
+        scannedResponse.inResponseTo = response.getInResponseTo();
+        scannedResponse.issuer = response.getIssuer() == null ? null : response.getIssuer().getValue();
+
+        check(scannedResponse, validationContext);
+
+        if (response.getIssueInstant() != null) {
+            checkIssueInstant(response.getIssueInstant(), validationContext);
+        }
+
+        passed.mark();
+    }
+
+    private void check(ScannedResponse scannedResponse, ValidationContext validationContext) {
+        String expectedInResponseTo = validationContext.getExpectedInResponseTo();
+
+        if (!SAMLConstants.SAML20P_NS.equals(scannedResponse.rootNamespace) || !"Response".equals(scannedResponse.rootName)) {
+            throw reject("root", String.format("Expected a SAML Response but got: %s", scannedResponse.rootName));
+        }
+
+        if (expectedInResponseTo != null && !expectedInResponseTo.equals(scannedResponse.inResponseTo)) {
+            throw reject("in-response-to", String.format("Expected InResponseTo to be %s, but was %s", expectedInResponseTo, scannedResponse.inResponseTo));
+        }
+
+        if (expectedIssuer != null && scannedResponse.issuer != null && !expectedIssuer.equals(scannedResponse.issuer)) {
+            throw reject("issuer", String.format("Expected Issuer to be %s, but was %s", expectedIssuer, scannedResponse.issuer));
+        }
+    }
+
+    private void checkIssueInstant(DateTime issueInstant, ValidationContext validationContext) {
+        try {
+            instantValidator.validate(issueInstant, "Response IssueInstant", validationContext);
+        } catch (SamlResponseValidationException e) {
+            metricRegistry.meter(name(ResponsePreScanner.class, "rejected", "issue-instant")).mark();
+            throw e;
+        }
+    }
+
+    private SamlResponseValidationException reject(String reason, String message) {
+        metricRegistry.meter(name(ResponsePreScanner.class, "rejected", reason)).mark();
+        return new SamlResponseValidationException(message);
+    }
+
+    private ScannedResponse read(String samlResponse) throws XMLStreamException {
+        InputStream input = Base64.getMimeDecoder().wrap(new ByteArrayInputStream(samlResponse.getBytes(StandardCharsets.US_ASCII)));
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(input);
+        try {
+            ScannedResponse scannedResponse = new ScannedResponse();
+            reader.nextTag();
+            scannedResponse.rootNamespace = reader.getNamespaceURI();
+            scannedResponse.rootName = reader.getLocalName();
+            scannedResponse.inResponseTo = reader.getAttributeValue(null, "InResponseTo");
+            scannedResponse.issueInstant = reader.getAttributeValue(null, "IssueInstant");
+
+            int event = reader.nextTag();
+            if (event == XMLStreamConstants.START_ELEMENT
+                && SAMLConstants.SAML20_NS.equals(reader.getNamespaceURI())
+                && "Issuer".equals(reader.getLocalName())) {
+                scannedResponse.issuer = reader.getElementText().trim();
+            }
+            return scannedResponse;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    private static class ScannedResponse {
+        private String rootNamespace;
+        private String rootName;
+        private String inResponseTo;
+        private String issueInstant;
+        private String issuer;
+    }
+}
@@ -0,0 +1,131 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.saml.security.validators.ValidatedResponse;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Optionally starts decrypting a Response's assertions on a dedicated executor while the hub signature on
+ * the Response is still being checked.
+ *
+ * The encrypted assertions are cloned into their own DOM documents before any work is handed off, because
+ * the signature validator keeps reading the Response's document. Decrypted assertions are only handed back
+ * through {@link Decryption#getAssertions(ValidatedResponse)}, which needs a Response whose signature has
+ * been validated. A speculation that is never collected is cancelled and its result thrown away by
+ * {@link Decryption#discard()}. Any decryption failure is only reported once the signature has been
+ * validated, so the order of errors seen by callers is unchanged.
+ *
+ * Without an executor, or when the executor's queue is full, assertions are decrypted after signature
+ * validation exactly as before.
+ */
+public class SpeculativeAssertionDecrypter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpeculativeAssertionDecrypter.class);
+
+    private final KeyHintedAssertionDecrypter assertionDecrypter;
+    private final ExecutorService decryptionExecutor;
+    private final Meter started;
+    private final Meter used;
+    private final Meter discarded;
+    private final Meter rejected;
+
+    public SpeculativeAssertionDecrypter(
+        KeyHintedAssertionDecrypter assertionDecrypter,
+        ExecutorService decryptionExecutor,
+        MetricRegistry metricRegistry
+    ) {
+        this.assertionDecrypter = assertionDecrypter;
+        this.decryptionExecutor = decryptionExecutor;
+        this.started = metricRegistry.meter(name(SpeculativeAssertionDecrypter.class, "started"));
+        this.used = metricRegistry.meter(name(SpeculativeAssertionDecrypter.class, "used"));
+        this.discarded = metricRegistry.meter(name(SpeculativeAssertionDecrypter.class, "discarded"));
+        this.rejected = metricRegistry.meter(name(SpeculativeAssertionDecrypter.class, "rejected"));
+    }
+
+    public Decryption start(Response response) {
+        if (decryptionExecutor == null || response.getEncryptedAssertions().isEmpty()) {
+            return new Decryption(null);
+        }
+
+        List<EncryptedAssertion> clonedAssertions;
+        try {
+            clonedAssertions = cloneEncryptedAssertions(response.getEncryptedAssertions());
+        } catch (MarshallingException | UnmarshallingException e) {
+            LOG.warn("Unable to copy encrypted assertions for speculative decryption", e);
+            return new Decryption(null);
+        }
+
+        try {
+            Future<List<Assertion>> future = decryptionExecutor.submit(() -> assertionDecrypter.decryptAssertions(clonedAssertions));
+            started.mark();
+            return new Decryption(future);
+        } catch (RejectedExecutionException e) {
+            rejected.mark();
+            return new Decryption(null);
+        }
+    }
+
+    private List<EncryptedAssertion> cloneEncryptedAssertions(List<EncryptedAssertion> encryptedAssertions) throws MarshallingException, UnmarshallingException {
+        ImmutableList.Builder<EncryptedAssertion> clones = ImmutableList.builder();
+        for (EncryptedAssertion encryptedAssertion : encryptedAssertions) {
+            clones.add(XMLObjectSupport.cloneXMLObject(encryptedAssertion, CloneOutputOption.RootInNewDocument));
+        }
+        return clones.build();
+    }
+
+    public class Decryption {
+        private Future<List<Assertion>> future;
+
+        private Decryption(Future<List<Assertion>> future) {
+            this.future = future;
+        }
+
+        public List<Assertion> getAssertions(ValidatedResponse validatedResponse) {
+            Future<List<Assertion>> speculation = future;
+            future = null;
+            if (speculation == null) {
+                return assertionDecrypter.decryptAssertions(validatedResponse);
+            }
+
+            try {
+                List<Assertion> assertions = speculation.get();
+                used.mark();
+                return assertions;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for assertions to be decrypted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        public void discard() {
+            if (future != null) {
+                future.cancel(true);
+                future = null;
+                discarded.mark();
+            }
+        }
+    }
+}
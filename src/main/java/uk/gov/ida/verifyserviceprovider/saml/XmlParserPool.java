@@ -0,0 +1,171 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.io.CountingInputStream;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import uk.gov.ida.verifyserviceprovider.configuration.XmlParserPoolConfiguration;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * A bounded pool of DocumentBuilders configured for untrusted input. DOCTYPE declarations are rejected
+ * outright, so no entities can be declared or expanded. The JAXP processing limits reject documents that
+ * are nested too deeply or have too many attributes on an element while they are being parsed; JAXP has no
+ * limit on the total number of elements, so that is checked once a document has been parsed. Builders are
+ * created on demand up to the pool size, and callers wait for a builder to be returned once that many are
+ * in use.
+ */
+public class XmlParserPool {
+
+    private static final String JAXP_PROPERTIES = "http://www.oracle.com/xml/jaxp/properties/";
+    private static final int MAX_ATTRIBUTES_PER_ELEMENT = 64;
+    private static final int ENTITY_EXPANSION_LIMIT = 1;
+
+    private static final ErrorHandler THROWING_ERROR_HANDLER = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException exception) {
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+    };
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final BlockingQueue<DocumentBuilder> idle;
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final int size;
+    private final int maxElementCount;
+    private final Timer waits;
+    private final Meter rejections;
+    private final Histogram documentBytes;
+
+    public XmlParserPool(XmlParserPoolConfiguration configuration, MetricRegistry metricRegistry) {
+        this.size = configuration.getSize();
+        this.maxElementCount = configuration.getMaxElementCount();
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.documentBuilderFactory = createDocumentBuilderFactory(configuration.getMaxElementDepth());
+        this.waits = metricRegistry.timer(name(XmlParserPool.class, "waits"));
+        this.rejections = metricRegistry.meter(name(XmlParserPool.class, "rejections"));
+        this.documentBytes = metricRegistry.histogram(name(XmlParserPool.class, "document-bytes"));
+        metricRegistry.register(name(XmlParserPool.class, "in-use"), (Gauge<Integer>) inUse::get);
+        metricRegistry.register(name(XmlParserPool.class, "idle"), (Gauge<Integer>) idle::size);
+    }
+
+    public Document parse(InputStream input) {
+        DocumentBuilder documentBuilder = borrow();
+        CountingInputStream countingInput = new CountingInputStream(input);
+        try {
+            documentBuilder.setErrorHandler(THROWING_ERROR_HANDLER);
+            Document document = documentBuilder.parse(countingInput);
+            documentBytes.update(countingInput.getCount());
+            checkElementCount(document.getDocumentElement(), 0);
+            return document;
+        } catch (SAXException | IOException e) {
+            rejections.mark();
+            throw new SamlResponseValidationException(String.format("Unable to parse SAML XML. %s", e.getMessage()));
+        } finally {
+            giveBack(documentBuilder);
+        }
+    }
+
+    private DocumentBuilder borrow() {
+        DocumentBuilder documentBuilder = idle.poll();
+        if (documentBuilder == null) {
+            documentBuilder = createIfBelowSize();
+        }
+        if (documentBuilder == null) {
+            try (Timer.Context ignored = waits.time()) {
+                documentBuilder = idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for an XML parser", e);
+            }
+        }
+        inUse.incrementAndGet();
+        return documentBuilder;
+    }
+
+    private void giveBack(DocumentBuilder documentBuilder) {
+        inUse.decrementAndGet();
+        documentBuilder.reset();
+        idle.offer(documentBuilder);
+    }
+
+    private DocumentBuilder createIfBelowSize() {
+        int current = created.get();
+        while (current < size) {
+            if (created.compareAndSet(current, current + 1)) {
+                try {
+                    return documentBuilderFactory.newDocumentBuilder();
+                } catch (ParserConfigurationException e) {
+                    created.decrementAndGet();
+                    throw new RuntimeException(e);
+                }
+            }
+            current = created.get();
+        }
+        return null;
+    }
+
+    private int checkElementCount(Node element, int elementCount) {
+        if (++elementCount > maxElementCount) {
+            rejections.mark();
+            throw new SamlResponseValidationException(String.format("SAML XML contains more than %d elements.", maxElementCount));
+        }
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                elementCount = checkElementCount(child, elementCount);
+            }
+        }
+        return elementCount;
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory(int maxElementDepth) {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setIgnoringComments(true);
+        factory.setExpandEntityReferences(false);
+        factory.setXIncludeAware(false);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+        factory.setAttribute(JAXP_PROPERTIES + "maxElementDepth", String.valueOf(maxElementDepth));
+        factory.setAttribute(JAXP_PROPERTIES + "elementAttributeLimit", String.valueOf(MAX_ATTRIBUTES_PER_ELEMENT));
+        factory.setAttribute(JAXP_PROPERTIES + "entityExpansionLimit", String.valueOf(ENTITY_EXPANSION_LIMIT));
+        return factory;
+    }
+}
@@ -1,5 +1,6 @@
 package uk.gov.ida.verifyserviceprovider.services;
 
+import org.joda.time.DateTime;
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.AttributeStatement;
 import org.opensaml.saml.saml2.core.AuthnContext;
@@ -15,7 +16,9 @@ import uk.gov.ida.verifyserviceprovider.validators.ConditionsValidator;
 import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
 import uk.gov.ida.verifyserviceprovider.validators.LevelOfAssuranceValidator;
 import uk.gov.ida.verifyserviceprovider.validators.SubjectValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
+import java.util.Collections;
 import java.util.List;
 
 import static java.util.Optional.ofNullable;
@@ -26,25 +29,41 @@ public class AssertionTranslator {
 
     private final SamlAssertionsSignatureValidator assertionsSignatureValidator;
     private final AssertionValidator assertionValidator;
+    private final ReplayCache replayCache;
+    private final AttributeTranslationService attributeTranslationService;
 
     public AssertionTranslator(
         SamlAssertionsSignatureValidator assertionsSignatureValidator,
         AssertionValidator assertionValidator
+    ) {
+        this(assertionsSignatureValidator, assertionValidator, null, new AttributeTranslationService(Collections.emptyList()));
+    }
+
+    /**
+     * @param replayCache when not null, each assertion can only be translated once before its subject
+     *                    confirmation's NotOnOrAfter plus the clock skew
+     */
+    public AssertionTranslator(
+        SamlAssertionsSignatureValidator assertionsSignatureValidator,
+        AssertionValidator assertionValidator,
+        ReplayCache replayCache,
+        AttributeTranslationService attributeTranslationService
     ) {
         this.assertionsSignatureValidator = assertionsSignatureValidator;
         this.assertionValidator = assertionValidator;
+        this.replayCache = replayCache;
+        this.attributeTranslationService = attributeTranslationService;
     }
 
     public TranslatedResponseBody translate(
         List<Assertion> assertions,
-        String expectedInResponseTo,
         LevelOfAssurance expectedLevelOfAssurance,
-        String entityId
+        ValidationContext validationContext
     ) {
         validateAssertions(assertions);
         Assertion assertion = assertions.get(0);
 
-        assertionValidator.validate(assertion, expectedInResponseTo, entityId);
+        assertionValidator.validate(assertion, validationContext);
         assertionsSignatureValidator.validate(assertions, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
 
         AuthnStatement authnStatement = assertion.getAuthnStatements().get(0);
@@ -53,6 +72,10 @@ public class AssertionTranslator {
         LevelOfAssuranceValidator levelOfAssuranceValidator = new LevelOfAssuranceValidator();
         levelOfAssuranceValidator.validate(levelOfAssurance, expectedLevelOfAssurance);
 
+        if (replayCache != null) {
+            checkForReplay(assertion, validationContext);
+        }
+
         String nameID = assertion.getSubject().getNameID().getValue();
         List<AttributeStatement> attributeStatements = assertion.getAttributeStatements();
         if (isUserAccountCreation(attributeStatements)) {
@@ -60,7 +83,7 @@ public class AssertionTranslator {
                 ACCOUNT_CREATION,
                 nameID,
                 levelOfAssurance,
-                AttributeTranslationService.translateAttributes(attributeStatements.get(0))
+                attributeTranslationService.translate(attributeStatements.get(0))
             );
 
         }
@@ -72,6 +95,15 @@ public class AssertionTranslator {
         return !attributeStatements.isEmpty();
     }
 
+    private void checkForReplay(Assertion assertion, ValidationContext validationContext) {
+        String issuer = assertion.getIssuer() == null ? null : assertion.getIssuer().getValue();
+        DateTime notOnOrAfter = assertion.getSubject().getSubjectConfirmations().get(0).getSubjectConfirmationData().getNotOnOrAfter();
+        long expiryMillis = notOnOrAfter.getMillis() + validationContext.getClockSkewMillis();
+        if (!replayCache.checkAndRecord(issuer + "|" + assertion.getID(), expiryMillis, validationContext.getNowMillis())) {
+            throw new SamlResponseValidationException(String.format("Assertion %s has already been used.", assertion.getID()));
+        }
+    }
+
     private void validateAssertions(List<Assertion> assertions) {
         if (assertions == null || assertions.size() != 1) {
             throw new SamlResponseValidationException("Exactly one assertion is expected.");
@@ -1,10 +1,12 @@
 package uk.gov.ida.verifyserviceprovider.services;
 
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.saml2.core.Attribute;
 import org.opensaml.saml.saml2.core.AttributeStatement;
 import uk.gov.ida.saml.core.extensions.StringValueSamlObject;
 import uk.gov.ida.saml.core.extensions.Verified;
 import uk.gov.ida.saml.core.extensions.impl.AddressImpl;
+import uk.gov.ida.verifyserviceprovider.configuration.AttributeMappingConfiguration;
 import uk.gov.ida.verifyserviceprovider.dto.Address;
 import uk.gov.ida.verifyserviceprovider.dto.Attributes;
 import uk.gov.ida.verifyserviceprovider.dto.VerifiableAttribute;
@@ -13,88 +15,184 @@ import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationExcepti
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
 
+/**
+ * Translates the attributes in an MSA assertion using a table, built once, of the SAML attribute names we
+ * understand and how to read each of their values. Each attribute in a statement is looked up in the table
+ * once, and its value stored in that name's slot; the first attribute with a given name wins. Operators can
+ * add further pairs of string and verified attributes, which are returned in additionalAttributes.
+ */
 public class AttributeTranslationService {
 
+    private static final AttributeTranslationService DEFAULT = new AttributeTranslationService(Collections.emptyList());
+
+    private enum ValueType { STRING, DATE, VERIFIED, ADDRESS, ADDRESS_HISTORY }
+
+    private final Map<String, Mapping> mappings = new HashMap<>();
+    private final VerifiablePair firstName;
+    private final VerifiablePair middleName;
+    private final VerifiablePair surname;
+    private final VerifiablePair dateOfBirth;
+    private final VerifiablePair address;
+    private final int addressHistory;
+    private final int cycle3;
+    private final Map<String, VerifiablePair> additionalAttributes = new LinkedHashMap<>();
+
+    public AttributeTranslationService(List<AttributeMappingConfiguration> additionalAttributeMappings) {
+        firstName = addVerifiable("firstname", "firstname_verified", ValueType.STRING);
+        middleName = addVerifiable("middlename", "middlename_verified", ValueType.STRING);
+        surname = addVerifiable("surname", "surname_verified", ValueType.STRING);
+        dateOfBirth = addVerifiable("dateofbirth", "dateofbirth_verified", ValueType.DATE);
+        address = addVerifiable("currentaddress", "currentaddress_verified", ValueType.ADDRESS);
+        addressHistory = addMapping("addresshistory", ValueType.ADDRESS_HISTORY);
+        cycle3 = addMapping("cycle_3", ValueType.STRING);
+
+        for (AttributeMappingConfiguration mapping : additionalAttributeMappings) {
+            additionalAttributes.put(mapping.getName(), addVerifiable(mapping.getName(), mapping.getVerifiedName(), ValueType.STRING));
+        }
+    }
+
     public static Attributes translateAttributes(AttributeStatement attributeStatement) {
-        List<Attribute> statementAttributes = attributeStatement.getAttributes();
-
-        VerifiableAttribute<String> verifiableFirstName = getVerifiableStringAttribute(statementAttributes, "firstname", "firstname_verified");
-        VerifiableAttribute<String> verifiableMiddleName = getVerifiableStringAttribute(statementAttributes, "middlename", "middlename_verified");
-        VerifiableAttribute<String> verifiableSurname = getVerifiableStringAttribute(statementAttributes, "surname", "surname_verified");
-        VerifiableAttribute<LocalDate> verifiableDob = getVerifiableDateAttribute(statementAttributes, "dateofbirth", "dateofbirth_verified");
-        VerifiableAttribute<Address> verifiableAddress = getVerifiableAddressAttribute(statementAttributes, "currentaddress", "currentaddress_verified");
-        Optional<List<VerifiableAttribute<Address>>> addressHistory = getVerifiableAddressListAttribute(statementAttributes, "addresshistory");
-        Optional<String> cycle3 = getStringAttributeValue(statementAttributes, "cycle_3");
-        return new Attributes(verifiableFirstName, verifiableMiddleName, verifiableSurname, verifiableDob, verifiableAddress, addressHistory.orElse(null), cycle3.orElse(null));
+        return DEFAULT.translate(attributeStatement);
     }
 
-    private static VerifiableAttribute<String> getVerifiableStringAttribute(List<Attribute> statementAttributes, String attributeName, String attributeVerifiedName) {
-        final Optional<String> attributeValue = getStringAttributeValue(statementAttributes, attributeName);
-        final Optional<Boolean> attributeVerified = getBooleanAttributeValue(statementAttributes, attributeVerifiedName);
-        return VerifiableAttribute.fromOptionals(attributeValue, attributeVerified);
+    public Attributes translate(AttributeStatement attributeStatement) {
+        Object[] values = new Object[mappings.size()];
+        boolean[] found = new boolean[mappings.size()];
+        for (Attribute attribute : attributeStatement.getAttributes()) {
+            Mapping mapping = mappings.get(attribute.getName());
+            if (mapping != null && !found[mapping.slot]) {
+                found[mapping.slot] = true;
+                values[mapping.slot] = mapping.readValue(attribute);
+            }
+        }
+
+        Map<String, VerifiableAttribute<String>> additional = new LinkedHashMap<>();
+        for (Map.Entry<String, VerifiablePair> entry : additionalAttributes.entrySet()) {
+            VerifiableAttribute<String> attribute = toVerifiableAttribute(values, entry.getValue());
+            if (attribute != null) {
+                additional.put(entry.getKey(), attribute);
+            }
+        }
+
+        return new Attributes(
+            toVerifiableAttribute(values, firstName),
+            toVerifiableAttribute(values, middleName),
+            toVerifiableAttribute(values, surname),
+            toVerifiableAttribute(values, dateOfBirth),
+            toVerifiableAttribute(values, address),
+            getValue(values, addressHistory),
+            getValue(values, cycle3),
+            additional.isEmpty() ? null : additional
+        );
     }
 
-    private static VerifiableAttribute<LocalDate> getVerifiableDateAttribute(List<Attribute> statementAttributes, String attributeName, String attributeVerifiedName) {
-        final Optional<LocalDate> attributeValue = getDateAttributeValue(statementAttributes, attributeName);
-        final Optional<Boolean> attributeVerified = getBooleanAttributeValue(statementAttributes, attributeVerifiedName);
-        return VerifiableAttribute.fromOptionals(attributeValue, attributeVerified);
+    private VerifiablePair addVerifiable(String name, String verifiedName, ValueType valueType) {
+        return new VerifiablePair(addMapping(name, valueType), addMapping(verifiedName, ValueType.VERIFIED));
     }
 
-    private static VerifiableAttribute<Address> getVerifiableAddressAttribute(List<Attribute> statementAttributes, String attributeName, String attributeVerifiedName) {
-        final Optional<Address> attributeValue = getAddressAttributeValue(statementAttributes, attributeName);
-        final Optional<Boolean> attributeVerified = getBooleanAttributeValue(statementAttributes, attributeVerifiedName);
-        return VerifiableAttribute.fromOptionals(attributeValue, attributeVerified);
+    private int addMapping(String name, ValueType valueType) {
+        if (mappings.containsKey(name)) {
+            throw new IllegalArgumentException(String.format("Attribute '%s' is mapped more than once", name));
+        }
+        int slot = mappings.size();
+        mappings.put(name, new Mapping(name, slot, valueType));
+        return slot;
     }
 
-    private static Optional<List<VerifiableAttribute<Address>>> getVerifiableAddressListAttribute(List<Attribute> statementAttributes, String attributeName) {
-        final Optional<Attribute> attribute = getAttribute(statementAttributes, attributeName);
-        return attribute.map(
-            attr -> attr.getAttributeValues().stream().map(
-                val -> toVerifiableAddress((AddressImpl) val)
-            ).collect(Collectors.toList())
+    private static <T> VerifiableAttribute<T> toVerifiableAttribute(Object[] values, VerifiablePair pair) {
+        return VerifiableAttribute.fromOptionals(
+            Optional.ofNullable(getValue(values, pair.valueSlot)),
+            Optional.ofNullable(getValue(values, pair.verifiedSlot))
         );
     }
 
-    private static Optional<Attribute> getAttribute(List<Attribute> attributes, String name) {
-        return attributes.stream().filter(a -> a.getName().equals(name)).findFirst();
+    @SuppressWarnings("unchecked")
+    private static <T> T getValue(Object[] values, int slot) {
+        return (T) values[slot];
     }
 
-    private static Optional<String> getStringAttributeValue(List<Attribute> attributes, String attributeName) {
-        final Optional<Attribute> attribute = getAttribute(attributes, attributeName);
-        return attribute.map(attr -> {
-            StringValueSamlObject attributeValue = ((StringValueSamlObject) attr.getAttributeValues().get(0));
-            return Optional.ofNullable(attributeValue.getValue()).orElse("");
-        });
-    }
+    private static class VerifiablePair {
+        private final int valueSlot;
+        private final int verifiedSlot;
 
-    private static Optional<Boolean> getBooleanAttributeValue(List<Attribute> attributes, String attributeName) {
-        final Optional<Attribute> attribute = getAttribute(attributes, attributeName);
-        return attribute.map(attr -> ((Verified) attr.getAttributeValues().get(0)).getValue());
+        private VerifiablePair(int valueSlot, int verifiedSlot) {
+            this.valueSlot = valueSlot;
+            this.verifiedSlot = verifiedSlot;
+        }
     }
 
-    private static Optional<LocalDate> getDateAttributeValue(List<Attribute> attributes, String attributeName) {
-        return getStringAttributeValue(attributes, attributeName).map(x -> {
+    private static class Mapping {
+        private final String name;
+        private final int slot;
+        private final ValueType valueType;
+
+        private Mapping(String name, int slot, ValueType valueType) {
+            this.name = name;
+            this.slot = slot;
+            this.valueType = valueType;
+        }
+
+        private Object readValue(Attribute attribute) {
+            List<XMLObject> attributeValues = attribute.getAttributeValues();
+            switch (valueType) {
+                case STRING:
+                    return getStringValue(attributeValues.get(0));
+                case DATE:
+                    return toDate(getStringValue(attributeValues.get(0)));
+                case VERIFIED:
+                    return getValue(attributeValues.get(0), Verified.class).getValue();
+                case ADDRESS:
+                    return toAddress(getValue(attributeValues.get(0), AddressImpl.class));
+                case ADDRESS_HISTORY:
+                    List<VerifiableAttribute<Address>> addresses = new ArrayList<>(attributeValues.size());
+                    for (XMLObject attributeValue : attributeValues) {
+                        AddressImpl addressValue = getValue(attributeValue, AddressImpl.class);
+                        addresses.add(new VerifiableAttribute<>(toAddress(addressValue), addressValue.getVerified()));
+                    }
+                    return addresses;
+                default:
+                    throw new IllegalStateException(String.format("Unknown attribute value type %s", valueType));
+            }
+        }
+
+        private String getStringValue(XMLObject attributeValue) {
+            String value = getValue(attributeValue, StringValueSamlObject.class).getValue();
+            return value == null ? "" : value;
+        }
+
+        private <T> T getValue(XMLObject attributeValue, Class<T> type) {
+            if (!type.isInstance(attributeValue)) {
+                throw new SamlResponseValidationException(
+                    String.format("Unexpected value type for attribute '%s'. Expected %s, got: %s",
+                        name,
+                        type.getSimpleName(),
+                        attributeValue == null ? null : attributeValue.getClass().getSimpleName())
+                );
+            }
+            return type.cast(attributeValue);
+        }
+
+        private LocalDate toDate(String value) {
             try {
-                return LocalDate.parse(x, DateTimeFormatter.ISO_DATE);
+                return LocalDate.parse(value, DateTimeFormatter.ISO_DATE);
             } catch (DateTimeParseException e) {
                 throw new SamlResponseValidationException(
                     String.format("Error in SAML date format for attribute '%s'. Expected ISO date format, got: '%s'",
-                        attributeName,
+                        name,
                         e.getParsedString())
                 );
             }
-        });
-    }
-
-    private static Optional<Address> getAddressAttributeValue(List<Attribute> attributes, String attributeName) {
-        final Optional<Attribute> attribute = getAttribute(attributes, attributeName);
-        return attribute.map(attr -> toAddress((AddressImpl) attr.getAttributeValues().get(0)));
+        }
     }
 
     private static Address toAddress(AddressImpl address) {
@@ -108,12 +206,8 @@ public class AttributeTranslationService {
         );
     }
 
-    private static VerifiableAttribute<Address> toVerifiableAddress(AddressImpl address) {
-        return new VerifiableAttribute<>(toAddress(address), address.getVerified());
-    }
-
     private static String getValueOrNull(StringValueSamlObject attributeValue) {
-        return Optional.ofNullable(attributeValue).map(StringValueSamlObject::getValue).orElse(null);
+        return attributeValue == null ? null : attributeValue.getValue();
     }
 
     private static LocalDate convertToJavaLocalDate(org.joda.time.DateTime joda) {
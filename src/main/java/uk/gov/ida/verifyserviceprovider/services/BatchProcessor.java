@@ -0,0 +1,225 @@
+package uk.gov.ida.verifyserviceprovider.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.dropwizard.jersey.errors.ErrorMessage;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
+import uk.gov.ida.verifyserviceprovider.dto.BatchItemResponseBody;
+import uk.gov.ida.verifyserviceprovider.exceptions.BatchTooLargeException;
+import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdException;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.exceptions.ServiceOverloadedException;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the items of a batch request in parallel on a shared, bounded executor. Each item succeeds or fails
+ * on its own, and results are returned in the order the items were submitted, either as a single JSON array
+ * or as newline delimited JSON written as each item completes.
+ */
+public class BatchProcessor {
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final MediaType APPLICATION_NDJSON_TYPE = MediaType.valueOf(APPLICATION_NDJSON);
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchProcessor.class);
+
+    private final ExecutorService executor;
+    private final int maxBatchSize;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter objectWriter;
+    private final Validator validator;
+
+    public BatchProcessor(ExecutorService executor, int maxBatchSize, ObjectMapper objectMapper, Validator validator) {
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.objectMapper = objectMapper;
+        this.objectWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.validator = validator;
+    }
+
+    public static boolean isStreamingRequested(HttpHeaders httpHeaders) {
+        List<MediaType> acceptableMediaTypes = httpHeaders.getAcceptableMediaTypes();
+        return !acceptableMediaTypes.isEmpty() && APPLICATION_NDJSON_TYPE.equals(acceptableMediaTypes.get(0));
+    }
+
+    /**
+     * Reads a newline delimited JSON stream of batch items. No more than the maximum batch size of items is
+     * read; the batch is rejected as soon as there is another item after that, without it or the rest of
+     * the stream being read.
+     */
+    public <T> List<T> readNdjson(InputStream inputStream, Class<T> itemType) throws IOException {
+        List<T> items = new ArrayList<>();
+        try (MappingIterator<T> iterator = objectMapper.readerFor(itemType).readValues(inputStream)) {
+            while (iterator.hasNextValue()) {
+                if (items.size() == maxBatchSize) {
+                    throw new BatchTooLargeException(String.format("Batch exceeds the maximum batch size of %d", maxBatchSize));
+                }
+                items.add(iterator.nextValue());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Batch items read from a stream are not checked by Jersey, so each is validated as it runs instead.
+     */
+    public <T> void validate(T item) {
+        if (item == null) {
+            throw new ConstraintViolationException("item may not be null", Collections.emptySet());
+        }
+        Set<ConstraintViolation<T>> violations = validator.validate(item);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+    }
+
+    /**
+     * Lets a resource reject a batch before building its items, when the number of items is known up front.
+     */
+    public void checkBatchSize(long itemCount) {
+        if (itemCount > maxBatchSize) {
+            throw new BatchTooLargeException(String.format("Batch of %d items exceeds the maximum batch size of %d", itemCount, maxBatchSize));
+        }
+    }
+
+    public <T> Response process(List<Callable<T>> tasks, boolean streamed) {
+        return process(tasks, streamed, this::submitItem);
+    }
+
+    /**
+     * Runs each item through the given SheddingExecutor rather than the batch executor, so that batch items
+     * queue alongside, and are shed in the same way as, single requests for the same work.
+     */
+    public <T> Response process(List<Callable<T>> tasks, boolean streamed, SheddingExecutor itemExecutor) {
+        return process(tasks, streamed, (index, item) -> itemExecutor.submit(item));
+    }
+
+    private <T> Response process(List<Callable<T>> tasks, boolean streamed, ItemSubmitter<T> itemSubmitter) {
+        checkBatchSize(tasks.size());
+
+        List<Future<BatchItemResponseBody<T>>> futures = new ArrayList<>(tasks.size());
+        for (int index = 0; index < tasks.size(); index++) {
+            int itemIndex = index;
+            Callable<T> task = tasks.get(index);
+            futures.add(itemSubmitter.submit(itemIndex, () -> runItem(itemIndex, task)));
+        }
+
+        if (streamed) {
+            StreamingOutput output = outputStream -> {
+                for (int index = 0; index < futures.size(); index++) {
+                    outputStream.write(objectWriter.writeValueAsBytes(await(index, futures.get(index))));
+                    outputStream.write('\n');
+                    outputStream.flush();
+                }
+            };
+            return Response.ok(output, APPLICATION_NDJSON_TYPE).build();
+        }
+
+        List<BatchItemResponseBody<T>> results = new ArrayList<>(futures.size());
+        for (int index = 0; index < futures.size(); index++) {
+            results.add(await(index, futures.get(index)));
+        }
+        return Response.ok(results, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    /**
+     * Items are never run on the request thread. When the executor's queue is full, the item fails with a 503
+     * and the rest of the batch carries on.
+     */
+    private <T> Future<BatchItemResponseBody<T>> submitItem(int index, Callable<BatchItemResponseBody<T>> item) {
+        try {
+            return executor.submit(item);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(new BatchItemResponseBody<>(index, null, toErrorMessage(index, e)));
+        }
+    }
+
+    private <T> BatchItemResponseBody<T> runItem(int index, Callable<T> task) {
+        try {
+            return new BatchItemResponseBody<>(index, task.call(), null);
+        } catch (Exception e) {
+            return new BatchItemResponseBody<>(index, null, toErrorMessage(index, e));
+        }
+    }
+
+    private <T> BatchItemResponseBody<T> await(int index, Future<BatchItemResponseBody<T>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return new BatchItemResponseBody<>(index, null, toErrorMessage(index, e));
+        } catch (ExecutionException e) {
+            return new BatchItemResponseBody<>(index, null, toErrorMessage(index, e.getCause()));
+        }
+    }
+
+    private ErrorMessage toErrorMessage(int index, Throwable throwable) {
+        if (throwable instanceof InvalidEntityIdException) {
+            LOG.warn(String.format("Batch item %d invalid for this service provider. %s", index, throwable.getMessage()));
+            return new ErrorMessage(HttpStatus.SC_BAD_REQUEST, throwable.getMessage());
+        }
+
+        if (throwable instanceof SamlResponseValidationException || throwable instanceof SamlTransformationErrorException) {
+            LOG.warn(String.format("Error translating saml response in batch item %d. %s", index, throwable.getMessage()));
+            return new ErrorMessage(HttpStatus.SC_BAD_REQUEST, throwable.getMessage());
+        }
+
+        if (throwable instanceof ConstraintViolationException) {
+            Set<ConstraintViolation<?>> violations = ((ConstraintViolationException) throwable).getConstraintViolations();
+            String message = violations.isEmpty() ? throwable.getMessage() : violations.stream()
+                .map(violation -> String.format("%s %s", violation.getPropertyPath(), violation.getMessage()))
+                .sorted()
+                .collect(Collectors.joining(", "));
+            LOG.warn(String.format("Batch item %d failed validation. %s", index, message));
+            return new ErrorMessage(HttpStatus.SC_UNPROCESSABLE_ENTITY, message);
+        }
+
+        if (throwable instanceof RejectedExecutionException) {
+            LOG.warn(String.format("Batch item %d rejected as too many batch items are already queued", index));
+            return new ErrorMessage(HttpStatus.SC_SERVICE_UNAVAILABLE, "Too many batch items are already queued");
+        }
+
+        if (throwable instanceof ServiceOverloadedException) {
+            LOG.warn(String.format("Batch item %d shed. %s", index, throwable.getMessage()));
+            return new ErrorMessage(HttpStatus.SC_SERVICE_UNAVAILABLE, throwable.getMessage());
+        }
+
+        String id = UUID.randomUUID().toString();
+        LOG.error(String.format("Error processing batch item %d (ID %s)", index, id), throwable);
+        return new ErrorMessage(
+            HttpStatus.SC_INTERNAL_SERVER_ERROR,
+            String.format("There was an error processing your request. It has been logged (ID %s).", id)
+        );
+    }
+
+    private interface ItemSubmitter<T> {
+        Future<BatchItemResponseBody<T>> submit(int index, Callable<BatchItemResponseBody<T>> item);
+    }
+}
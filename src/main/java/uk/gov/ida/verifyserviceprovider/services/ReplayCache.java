@@ -0,0 +1,89 @@
+package uk.gov.ida.verifyserviceprovider.services;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.Duration;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Remembers the assertions which have already been translated until they could no longer be accepted.
+ *
+ * Each entry is kept until its expiry, and is also filed in a bucket covering a fixed slice of time. Whole
+ * buckets are swept on each call once their slice has passed, so expired entries are evicted without a
+ * background thread, a lock, or a scan of the whole cache.
+ */
+public class ReplayCache {
+
+    private final long bucketMillis;
+    private final ConcurrentHashMap<String, Long> expiries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Queue<String>> buckets = new ConcurrentSkipListMap<>();
+    private final Meter evictions;
+    private final Meter rejections;
+
+    public ReplayCache(Duration expiryBucketSize, MetricRegistry metricRegistry) {
+        this.bucketMillis = Math.max(1, expiryBucketSize.getMillis());
+        this.evictions = metricRegistry.meter(name(ReplayCache.class, "evictions"));
+        this.rejections = metricRegistry.meter(name(ReplayCache.class, "rejections"));
+        metricRegistry.register(name(ReplayCache.class, "size"), (Gauge<Integer>) expiries::size);
+    }
+
+    /**
+     * @param now the time the caller is validating against, so the whole Response is checked at one instant
+     * @return false if the key has already been recorded and has not yet expired
+     */
+    public boolean checkAndRecord(String key, long expiryMillis, long now) {
+        evictExpired(now);
+
+        if (expiryMillis <= now) {
+            return true;
+        }
+
+        Long existingExpiry = expiries.putIfAbsent(key, expiryMillis);
+        if (existingExpiry != null && (existingExpiry > now || !expiries.replace(key, existingExpiry, expiryMillis))) {
+            rejections.mark();
+            return false;
+        }
+
+        fileInBucket(key, expiryMillis / bucketMillis);
+        return true;
+    }
+
+    public int size() {
+        return expiries.size();
+    }
+
+    /**
+     * A concurrent sweep can remove a bucket between it being looked up and the key being added to it, after
+     * which the key would never be evicted. The key is filed again until it lands in a bucket which was still
+     * in place after the add, and so will be seen by whichever sweep removes it.
+     */
+    private void fileInBucket(String key, long bucketKey) {
+        Queue<String> bucket;
+        do {
+            bucket = buckets.computeIfAbsent(bucketKey, ignored -> new ConcurrentLinkedQueue<>());
+            bucket.add(key);
+        } while (buckets.get(bucketKey) != bucket);
+    }
+
+    private void evictExpired(long now) {
+        Map.Entry<Long, Queue<String>> bucket;
+        while ((bucket = buckets.firstEntry()) != null && (bucket.getKey() + 1) * bucketMillis <= now) {
+            if (buckets.remove(bucket.getKey(), bucket.getValue())) {
+                for (String key : bucket.getValue()) {
+                    Long expiry = expiries.get(key);
+                    if (expiry != null && expiry <= now && expiries.remove(key, expiry)) {
+                        evictions.mark();
+                    }
+                }
+            }
+        }
+    }
+}
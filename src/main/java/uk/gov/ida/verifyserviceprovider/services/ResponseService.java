@@ -7,38 +7,53 @@ import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
 import uk.gov.ida.saml.core.domain.SamlStatusCode;
 import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
-import uk.gov.ida.saml.security.AssertionDecrypter;
 import uk.gov.ida.saml.security.validators.ValidatedResponse;
 import uk.gov.ida.saml.security.validators.signature.SamlResponseSignatureValidator;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.dto.Scenario;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.saml.PooledResponseUnmarshaller;
+import uk.gov.ida.verifyserviceprovider.saml.ResponsePreScanner;
+import uk.gov.ida.verifyserviceprovider.saml.SpeculativeAssertionDecrypter;
+import uk.gov.ida.verifyserviceprovider.saml.SpeculativeAssertionDecrypter.Decryption;
+import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
 import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 
 public class ResponseService {
 
     private final StringToOpenSamlObjectTransformer<Response> stringToOpenSamlObjectTransformer;
-    private final AssertionDecrypter assertionDecrypter;
+    private final PooledResponseUnmarshaller responseUnmarshaller;
+    private final SpeculativeAssertionDecrypter assertionDecrypter;
     private final AssertionTranslator assertionTranslator;
     private final SamlResponseSignatureValidator responseSignatureValidator;
     private final InstantValidator instantValidator;
+    private final ResponsePreScanner responsePreScanner;
+    private final DateTimeComparator dateTimeComparator;
 
     public ResponseService(
+        ResponsePreScanner responsePreScanner,
         StringToOpenSamlObjectTransformer<Response> stringToOpenSamlObjectTransformer,
-        AssertionDecrypter assertionDecrypter,
+        PooledResponseUnmarshaller responseUnmarshaller,
+        SpeculativeAssertionDecrypter assertionDecrypter,
         AssertionTranslator assertionTranslator,
         SamlResponseSignatureValidator responseSignatureValidator,
-        InstantValidator instantValidator
+        InstantValidator instantValidator,
+        DateTimeComparator dateTimeComparator
     ) {
+        this.responsePreScanner = responsePreScanner;
         this.stringToOpenSamlObjectTransformer = stringToOpenSamlObjectTransformer;
+        this.responseUnmarshaller = responseUnmarshaller;
         this.assertionDecrypter = assertionDecrypter;
         this.assertionTranslator = assertionTranslator;
         this.responseSignatureValidator = responseSignatureValidator;
         this.instantValidator = instantValidator;
+        this.dateTimeComparator = dateTimeComparator;
     }
 
     public TranslatedResponseBody convertTranslatedResponseBody(
@@ -47,17 +62,60 @@ public class ResponseService {
         LevelOfAssurance expectedLevelOfAssurance,
         String entityId
     ) {
+        ValidationContext validationContext = dateTimeComparator.createValidationContext(expectedInResponseTo, entityId);
+        responsePreScanner.scan(decodedSamlResponse, validationContext);
         Response response = stringToOpenSamlObjectTransformer.apply(decodedSamlResponse);
 
+        return translateResponse(response, expectedLevelOfAssurance, validationContext);
+    }
+
+    /**
+     * Translates a SAML Response read as XML from a stream, such as a request body, rather than from a base64
+     * encoded String. The stream is not read twice, so the pre-scan checks are made on the parsed Response
+     * instead, still before any assertion is decrypted.
+     */
+    public TranslatedResponseBody convertTranslatedResponseXml(
+        InputStream samlResponseXml,
+        String expectedInResponseTo,
+        LevelOfAssurance expectedLevelOfAssurance,
+        String entityId
+    ) {
+        ValidationContext validationContext = dateTimeComparator.createValidationContext(expectedInResponseTo, entityId);
+        Response response = responseUnmarshaller.fromInputStream(samlResponseXml);
+        responsePreScanner.scan(response, validationContext);
+
+        return translateResponse(response, expectedLevelOfAssurance, validationContext);
+    }
+
+    private TranslatedResponseBody translateResponse(
+        Response response,
+        LevelOfAssurance expectedLevelOfAssurance,
+        ValidationContext validationContext
+    ) {
+        Decryption decryption = assertionDecrypter.start(response);
+        try {
+            return translateResponse(response, decryption, expectedLevelOfAssurance, validationContext);
+        } finally {
+            decryption.discard();
+        }
+    }
+
+    private TranslatedResponseBody translateResponse(
+        Response response,
+        Decryption decryption,
+        LevelOfAssurance expectedLevelOfAssurance,
+        ValidationContext validationContext
+    ) {
         ValidatedResponse validatedResponse = responseSignatureValidator.validate(response, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
 
+        String expectedInResponseTo = validationContext.getExpectedInResponseTo();
         if (!expectedInResponseTo.equals(validatedResponse.getInResponseTo())) {
             throw new SamlResponseValidationException(
                 String.format("Expected InResponseTo to be %s, but was %s", expectedInResponseTo, response.getInResponseTo())
             );
         }
 
-        instantValidator.validate(validatedResponse.getIssueInstant(), "Response IssueInstant");
+        instantValidator.validate(validatedResponse.getIssueInstant(), "Response IssueInstant", validationContext);
 
         StatusCode statusCode = validatedResponse.getStatus().getStatusCode();
 
@@ -65,8 +123,8 @@ public class ResponseService {
             case StatusCode.RESPONDER:
                 return translateNonSuccessResponse(statusCode);
             case StatusCode.SUCCESS:
-                List<Assertion> assertions = assertionDecrypter.decryptAssertions(validatedResponse);
-                return assertionTranslator.translate(assertions, expectedInResponseTo, expectedLevelOfAssurance, entityId);
+                List<Assertion> assertions = decryption.getAssertions(validatedResponse);
+                return assertionTranslator.translate(assertions, expectedLevelOfAssurance, validationContext);
             default:
                 throw new SamlResponseValidationException(String.format("Unknown SAML status: %s", statusCode.getValue()));
         }
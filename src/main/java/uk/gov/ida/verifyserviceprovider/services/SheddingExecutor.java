@@ -0,0 +1,96 @@
+package uk.gov.ida.verifyserviceprovider.services;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.joda.time.Duration;
+import uk.gov.ida.verifyserviceprovider.exceptions.ServiceOverloadedException;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Runs the work for suspended JAX-RS requests on a bounded executor, so that slow CPU-bound work cannot take
+ * over the server's request threads. A request is shed with a {@link ServiceOverloadedException} when the
+ * executor's queue is full, or when it has waited in the queue for longer than the deadline by the time a
+ * thread picks it up.
+ *
+ * Work which is not a whole request, such as the items of a batch, can be submitted on its own and fails
+ * with the same exception when it is shed.
+ *
+ * Queue depth, time spent queued and shed requests are published under the given name.
+ */
+public class SheddingExecutor {
+
+    private final Executor executor;
+    private final long queueDeadlineNanos;
+    private final long retryAfterSeconds;
+    private final Timer waits;
+    private final Meter shed;
+
+    public SheddingExecutor(
+        String name,
+        Executor executor,
+        Collection<Runnable> queue,
+        Duration queueDeadline,
+        Duration retryAfter,
+        MetricRegistry metricRegistry
+    ) {
+        this.executor = executor;
+        this.queueDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(queueDeadline.getMillis());
+        this.retryAfterSeconds = Math.max(1, retryAfter.getStandardSeconds());
+        this.waits = metricRegistry.timer(name(SheddingExecutor.class, name, "waits"));
+        this.shed = metricRegistry.meter(name(SheddingExecutor.class, name, "shed"));
+        metricRegistry.register(name(SheddingExecutor.class, name, "queue-depth"), (Gauge<Integer>) queue::size);
+    }
+
+    public void submit(AsyncResponse asyncResponse, Callable<Response> task) {
+        submit(task).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                asyncResponse.resume(throwable);
+            } else {
+                asyncResponse.resume(response);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> run(result, task, queuedAt));
+        } catch (RejectedExecutionException e) {
+            shed.mark();
+            result.completeExceptionally(new ServiceOverloadedException("Too many requests are already queued", retryAfterSeconds));
+        }
+        return result;
+    }
+
+    private <T> void run(CompletableFuture<T> result, Callable<T> task, long queuedAt) {
+        long waitNanos = System.nanoTime() - queuedAt;
+        waits.update(waitNanos, TimeUnit.NANOSECONDS);
+        if (waitNanos > queueDeadlineNanos) {
+            shed.mark();
+            result.completeExceptionally(new ServiceOverloadedException(
+                String.format("Request waited %d ms to be processed", TimeUnit.NANOSECONDS.toMillis(waitNanos)),
+                retryAfterSeconds
+            ));
+            return;
+        }
+
+        try {
+            result.complete(task.call());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
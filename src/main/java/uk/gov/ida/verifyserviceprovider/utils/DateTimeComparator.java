@@ -1,7 +1,8 @@
 package uk.gov.ida.verifyserviceprovider.utils;
 
-import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.Duration;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
 public class DateTimeComparator {
 
@@ -11,19 +12,14 @@ public class DateTimeComparator {
 
     private final Duration clockSkew;
 
-    public boolean isAfterFuzzy(DateTime source, DateTime target) {
-        return source.isAfter(target.minus(clockSkew));
+    public Duration getClockSkew() {
+        return clockSkew;
     }
 
-    public boolean isBeforeFuzzy(DateTime source, DateTime target) {
-        return source.isBefore(target.plus(clockSkew));
-    }
-
-    public boolean isBeforeNow(DateTime dateTime) {
-        return !isBeforeFuzzy(DateTime.now(), dateTime);
-    }
-
-    public boolean isAfterNow(DateTime dateTime) {
-        return !isAfterFuzzy(DateTime.now(), dateTime);
+    /**
+     * Reads the clock once, so every check made while validating a Response agrees on what "now" is.
+     */
+    public ValidationContext createValidationContext(String expectedInResponseTo, String entityId) {
+        return new ValidationContext(DateTimeUtils.currentTimeMillis(), clockSkew.getMillis(), expectedInResponseTo, entityId);
     }
 }
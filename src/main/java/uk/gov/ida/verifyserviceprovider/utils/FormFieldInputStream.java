@@ -0,0 +1,99 @@
+package uk.gov.ida.verifyserviceprovider.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the value of one field of an application/x-www-form-urlencoded body, URL decoding it as it is read,
+ * so the value is never copied out of the body into a String or a separate array. Field names are matched
+ * as they appear in the body, without being decoded.
+ */
+public class FormFieldInputStream extends InputStream {
+
+    private final byte[] form;
+    private final int end;
+    private int position;
+
+    private FormFieldInputStream(byte[] form, int start, int end) {
+        this.form = form;
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * @return a stream of the decoded value of the first field with the given name, or null if there is none
+     */
+    public static InputStream open(byte[] form, String name) {
+        byte[] prefix = (name + "=").getBytes(StandardCharsets.US_ASCII);
+        int fieldStart = 0;
+        while (fieldStart < form.length) {
+            int fieldEnd = indexOf(form, (byte) '&', fieldStart);
+            if (startsWith(form, fieldStart, fieldEnd, prefix)) {
+                return new FormFieldInputStream(form, fieldStart + prefix.length, fieldEnd);
+            }
+            fieldStart = fieldEnd + 1;
+        }
+        return null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        int b = form[position++] & 0xff;
+        if (b == '+') {
+            return ' ';
+        }
+        if (b != '%') {
+            return b;
+        }
+        if (end - position < 2) {
+            throw new IOException("Incomplete percent-encoding in form field");
+        }
+        int high = Character.digit(form[position++], 16);
+        int low = Character.digit(form[position++], 16);
+        if (high == -1 || low == -1) {
+            throw new IOException("Invalid percent-encoding in form field");
+        }
+        return (high << 4) | low;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int read = 0;
+        while (read < length) {
+            int b = read();
+            if (b == -1) {
+                break;
+            }
+            buffer[offset + read++] = (byte) b;
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return bytes.length;
+    }
+
+    private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package uk.gov.ida.verifyserviceprovider.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+
+public class PublicKeyFingerprint {
+
+    public static String sha256(PublicKey publicKey) {
+        try {
+            return Hex.encode(MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
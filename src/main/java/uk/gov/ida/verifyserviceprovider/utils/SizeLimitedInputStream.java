@@ -0,0 +1,73 @@
+package uk.gov.ida.verifyserviceprovider.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * Counts the bytes read through it and throws as soon as more than maxBytes have been read, so a body which is
+ * too large is rejected without ever being buffered in full.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private final Supplier<? extends RuntimeException> limitExceeded;
+    private long bytesRead;
+
+    public SizeLimitedInputStream(InputStream in, long maxBytes, Supplier<? extends RuntimeException> limitExceeded) {
+        super(in);
+        this.maxBytes = maxBytes;
+        this.limitExceeded = limitExceeded;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    private void count(long n) {
+        bytesRead += n;
+        if (bytesRead > maxBytes) {
+            throw limitExceeded.get();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package uk.gov.ida.verifyserviceprovider.utils;
+
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Serializes an XMLObject's DOM straight through a base64 encoder into a per-thread buffer, so the only full
+ * copy made per call is the returned String. Objects which have already been marshalled, such as signed
+ * AuthnRequests, are written from their existing DOM and are not marshalled again.
+ */
+public class XmlObjectToBase64EncodedStringSerializer {
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFER =
+        ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+    public String serialize(XMLObject xmlObject) {
+        ByteArrayOutputStream buffer = BUFFER.get();
+        buffer.reset();
+        try {
+            try (OutputStream base64Stream = Base64.getEncoder().wrap(buffer)) {
+                SerializeSupport.writeNode(getDom(xmlObject), base64Stream);
+            }
+            return buffer.toString(StandardCharsets.US_ASCII.name());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (buffer.size() > MAX_RETAINED_BUFFER_SIZE) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    private Element getDom(XMLObject xmlObject) {
+        Element element = xmlObject.getDOM();
+        if (element != null) {
+            return element;
+        }
+
+        try {
+            return XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(xmlObject).marshall(xmlObject);
+        } catch (MarshallingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -23,14 +23,14 @@ public class AssertionValidator {
         this.conditionsValidator = conditionsValidator;
     }
 
-    public void validate(Assertion assertion, String expectedInResponseTo, String entityId) {
-        instantValidator.validate(assertion.getIssueInstant(), "Assertion IssueInstant");
-        subjectValidator.validate(assertion.getSubject(), expectedInResponseTo);
-        conditionsValidator.validate(assertion.getConditions(), entityId);
+    public void validate(Assertion assertion, ValidationContext validationContext) {
+        instantValidator.validate(assertion.getIssueInstant(), "Assertion IssueInstant", validationContext);
+        subjectValidator.validate(assertion.getSubject(), validationContext);
+        conditionsValidator.validate(assertion.getConditions(), validationContext);
 
         validateAuthnStatements(assertion.getAuthnStatements());
 
-        instantValidator.validate(assertion.getAuthnStatements().get(0).getAuthnInstant(), "Assertion AuthnInstant");
+        instantValidator.validate(assertion.getAuthnStatements().get(0).getAuthnInstant(), "Assertion AuthnInstant", validationContext);
     }
 
     private void validateAuthnStatements(List<AuthnStatement> authnStatements) {
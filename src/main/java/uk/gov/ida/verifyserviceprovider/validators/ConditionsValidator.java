@@ -17,7 +17,7 @@ public class ConditionsValidator {
         this.audienceRestrictionValidator = audienceRestrictionValidator;
     }
 
-    public void validate(Conditions conditionsElement, String entityId) {
+    public void validate(Conditions conditionsElement, ValidationContext validationContext) {
         if (conditionsElement == null) {
             throw new SamlResponseValidationException("Conditions is missing from the assertion.");
         }
@@ -32,10 +32,10 @@ public class ConditionsValidator {
 
         DateTime notOnOrAfter = conditionsElement.getNotOnOrAfter();
         if (notOnOrAfter != null) {
-            timeRestrictionValidator.validateNotOnOrAfter(notOnOrAfter);
+            timeRestrictionValidator.validateNotOnOrAfter(notOnOrAfter, validationContext);
         }
 
-        timeRestrictionValidator.validateNotBefore(conditionsElement.getNotBefore());
-        audienceRestrictionValidator.validate(conditionsElement.getAudienceRestrictions(), entityId);
+        timeRestrictionValidator.validateNotBefore(conditionsElement.getNotBefore(), validationContext);
+        audienceRestrictionValidator.validate(conditionsElement.getAudienceRestrictions(), validationContext.getEntityId());
     }
 }
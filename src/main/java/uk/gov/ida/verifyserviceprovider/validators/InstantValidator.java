@@ -1,33 +1,29 @@
 package uk.gov.ida.verifyserviceprovider.validators;
 
 import org.joda.time.DateTime;
-import org.joda.time.Duration;
+import org.joda.time.Period;
 import org.joda.time.format.PeriodFormat;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
-import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
+
+import java.util.concurrent.TimeUnit;
 
 import static org.joda.time.DateTimeZone.UTC;
 import static org.joda.time.format.ISODateTimeFormat.dateHourMinuteSecond;
 
 public class InstantValidator {
 
-    private static final Duration MAXIMUM_INSTANT_AGE = Duration.standardMinutes(5);
-    private final DateTimeComparator dateTimeComparator;
-
-    public InstantValidator(DateTimeComparator dateTimeComparator) {
-        this.dateTimeComparator = dateTimeComparator;
-    }
+    private static final long MAXIMUM_INSTANT_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
 
-    public void validate(DateTime instant, String instantName) {
-        Duration age = new Duration(instant, DateTime.now());
-        if (age.isLongerThan(MAXIMUM_INSTANT_AGE)) {
+    public void validate(DateTime instant, String instantName, ValidationContext validationContext) {
+        long ageMillis = validationContext.getAgeMillis(instant.getMillis());
+        if (ageMillis > MAXIMUM_INSTANT_AGE_MILLIS) {
             throw new SamlResponseValidationException(String.format("%s is too far in the past %s",
                 instantName,
-                PeriodFormat.getDefault().print(age.toPeriod()))
+                PeriodFormat.getDefault().print(new Period(ageMillis)))
             );
         }
 
-        if (dateTimeComparator.isAfterNow(instant)) {
+        if (validationContext.isInTheFuture(instant.getMillis())) {
             throw new SamlResponseValidationException(String.format("%s is in the future %s",
                 instantName,
                 instant.withZone(UTC).toString(dateHourMinuteSecond()))
@@ -15,7 +15,7 @@ public class SubjectValidator {
         this.timeRestrictionValidator = timeRestrictionValidator;
     }
 
-    public void validate(Subject subject, String expectedInResponseTo) {
+    public void validate(Subject subject, ValidationContext validationContext) {
         if (subject == null) {
             throw new SamlResponseValidationException("Subject is missing from the assertion.");
         }
@@ -34,20 +34,21 @@ public class SubjectValidator {
             throw new SamlResponseValidationException("Subject confirmation data is missing from the assertion.");
         }
 
-        timeRestrictionValidator.validateNotBefore(subjectConfirmationData.getNotBefore());
+        timeRestrictionValidator.validateNotBefore(subjectConfirmationData.getNotBefore(), validationContext);
 
         DateTime notOnOrAfter = subjectConfirmationData.getNotOnOrAfter();
         if (notOnOrAfter == null) {
             throw new SamlResponseValidationException("Subject confirmation data must contain 'NotOnOrAfter'.");
         }
 
-        timeRestrictionValidator.validateNotOnOrAfter(notOnOrAfter);
+        timeRestrictionValidator.validateNotOnOrAfter(notOnOrAfter, validationContext);
 
         String actualInResponseTo = subjectConfirmationData.getInResponseTo();
         if (actualInResponseTo == null) {
             throw new SamlResponseValidationException("Subject confirmation data must contain 'InResponseTo'.");
         }
 
+        String expectedInResponseTo = validationContext.getExpectedInResponseTo();
         if (!expectedInResponseTo.equals(actualInResponseTo)) {
             throw new SamlResponseValidationException(String.format("'InResponseTo' must match requestId. Expected %s but was %s", expectedInResponseTo, actualInResponseTo));
         }
@@ -2,21 +2,14 @@ package uk.gov.ida.verifyserviceprovider.validators;
 
 import org.joda.time.DateTime;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
-import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
 
 import static org.joda.time.DateTimeZone.UTC;
 import static org.joda.time.format.ISODateTimeFormat.dateHourMinuteSecond;
 
 public class TimeRestrictionValidator {
 
-    private final DateTimeComparator dateTimeComparator;
-
-    public TimeRestrictionValidator(DateTimeComparator dateTimeComparator) {
-        this.dateTimeComparator = dateTimeComparator;
-    }
-
-    public void validateNotOnOrAfter(DateTime notOnOrAfter) {
-        if (dateTimeComparator.isBeforeNow(notOnOrAfter)) {
+    public void validateNotOnOrAfter(DateTime notOnOrAfter, ValidationContext validationContext) {
+        if (validationContext.hasExpired(notOnOrAfter.getMillis())) {
             throw new SamlResponseValidationException(String.format(
                 "Assertion is not valid on or after %s",
                 notOnOrAfter.withZone(UTC).toString(dateHourMinuteSecond())
@@ -24,8 +17,8 @@ public class TimeRestrictionValidator {
         }
     }
 
-    public void validateNotBefore(DateTime notBefore) {
-        if (notBefore != null && dateTimeComparator.isAfterNow(notBefore)) {
+    public void validateNotBefore(DateTime notBefore, ValidationContext validationContext) {
+        if (notBefore != null && validationContext.isInTheFuture(notBefore.getMillis())) {
             throw new SamlResponseValidationException(String.format(
                 "Assertion is not valid before %s",
                 notBefore.withZone(UTC).toString(dateHourMinuteSecond())
@@ -0,0 +1,53 @@
+package uk.gov.ida.verifyserviceprovider.validators;
+
+/**
+ * What the validators for a single SAML Response check against: one reading of the clock, taken when the
+ * Response arrives, and the InResponseTo and entity ID the Response must match. The bounds for expiry and
+ * for instants in the future already allow for clock skew, so each time check is a comparison of two longs.
+ */
+public class ValidationContext {
+
+    private final long nowMillis;
+    private final long clockSkewMillis;
+    private final long expiredAtOrBeforeMillis;
+    private final long futureFromMillis;
+    private final String expectedInResponseTo;
+    private final String entityId;
+
+    public ValidationContext(long nowMillis, long clockSkewMillis, String expectedInResponseTo, String entityId) {
+        this.nowMillis = nowMillis;
+        this.clockSkewMillis = clockSkewMillis;
+        this.expiredAtOrBeforeMillis = nowMillis - clockSkewMillis;
+        this.futureFromMillis = nowMillis + clockSkewMillis;
+        this.expectedInResponseTo = expectedInResponseTo;
+        this.entityId = entityId;
+    }
+
+    public long getNowMillis() {
+        return nowMillis;
+    }
+
+    public long getClockSkewMillis() {
+        return clockSkewMillis;
+    }
+
+    public String getExpectedInResponseTo() {
+        return expectedInResponseTo;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public boolean hasExpired(long notOnOrAfterMillis) {
+        return notOnOrAfterMillis <= expiredAtOrBeforeMillis;
+    }
+
+    public boolean isInTheFuture(long instantMillis) {
+        return instantMillis >= futureFromMillis;
+    }
+
+    public long getAgeMillis(long instantMillis) {
+        return nowMillis - instantMillis;
+    }
+}
@@ -1,6 +1,7 @@
 package feature.uk.gov.ida.verifyserviceprovider.configuration;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.google.common.util.concurrent.Uninterruptibles;
 import common.uk.gov.ida.verifyserviceprovider.servers.MockMsaServer;
 import io.dropwizard.client.JerseyClientBuilder;
 import io.dropwizard.testing.DropwizardTestSupport;
@@ -31,6 +32,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static io.dropwizard.testing.ConfigOverride.config;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.OK;
 import static keystore.builders.KeyStoreResourceBuilder.aKeyStoreResource;
@@ -95,11 +97,7 @@ public class HubMetadataFeatureTest {
         applicationTestSupport.before();
         Client client = new JerseyClientBuilder(applicationTestSupport.getEnvironment()).build("test client");
 
-        Response response = client
-            .target(URI.create(String.format(HEALTHCHECK_URL, applicationTestSupport.getLocalPort())))
-            .request()
-            .buildGet()
-            .invoke();
+        Response response = getHealthcheckOnceRun(client);
 
         String expectedResult = "\"hubMetadata\":{\"healthy\":false";
 
@@ -131,11 +129,7 @@ public class HubMetadataFeatureTest {
         applicationTestSupport.before();
         Client client = new JerseyClientBuilder(applicationTestSupport.getEnvironment()).build("test client");
 
-        Response response = client
-            .target(URI.create(String.format(HEALTHCHECK_URL, applicationTestSupport.getLocalPort())))
-            .request()
-            .buildGet()
-            .invoke();
+        Response response = getHealthcheckOnceRun(client);
 
         String expectedResult = "\"hubMetadata\":{\"healthy\":false";
 
@@ -159,11 +153,7 @@ public class HubMetadataFeatureTest {
         applicationTestSupport.before();
         Client client = new JerseyClientBuilder(applicationTestSupport.getEnvironment()).build("test client");
 
-        Response response = client
-            .target(URI.create(String.format(HEALTHCHECK_URL, applicationTestSupport.getLocalPort())))
-            .request()
-            .buildGet()
-            .invoke();
+        Response response = getHealthcheckOnceRun(client);
 
         String expectedResult = "\"hubMetadata\":{\"healthy\":true";
 
@@ -172,4 +162,24 @@ public class HubMetadataFeatureTest {
         assertThat(response.getStatus()).isEqualTo(OK.getStatusCode());
         assertThat(response.readEntity(String.class)).contains(expectedResult);
     }
+
+    /**
+     * The health checks first run in the background once the application has started.
+     */
+    private Response getHealthcheckOnceRun(Client client) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            Response response = client
+                .target(URI.create(String.format(HEALTHCHECK_URL, applicationTestSupport.getLocalPort())))
+                .request()
+                .buildGet()
+                .invoke();
+            response.bufferEntity();
+            if (!response.readEntity(String.class).contains("has not run yet") || System.currentTimeMillis() > deadline) {
+                return response;
+            }
+            response.close();
+            Uninterruptibles.sleepUninterruptibly(100, MILLISECONDS);
+        }
+    }
 }
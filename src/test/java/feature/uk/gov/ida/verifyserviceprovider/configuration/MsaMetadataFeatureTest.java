@@ -1,6 +1,7 @@
 package feature.uk.gov.ida.verifyserviceprovider.configuration;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.google.common.util.concurrent.Uninterruptibles;
 import common.uk.gov.ida.verifyserviceprovider.servers.MockMsaServer;
 import common.uk.gov.ida.verifyserviceprovider.servers.MockVerifyHubServer;
 import common.uk.gov.ida.verifyserviceprovider.utils.EnvironmentHelper;
@@ -26,6 +27,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static io.dropwizard.testing.ConfigOverride.config;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.OK;
 import static keystore.builders.KeyStoreResourceBuilder.aKeyStoreResource;
@@ -96,11 +98,7 @@ public class MsaMetadataFeatureTest {
         applicationTestSupport.before();
         Client client = new JerseyClientBuilder(applicationTestSupport.getEnvironment()).build("test client");
 
-        Response response = client
-            .target(URI.create(String.format(HEALTHCHECK_URL, applicationTestSupport.getLocalPort())))
-            .request()
-            .buildGet()
-            .invoke();
+        Response response = getHealthcheckOnceRun(client);
 
         String expectedResult = "\"msaMetadata\":{\"healthy\":false";
 
@@ -123,11 +121,7 @@ public class MsaMetadataFeatureTest {
         applicationTestSupport.before();
         Client client = new JerseyClientBuilder(applicationTestSupport.getEnvironment()).build("test client");
 
-        Response response = client
-            .target(URI.create(String.format(HEALTHCHECK_URL, applicationTestSupport.getLocalPort())))
-            .request()
-            .buildGet()
-            .invoke();
+        Response response = getHealthcheckOnceRun(client);
 
         String expectedResult = "\"msaMetadata\":{\"healthy\":true";
 
@@ -136,4 +130,24 @@ public class MsaMetadataFeatureTest {
         assertThat(response.getStatus()).isEqualTo(OK.getStatusCode());
         assertThat(response.readEntity(String.class)).contains(expectedResult);
     }
+
+    /**
+     * The health checks first run in the background once the application has started.
+     */
+    private Response getHealthcheckOnceRun(Client client) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            Response response = client
+                .target(URI.create(String.format(HEALTHCHECK_URL, applicationTestSupport.getLocalPort())))
+                .request()
+                .buildGet()
+                .invoke();
+            response.bufferEntity();
+            if (!response.readEntity(String.class).contains("has not run yet") || System.currentTimeMillis() > deadline) {
+                return response;
+            }
+            response.close();
+            Uninterruptibles.sleepUninterruptibly(100, MILLISECONDS);
+        }
+    }
 }
@@ -2,8 +2,12 @@ package unit.uk.gov.ida.verifyserviceprovider.factories.saml;
 
 import com.google.common.collect.ImmutableList;
 import org.apache.commons.codec.binary.Base64;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.saml.saml2.core.Attribute;
 import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.opensaml.saml.saml2.core.EncryptedAttribute;
@@ -12,6 +16,9 @@ import org.opensaml.saml.saml2.encryption.Decrypter;
 import org.opensaml.saml.saml2.encryption.Encrypter;
 import org.opensaml.security.credential.BasicCredential;
 import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.algorithm.descriptors.DigestSHA256;
+import org.opensaml.xmlsec.algorithm.descriptors.SignatureRSASHA256;
+import org.opensaml.xmlsec.signature.support.Signer;
 import uk.gov.ida.common.shared.security.PrivateKeyFactory;
 import uk.gov.ida.common.shared.security.PrivateKeyStore;
 import uk.gov.ida.common.shared.security.PublicKeyFactory;
@@ -21,11 +28,15 @@ import uk.gov.ida.saml.core.extensions.versioning.Version;
 import uk.gov.ida.saml.core.test.PrivateKeyStoreFactory;
 import uk.gov.ida.saml.core.test.TestEntityIds;
 import uk.gov.ida.saml.security.DecrypterFactory;
+import uk.gov.ida.saml.security.IdaKeyStore;
+import uk.gov.ida.saml.security.IdaKeyStoreCredentialRetriever;
+import uk.gov.ida.saml.security.SignatureFactory;
 import uk.gov.ida.shared.utils.manifest.ManifestReader;
 import uk.gov.ida.verifyserviceprovider.VerifyServiceProviderApplication;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
 import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.SecureRandomRequestIdGenerator;
 
 import java.io.IOException;
 import java.net.URI;
@@ -33,8 +44,10 @@ import java.security.KeyException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
@@ -42,6 +55,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PRIVATE_ENCRYPTION_KEY;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PUBLIC_ENCRYPTION_CERT;
 
 public class AuthnRequestFactoryTest {
 
@@ -61,14 +75,17 @@ public class AuthnRequestFactoryTest {
         final BasicCredential basicCredential = createBasicCredential();
         encrypter = new uk.gov.ida.saml.security.EncrypterFactory().createEncrypter(basicCredential);
         decrypter = new DecrypterFactory().createDecrypter(ImmutableList.of(basicCredential));
-        when(encrypterFactory.createEncrypter()).thenReturn(encrypter);
+        reset(encrypterFactory);
+        when(encrypterFactory.getEncryptionCredential()).thenReturn(basicCredential);
+        when(encrypterFactory.createEncrypter(basicCredential)).thenReturn(encrypter);
         PrivateKeyStore privateKeyStore = new PrivateKeyStoreFactory().create(TestEntityIds.TEST_RP);
         KeyPair keyPair = new KeyPair(KeySupport.derivePublicKey(privateKeyStore.getSigningPrivateKey()), privateKeyStore.getSigningPrivateKey());
         factory = new AuthnRequestFactory(
             DESTINATION,
             keyPair,
             manifestReader,
-            encrypterFactory
+            encrypterFactory,
+            new SecureRandomRequestIdGenerator()
         );
     }
 
@@ -130,6 +147,62 @@ public class AuthnRequestFactoryTest {
         verify(manifestReader, times(1)).getAttributeValueFor(VerifyServiceProviderApplication.class, "Version");
     }
 
+    @Test
+    public void shouldOnlyEncryptVersionsExtensionOncePerHubEncryptionKey() {
+        AuthnRequest firstAuthnRequest = factory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+        AuthnRequest secondAuthnRequest = factory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+
+        verify(encrypterFactory, times(1)).createEncrypter(any(BasicCredential.class));
+        assertThat(secondAuthnRequest.getExtensions().getUnknownXMLObjects().get(0))
+            .isNotSameAs(firstAuthnRequest.getExtensions().getUnknownXMLObjects().get(0));
+    }
+
+    @Test
+    public void shouldEncryptVersionsExtensionAgainWhenHubEncryptionKeyChanges() throws Exception {
+        factory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+
+        BasicCredential rotatedCredential = new BasicCredential(
+            new PublicKeyFactory(new X509CertificateFactory()).createPublicKey(TEST_RP_PUBLIC_ENCRYPTION_CERT)
+        );
+        when(encrypterFactory.getEncryptionCredential()).thenReturn(rotatedCredential);
+        when(encrypterFactory.createEncrypter(rotatedCredential)).thenReturn(encrypter);
+
+        factory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+
+        verify(encrypterFactory, times(1)).createEncrypter(rotatedCredential);
+    }
+
+    @Test
+    public void shouldProduceTheSameXmlAsSigningWithASignatureFactoryBuiltPerRequest() throws Exception {
+        DateTimeUtils.setCurrentMillisFixed(DateTime.parse("2017-11-01T12:00:00Z").getMillis());
+        try {
+            PrivateKeyStore privateKeyStore = new PrivateKeyStoreFactory().create(TestEntityIds.TEST_RP);
+            KeyPair keyPair = new KeyPair(KeySupport.derivePublicKey(privateKeyStore.getSigningPrivateKey()), privateKeyStore.getSigningPrivateKey());
+            AuthnRequestFactory fixedIdFactory = new AuthnRequestFactory(DESTINATION, keyPair, manifestReader, encrypterFactory, () -> "_fixed-request-id");
+
+            AuthnRequest authnRequest = fixedIdFactory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+            AuthnRequest referenceAuthnRequest = fixedIdFactory.buildUnsigned(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+            referenceAuthnRequest.setSignature(createSignatureFactory(keyPair).createSignature());
+            XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(referenceAuthnRequest).marshall(referenceAuthnRequest);
+            Signer.signObject(referenceAuthnRequest.getSignature());
+
+            assertThat(SerializeSupport.nodeToString(authnRequest.getDOM()))
+                .isEqualTo(SerializeSupport.nodeToString(referenceAuthnRequest.getDOM()));
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
+    }
+
+    /**
+     * How AuthnRequestFactory set up signing for every request before it was moved into the constructor.
+     */
+    private SignatureFactory createSignatureFactory(KeyPair signingKeyPair) {
+        IdaKeyStoreCredentialRetriever keyStoreCredentialRetriever = new IdaKeyStoreCredentialRetriever(
+            new IdaKeyStore(signingKeyPair, Collections.emptyList())
+        );
+        return new SignatureFactory(keyStoreCredentialRetriever, new SignatureRSASHA256(), new DigestSHA256());
+    }
+
     private BasicCredential createBasicCredential() {
         final PublicKey publicKey = new PublicKeyFactory(new X509CertificateFactory()).createPublicKey(HUB_TEST_PUBLIC_ENCRYPTION_CERT);
         PrivateKey privateKey = new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(HUB_TEST_PRIVATE_ENCRYPTION_KEY));
@@ -0,0 +1,144 @@
+package unit.uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.codec.binary.Base64;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.crypto.KeySupport;
+import uk.gov.ida.common.shared.security.PrivateKeyFactory;
+import uk.gov.ida.common.shared.security.PrivateKeyStore;
+import uk.gov.ida.common.shared.security.PublicKeyFactory;
+import uk.gov.ida.common.shared.security.X509CertificateFactory;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.core.test.PrivateKeyStoreFactory;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.shared.utils.manifest.ManifestReader;
+import uk.gov.ida.verifyserviceprovider.configuration.AuthnRequestPoolConfiguration;
+import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
+import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.PooledAuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.SecureRandomRequestIdGenerator;
+
+import java.net.URI;
+import java.security.KeyPair;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PRIVATE_ENCRYPTION_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT;
+
+public class PooledAuthnRequestFactoryTest {
+
+    private static final URI DESTINATION = URI.create("http://example.com");
+    private static final String SERVICE_ENTITY_ID = "http://entity-id";
+
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    private final AuthnRequestPoolConfiguration configuration = mock(AuthnRequestPoolConfiguration.class);
+    private MetricRegistry metricRegistry;
+    private EncrypterFactory encrypterFactory;
+    private KeyPair keyPair;
+    private PooledAuthnRequestFactory factory;
+    private Runnable scheduledRefill;
+
+    @Before
+    public void setUp() {
+        IdaSamlBootstrap.bootstrap();
+
+        BasicCredential encryptionCredential = new BasicCredential(
+            new PublicKeyFactory(new X509CertificateFactory()).createPublicKey(HUB_TEST_PUBLIC_ENCRYPTION_CERT),
+            new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(HUB_TEST_PRIVATE_ENCRYPTION_KEY))
+        );
+        encrypterFactory = mock(EncrypterFactory.class);
+        when(encrypterFactory.getEncryptionCredential()).thenReturn(encryptionCredential);
+        when(encrypterFactory.createEncrypter(encryptionCredential))
+            .thenReturn(new uk.gov.ida.saml.security.EncrypterFactory().createEncrypter(encryptionCredential));
+
+        PrivateKeyStore privateKeyStore = new PrivateKeyStoreFactory().create(TestEntityIds.TEST_RP);
+        keyPair = new KeyPair(KeySupport.derivePublicKey(privateKeyStore.getSigningPrivateKey()), privateKeyStore.getSigningPrivateKey());
+
+        when(configuration.getSize()).thenReturn(2);
+        when(configuration.getMaxAge()).thenReturn(Duration.standardMinutes(1));
+    }
+
+    private void createFactory() {
+        metricRegistry = new MetricRegistry();
+        factory = new PooledAuthnRequestFactory(
+            DESTINATION,
+            keyPair,
+            mock(ManifestReader.class),
+            encrypterFactory,
+            new SecureRandomRequestIdGenerator(),
+            singletonList(SERVICE_ENTITY_ID),
+            configuration,
+            executor,
+            metricRegistry
+        );
+
+        ArgumentCaptor<Runnable> refillCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).scheduleWithFixedDelay(refillCaptor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        scheduledRefill = refillCaptor.getValue();
+    }
+
+    @Test
+    public void shouldBuildInlineWhenPoolIsEmpty() {
+        createFactory();
+        AuthnRequest authnRequest = factory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+
+        assertThat(authnRequest.getIssuer().getValue()).isEqualTo(SERVICE_ENTITY_ID);
+        assertThat(authnRequest.getSignature()).isNotNull();
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.factories.saml.PooledAuthnRequestFactory.misses").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldServeDistinctSignedRequestsFromPool() {
+        createFactory();
+        scheduledRefill.run();
+
+        assertThat(poolDepth()).isEqualTo(2);
+
+        AuthnRequest first = factory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+        AuthnRequest second = factory.build(LevelOfAssurance.LEVEL_1, SERVICE_ENTITY_ID);
+
+        assertThat(first.getID()).isNotEqualTo(second.getID());
+        assertThat(first.getIssuer().getValue()).isEqualTo(SERVICE_ENTITY_ID);
+        assertThat(first.getSignature()).isNotNull();
+        assertThat(poolDepth()).isEqualTo(0);
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.factories.saml.PooledAuthnRequestFactory.hits").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotServeExpiredRequestsFromPool() {
+        when(configuration.getMaxAge()).thenReturn(Duration.ZERO);
+        createFactory();
+        scheduledRefill.run();
+
+        factory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.factories.saml.PooledAuthnRequestFactory.hits").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldBuildInlineForUnknownEntityId() {
+        createFactory();
+        AuthnRequest authnRequest = factory.build(LevelOfAssurance.LEVEL_2, "http://other-entity-id");
+
+        assertThat(authnRequest.getIssuer().getValue()).isEqualTo("http://other-entity-id");
+    }
+
+    private int poolDepth() {
+        return (Integer) metricRegistry.getGauges()
+            .get("uk.gov.ida.verifyserviceprovider.factories.saml.PooledAuthnRequestFactory.depth." + SERVICE_ENTITY_ID)
+            .getValue();
+    }
+}
@@ -0,0 +1,87 @@
+package unit.uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.security.crypto.KeySupport;
+import uk.gov.ida.common.shared.security.PrivateKeyStore;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.core.test.PrivateKeyStoreFactory;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.verifyserviceprovider.factories.saml.RedirectBindingEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedirectBindingEncoderTest {
+
+    private PrivateKey signingKey;
+    private RedirectBindingEncoder encoder;
+
+    @Before
+    public void setUp() {
+        IdaSamlBootstrap.bootstrap();
+        PrivateKeyStore privateKeyStore = new PrivateKeyStoreFactory().create(TestEntityIds.TEST_RP);
+        signingKey = privateKeyStore.getSigningPrivateKey();
+        encoder = new RedirectBindingEncoder(signingKey);
+    }
+
+    @Test
+    public void shouldDeflateAndBase64EncodeTheAuthnRequest() throws Exception {
+        String samlRequest = encoder.deflateAndEncode(authnRequest());
+
+        assertThat(inflate(Base64.getDecoder().decode(samlRequest))).contains("ID=\"_some-request-id\"");
+    }
+
+    @Test
+    public void shouldSignTheQueryStringWithADetachedSignature() throws Exception {
+        URI redirectUrl = encoder.createRedirectUrl(URI.create("http://example.com/SAML2/SSO"), encoder.deflateAndEncode(authnRequest()));
+
+        String query = redirectUrl.getRawQuery();
+        String signedPart = query.substring(0, query.indexOf("&Signature="));
+        String signature = URLDecoder.decode(query.substring(query.indexOf("&Signature=") + "&Signature=".length()), "UTF-8");
+
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(KeySupport.derivePublicKey(signingKey));
+        verifier.update(signedPart.getBytes(StandardCharsets.UTF_8));
+        assertThat(verifier.verify(Base64.getDecoder().decode(signature))).isTrue();
+        assertThat(signedPart).contains("&SigAlg=http%3A%2F%2Fwww.w3.org%2F2001%2F04%2Fxmldsig-more%23rsa-sha256");
+    }
+
+    @Test
+    public void shouldAppendToAnExistingQueryString() {
+        URI redirectUrl = encoder.createRedirectUrl(URI.create("http://example.com/SAML2/SSO?foo=bar"), encoder.deflateAndEncode(authnRequest()));
+
+        assertThat(redirectUrl.toString()).startsWith("http://example.com/SAML2/SSO?foo=bar&SAMLRequest=");
+    }
+
+    private AuthnRequest authnRequest() {
+        AuthnRequest authnRequest = new AuthnRequestBuilder().buildObject();
+        authnRequest.setID("_some-request-id");
+        return authnRequest;
+    }
+
+    private String inflate(byte[] deflated) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = new InflaterInputStream(new ByteArrayInputStream(deflated), new Inflater(true))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,68 @@
+package unit.uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import org.junit.Test;
+import uk.gov.ida.verifyserviceprovider.factories.saml.HmacRequestIdGenerator;
+import uk.gov.ida.verifyserviceprovider.factories.saml.SecureRandomRequestIdGenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestIdGeneratorTest {
+
+    private static final byte[] HMAC_KEY = "some-request-id-hmac-key".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void shouldGenerateUnderscorePrefixedRandomIds() {
+        SecureRandomRequestIdGenerator generator = new SecureRandomRequestIdGenerator();
+
+        String requestId = generator.generate();
+
+        assertThat(requestId).matches("_[0-9a-f]{32}");
+        assertThat(generator.generate()).isNotEqualTo(requestId);
+    }
+
+    @Test
+    public void shouldUseANonBlockingAlgorithmRatherThanTheSharedNativePrng() {
+        assertThat(new SecureRandomRequestIdGenerator().getAlgorithm()).isEqualTo("SHA1PRNG");
+    }
+
+    @Test
+    public void shouldUseASeparateGeneratorOnEachThread() throws Exception {
+        SecureRandomRequestIdGenerator generator = new SecureRandomRequestIdGenerator();
+        String requestId = generator.generate();
+
+        ExecutorService otherThread = Executors.newSingleThreadExecutor();
+        try {
+            String otherThreadRequestId = otherThread.submit(generator::generate).get();
+
+            assertThat(otherThreadRequestId).matches("_[0-9a-f]{32}").isNotEqualTo(requestId);
+        } finally {
+            otherThread.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRecogniseHmacBoundIdsItIssued() {
+        HmacRequestIdGenerator generator = new HmacRequestIdGenerator(HMAC_KEY);
+
+        String requestId = generator.generate();
+
+        assertThat(requestId).matches("_[0-9a-f]{64}");
+        assertThat(generator.isIssuedByThisService(requestId)).isTrue();
+        assertThat(new HmacRequestIdGenerator(HMAC_KEY).isIssuedByThisService(requestId)).isTrue();
+    }
+
+    @Test
+    public void shouldNotRecogniseIdsIssuedElsewhere() {
+        HmacRequestIdGenerator generator = new HmacRequestIdGenerator(HMAC_KEY);
+        String otherRequestId = new HmacRequestIdGenerator("some-other-key".getBytes(StandardCharsets.UTF_8)).generate();
+
+        assertThat(generator.isIssuedByThisService(otherRequestId)).isFalse();
+        assertThat(generator.isIssuedByThisService(new SecureRandomRequestIdGenerator().generate())).isFalse();
+        assertThat(generator.isIssuedByThisService("_" + otherRequestId.substring(1).replace('a', 'z'))).isFalse();
+        assertThat(generator.isIssuedByThisService(null)).isFalse();
+    }
+}
@@ -0,0 +1,105 @@
+package unit.uk.gov.ida.verifyserviceprovider.healthcheck;
+
+import com.codahale.metrics.health.HealthCheck;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import uk.gov.ida.verifyserviceprovider.healthcheck.ScheduledHealthCheck;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class ScheduledHealthCheckTest {
+
+    private final ScheduledExecutorService executorService = mock(ScheduledExecutorService.class);
+    private final AtomicInteger checks = new AtomicInteger();
+    private final HealthCheck healthCheck = new HealthCheck() {
+        @Override
+        protected Result check() {
+            return checks.incrementAndGet() == 1 ? Result.healthy() : Result.unhealthy("check " + checks.get());
+        }
+    };
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void shouldNotRunTheCheckUntilStarted() {
+        ScheduledHealthCheck scheduledHealthCheck = new ScheduledHealthCheck(healthCheck, executorService, 1000);
+
+        HealthCheck.Result result = scheduledHealthCheck.execute();
+
+        assertThat(result.isHealthy()).isFalse();
+        assertThat(result.getMessage()).isEqualTo("Health check has not run yet");
+        assertThat(checks.get()).isEqualTo(0);
+        verifyZeroInteractions(executorService);
+    }
+
+    @Test
+    public void shouldReportTheResultOfTheLastScheduledCheck() {
+        ScheduledHealthCheck scheduledHealthCheck = new ScheduledHealthCheck(healthCheck, executorService, 1000);
+        scheduledHealthCheck.start();
+
+        scheduledCheck().run();
+
+        assertThat(scheduledHealthCheck.execute().isHealthy()).isTrue();
+        assertThat(scheduledHealthCheck.execute().isHealthy()).isTrue();
+        assertThat(checks.get()).isEqualTo(1);
+
+        scheduledCheck().run();
+
+        assertThat(scheduledHealthCheck.execute().isHealthy()).isFalse();
+        assertThat(scheduledHealthCheck.execute().getMessage()).isEqualTo("check 2");
+        assertThat(checks.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReportUnhealthyWhenTheLastResultIsMoreThanThreeIntervalsOld() {
+        DateTime checkedAt = DateTime.now();
+        DateTimeUtils.setCurrentMillisFixed(checkedAt.getMillis());
+        ScheduledHealthCheck scheduledHealthCheck = new ScheduledHealthCheck(healthCheck, executorService, 1000);
+        scheduledHealthCheck.start();
+        scheduledCheck().run();
+
+        DateTimeUtils.setCurrentMillisFixed(checkedAt.plusMillis(3000).getMillis());
+        assertThat(scheduledHealthCheck.execute().isHealthy()).isTrue();
+
+        DateTimeUtils.setCurrentMillisFixed(checkedAt.plusMillis(3001).getMillis());
+        HealthCheck.Result result = scheduledHealthCheck.execute();
+        assertThat(result.isHealthy()).isFalse();
+        assertThat(result.getMessage()).contains("3001 ms ago");
+    }
+
+    @Test
+    public void shouldCancelTheScheduleWhenStopped() {
+        ScheduledFuture<?> schedule = mock(ScheduledFuture.class);
+        doReturn(schedule).when(executorService).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any());
+        ScheduledHealthCheck scheduledHealthCheck = new ScheduledHealthCheck(healthCheck, executorService, 1000);
+        scheduledHealthCheck.start();
+
+        scheduledHealthCheck.stop();
+
+        verify(schedule).cancel(false);
+    }
+
+    private Runnable scheduledCheck() {
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).scheduleWithFixedDelay(runnable.capture(), eq(0L), eq(1000L), eq(MILLISECONDS));
+        return runnable.getValue();
+    }
+}
@@ -0,0 +1,135 @@
+package unit.uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.criterion.ProtocolCriterion;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.mockito.ArgumentCaptor;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.criteria.KeyAlgorithmCriterion;
+import org.opensaml.security.criteria.UsageCriterion;
+import uk.gov.ida.verifyserviceprovider.metadata.CachingMetadataCredentialResolver;
+
+import java.security.KeyPairGenerator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingMetadataCredentialResolverTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private final CredentialResolver delegate = mock(CredentialResolver.class);
+    private final RefreshableMetadataResolver metadataResolver = mock(RefreshableMetadataResolver.class);
+    private final Credential credential = mock(Credential.class);
+    private CachingMetadataCredentialResolver credentialResolver;
+
+    @Before
+    public void setUp() throws Exception {
+        when(metadataResolver.getLastUpdate()).thenReturn(new DateTime(1000));
+        when(delegate.resolve(any())).thenReturn(ImmutableList.of(credential));
+        credentialResolver = new CachingMetadataCredentialResolver(delegate, metadataResolver, new MetricRegistry(), "test");
+    }
+
+    @Test
+    public void shouldResolveCredentialsOncePerMetadataGeneration() throws Exception {
+        assertThat(credentialResolver.resolve(signingCriteria("http://entity-id"))).containsExactly(credential);
+        assertThat(credentialResolver.resolveSingle(signingCriteria("http://entity-id"))).isEqualTo(credential);
+
+        verify(delegate, times(1)).resolve(any());
+    }
+
+    @Test
+    public void shouldResolveCredentialsSeparatelyForEachEntity() throws Exception {
+        credentialResolver.resolve(signingCriteria("http://entity-id"));
+        credentialResolver.resolve(signingCriteria("http://other-entity-id"));
+
+        verify(delegate, times(2)).resolve(any());
+    }
+
+    @Test
+    public void shouldNotCacheQueriesWithoutAnEntityId() throws Exception {
+        CriteriaSet criteria = new CriteriaSet(new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+
+        credentialResolver.resolve(criteria);
+        credentialResolver.resolve(criteria);
+
+        verify(delegate, times(2)).resolve(any());
+    }
+
+    @Test
+    public void shouldNotCacheQueriesForOtherProtocols() throws Exception {
+        CriteriaSet criteria = signingCriteria("http://entity-id");
+        criteria.add(new ProtocolCriterion("urn:oasis:names:tc:SAML:1.1:protocol"));
+
+        credentialResolver.resolve(criteria);
+        credentialResolver.resolve(criteria);
+
+        verify(delegate, times(2)).resolve(any());
+    }
+
+    @Test
+    public void shouldApplyTheKeyAlgorithmToTheCachedCredentialsOnEveryQuery() throws Exception {
+        Credential rsaCredential = new BasicCredential(KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic());
+        when(delegate.resolve(any())).thenReturn(ImmutableList.of(rsaCredential));
+
+        CriteriaSet ecCriteria = signingCriteria("http://entity-id");
+        ecCriteria.add(new KeyAlgorithmCriterion("EC"));
+        CriteriaSet rsaCriteria = signingCriteria("http://entity-id");
+        rsaCriteria.add(new KeyAlgorithmCriterion("RSA"));
+
+        assertThat(credentialResolver.resolve(ecCriteria)).isEmpty();
+        assertThat(credentialResolver.resolve(rsaCriteria)).containsExactly(rsaCredential);
+
+        ArgumentCaptor<CriteriaSet> delegateCriteria = ArgumentCaptor.forClass(CriteriaSet.class);
+        verify(delegate, times(1)).resolve(delegateCriteria.capture());
+        assertThat(delegateCriteria.getValue().contains(KeyAlgorithmCriterion.class)).isFalse();
+    }
+
+    @Test
+    public void shouldNotCacheAnEmptyResult() throws Exception {
+        when(delegate.resolve(any())).thenReturn(ImmutableList.of(), ImmutableList.of(credential));
+
+        assertThat(credentialResolver.resolve(signingCriteria("http://entity-id"))).isEmpty();
+        assertThat(credentialResolver.resolve(signingCriteria("http://entity-id"))).containsExactly(credential);
+
+        verify(delegate, times(2)).resolve(any());
+    }
+
+    @Test
+    public void shouldPropagateResolverExceptions() throws Exception {
+        ResolverException resolverException = new ResolverException("metadata unavailable");
+        when(delegate.resolve(any())).thenThrow(resolverException);
+
+        expectedException.expect(ResolverException.class);
+        expectedException.expectMessage("metadata unavailable");
+
+        credentialResolver.resolve(signingCriteria("http://entity-id"));
+    }
+
+    private CriteriaSet signingCriteria(String entityId) {
+        return new CriteriaSet(
+            new EntityIdCriterion(entityId),
+            new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME),
+            new UsageCriterion(UsageType.SIGNING)
+        );
+    }
+}
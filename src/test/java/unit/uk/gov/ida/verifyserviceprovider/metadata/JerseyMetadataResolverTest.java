@@ -0,0 +1,342 @@
+package unit.uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.Uninterruptibles;
+import common.uk.gov.ida.verifyserviceprovider.servers.MockMsaServer;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.UsageType;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.metadata.test.factories.metadata.EntityDescriptorFactory;
+import uk.gov.ida.saml.metadata.test.factories.metadata.MetadataFactory;
+import uk.gov.ida.verifyserviceprovider.metadata.JerseyMetadataResolver;
+import uk.gov.ida.verifyserviceprovider.metadata.MetadataCredentialKey;
+import uk.gov.ida.verifyserviceprovider.metadata.MetadataSnapshot;
+import uk.gov.ida.verifyserviceprovider.metadata.MetadataSnapshotStore;
+import uk.gov.ida.verifyserviceprovider.metadata.RetainedEntitiesMetadataFilter;
+
+import javax.ws.rs.client.ClientBuilder;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.saml.core.test.TestEntityIds.HUB_ENTITY_ID;
+import static uk.gov.ida.saml.core.test.builders.metadata.EntitiesDescriptorBuilder.anEntitiesDescriptor;
+
+public class JerseyMetadataResolverTest {
+
+    private static final String METADATA_PATH = "/matching-service/metadata";
+    private static final DateTime VALID_UNTIL = DateTime.now().plusWeeks(2).withMillisOfSecond(0);
+
+    @ClassRule
+    public static MockMsaServer msaServer = new MockMsaServer();
+
+    @Rule
+    public TemporaryFolder snapshotDirectory = new TemporaryFolder();
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private JerseyMetadataResolver metadataResolver;
+
+    @BeforeClass
+    public static void bootStrapOpenSaml() {
+        IdaSamlBootstrap.bootstrap();
+    }
+
+    @Before
+    public void setUp() {
+        msaServer.resetAll();
+    }
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+        if (metadataResolver != null) {
+            metadataResolver.destroy();
+        }
+    }
+
+    @Test
+    public void shouldSkipRefreshesWhenTheServerReportsMetadataIsNotModified() throws Exception {
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH))
+            .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"v1\"").withBody(MockMsaServer.msaMetadata())));
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH)).withHeader("If-None-Match", equalTo("\"v1\""))
+            .willReturn(aResponse().withStatus(304)));
+        metadataResolver = createMetadataResolver();
+        DateTime lastUpdate = metadataResolver.getLastUpdate();
+
+        metadataResolver.refresh();
+
+        msaServer.verify(getRequestedFor(urlEqualTo(METADATA_PATH)).withHeader("If-None-Match", equalTo("\"v1\"")));
+        assertThat(metadataResolver.getLastUpdate()).isEqualTo(lastUpdate);
+        assertThat(metricRegistry.meter(metricName("skipped.not-modified")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSkipRefreshesWhenTheMetadataMatchesTheDigestOfWhatIsBeingServed() throws Exception {
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH))
+            .willReturn(aResponse().withStatus(200).withBody(MockMsaServer.msaMetadata())));
+        metadataResolver = createMetadataResolver();
+        DateTime lastUpdate = metadataResolver.getLastUpdate();
+
+        metadataResolver.refresh();
+
+        assertThat(metadataResolver.getLastUpdate()).isEqualTo(lastUpdate);
+        assertThat(metricRegistry.meter(metricName("skipped.unchanged")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldProcessMetadataWhichHasChanged() throws Exception {
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH))
+            .willReturn(aResponse().withStatus(200).withBody(metadata(MockMsaServer.MSA_ENTITY_ID))));
+        metadataResolver = createMetadataResolver();
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH))
+            .willReturn(aResponse().withStatus(200).withBody(metadata(MockMsaServer.MSA_ENTITY_ID, HUB_ENTITY_ID))));
+
+        metadataResolver.refresh();
+
+        assertThat(metricRegistry.meter(metricName("skipped.unchanged")).getCount()).isEqualTo(0);
+        assertThat(metricRegistry.meter(metricName("skipped.not-modified")).getCount()).isEqualTo(0);
+        assertThat(metricRegistry.meter(metricName("fetched-bytes")).getCount()).isGreaterThan(0);
+        assertThat(metricRegistry.timer(metricName("refresh-cpu-time")).getCount()).isEqualTo(2);
+        assertThat(metadataResolver.getEntityCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldFetchUnconditionallyAndProcessInFullOnceFullProcessingIsDue() throws Exception {
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH))
+            .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"v1\"").withBody(metadata(MockMsaServer.MSA_ENTITY_ID))));
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH)).withHeader("If-None-Match", equalTo("\"v1\""))
+            .willReturn(aResponse().withStatus(304)));
+        metadataResolver = createMetadataResolver();
+        DateTime lastUpdate = metadataResolver.getLastUpdate();
+
+        DateTimeUtils.setCurrentMillisFixed(DateTime.now().plusHours(7).getMillis());
+        metadataResolver.refresh();
+
+        assertThat(metadataResolver.getLastUpdate()).isNotEqualTo(lastUpdate);
+        assertThat(metricRegistry.meter(metricName("reprocessed")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter(metricName("skipped.not-modified")).getCount()).isEqualTo(0);
+        assertThat(metricRegistry.meter(metricName("skipped.unchanged")).getCount()).isEqualTo(0);
+        msaServer.verify(0, getRequestedFor(urlEqualTo(METADATA_PATH)).withHeader("If-None-Match", equalTo("\"v1\"")));
+
+        metadataResolver.refresh();
+
+        assertThat(metricRegistry.meter(metricName("skipped.not-modified")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRefreshNoLaterThanWhenFullProcessingIsDue() throws Exception {
+        msaServer.serveDefaultMetadata();
+        JerseyMetadataResolver resolver = new JerseyMetadataResolver(ClientBuilder.newClient(), URI.create(msaServer.getUri()), null, metricRegistry, "msa");
+        resolver.setMaxRefreshDelay(TimeUnit.DAYS.toMillis(1));
+        metadataResolver = initialize(resolver);
+
+        metadataResolver.refresh();
+
+        assertThat(metadataResolver.getNextRefresh().isAfter(DateTime.now().plusHours(6))).isFalse();
+    }
+
+    @Test
+    public void shouldResolveEntitiesAndCredentialsFromTheIndex() throws Exception {
+        msaServer.serveDefaultMetadata();
+        metadataResolver = createMetadataResolver();
+
+        EntityDescriptor entityDescriptor = metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(MockMsaServer.MSA_ENTITY_ID)));
+        List<Credential> credentials = metadataResolver.resolveCredentials(
+            new MetadataCredentialKey(MockMsaServer.MSA_ENTITY_ID, IDPSSODescriptor.DEFAULT_ELEMENT_NAME, UsageType.SIGNING)
+        );
+
+        assertThat(entityDescriptor.getEntityID()).isEqualTo(MockMsaServer.MSA_ENTITY_ID);
+        assertThat(metadataResolver.getIndex().getEntityCount()).isEqualTo(1);
+        assertThat(credentials).isNotEmpty();
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion("unknown-entity")))).isNull();
+    }
+
+    @Test
+    public void shouldOnlyResolveEntitiesWhichPassTheFilters() throws Exception {
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH))
+            .willReturn(aResponse().withStatus(200).withBody(metadata(MockMsaServer.MSA_ENTITY_ID, HUB_ENTITY_ID))));
+        JerseyMetadataResolver resolver = new JerseyMetadataResolver(ClientBuilder.newClient(), URI.create(msaServer.getUri()), null, metricRegistry, "msa");
+        resolver.setMetadataFilter(new RetainedEntitiesMetadataFilter(singleton(HUB_ENTITY_ID), metricRegistry, "msa"));
+        metadataResolver = initialize(resolver);
+
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(MockMsaServer.MSA_ENTITY_ID)))).isNull();
+        assertThat(metadataResolver.resolveCredentials(
+            new MetadataCredentialKey(MockMsaServer.MSA_ENTITY_ID, IDPSSODescriptor.DEFAULT_ELEMENT_NAME, UsageType.SIGNING)
+        )).isEmpty();
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(HUB_ENTITY_ID)))).isNotNull();
+        assertThat(metadataResolver.getEntityCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldOnlyHoldTheRetainedEntitiesInMemory() throws Exception {
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH))
+            .willReturn(aResponse().withStatus(200).withBody(metadata(MockMsaServer.MSA_ENTITY_ID, HUB_ENTITY_ID))));
+        JerseyMetadataResolver resolver = new JerseyMetadataResolver(ClientBuilder.newClient(), URI.create(msaServer.getUri()), null, metricRegistry, "msa");
+        resolver.setMetadataFilter(new RetainedEntitiesMetadataFilter(singleton(MockMsaServer.MSA_ENTITY_ID), metricRegistry, "msa"));
+        metadataResolver = initialize(resolver);
+
+        EntityDescriptor entityDescriptor = metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(MockMsaServer.MSA_ENTITY_ID)));
+        EntitiesDescriptor servedMetadata = (EntitiesDescriptor) entityDescriptor.getParent();
+
+        assertThat(metadataResolver.isCacheSourceMetadata()).isFalse();
+        assertThat(servedMetadata.getEntityDescriptors()).extracting(EntityDescriptor::getEntityID).containsExactly(MockMsaServer.MSA_ENTITY_ID);
+        assertThat(servedMetadata.getDOM()).isNull();
+        assertThat(entityDescriptor.getDOM()).isNull();
+        assertThat(metricRegistry.getGauges().get(MetricRegistry.name(RetainedEntitiesMetadataFilter.class, "msa", "retained-entities")).getValue())
+            .isEqualTo(metricRegistry.getGauges().get(metricName("entity-count")).getValue())
+            .isEqualTo(1);
+        assertThat(metricRegistry.getGauges().get(metricName("valid-until")).getValue()).isEqualTo(VALID_UNTIL.getMillis());
+    }
+
+    @Test
+    public void shouldNotBlockLookupsWhileARefreshIsInProgress() throws Exception {
+        msaServer.serveDefaultMetadata();
+        AtomicBoolean blockRefreshes = new AtomicBoolean(false);
+        CountDownLatch refreshStarted = new CountDownLatch(1);
+        CountDownLatch refreshReleased = new CountDownLatch(1);
+        metadataResolver = initialize(new JerseyMetadataResolver(ClientBuilder.newClient(), URI.create(msaServer.getUri()), null, metricRegistry, "msa") {
+            @Override
+            protected byte[] fetchMetadata() throws ResolverException {
+                if (blockRefreshes.get()) {
+                    refreshStarted.countDown();
+                    Uninterruptibles.awaitUninterruptibly(refreshReleased);
+                }
+                return super.fetchMetadata();
+            }
+        });
+        blockRefreshes.set(true);
+        CriteriaSet criteria = new CriteriaSet(new EntityIdCriterion(MockMsaServer.MSA_ENTITY_ID));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<?> refresh = executor.submit(() -> {
+                metadataResolver.refresh();
+                return null;
+            });
+            assertThat(refreshStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Future<EntityDescriptor> lookup = executor.submit(() -> metadataResolver.resolveSingle(criteria));
+
+            assertThat(lookup.get(5, TimeUnit.SECONDS).getEntityID()).isEqualTo(MockMsaServer.MSA_ENTITY_ID);
+            assertThat(refresh.isDone()).isFalse();
+            refreshReleased.countDown();
+            refresh.get(5, TimeUnit.SECONDS);
+        } finally {
+            refreshReleased.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldSeedFromASnapshotWithoutWaitingOnTheNetwork() throws Exception {
+        MetadataSnapshotStore snapshotStore = snapshotStore();
+        snapshotStore.save(new MetadataSnapshot(metadata(MockMsaServer.MSA_ENTITY_ID).getBytes(UTF_8), VALID_UNTIL, DateTime.now().minusHours(1)));
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH)).willReturn(aResponse().withStatus(500)));
+
+        metadataResolver = createMetadataResolver(snapshotStore);
+
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(MockMsaServer.MSA_ENTITY_ID)))).isNotNull();
+    }
+
+    @Test
+    public void shouldIgnoreASnapshotWhichHasExpired() throws Exception {
+        MetadataSnapshotStore snapshotStore = snapshotStore();
+        snapshotStore.save(new MetadataSnapshot(metadata(MockMsaServer.MSA_ENTITY_ID).getBytes(UTF_8), DateTime.now().minusMinutes(1), DateTime.now().minusDays(1)));
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH)).willReturn(aResponse().withStatus(500)));
+
+        metadataResolver = createMetadataResolver(snapshotStore);
+
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(MockMsaServer.MSA_ENTITY_ID)))).isNull();
+    }
+
+    @Test
+    public void shouldRefreshShortlyAfterSeedingFromASnapshot() throws Exception {
+        MetadataSnapshotStore snapshotStore = snapshotStore();
+        snapshotStore.save(new MetadataSnapshot(metadata(MockMsaServer.MSA_ENTITY_ID).getBytes(UTF_8), VALID_UNTIL, DateTime.now().minusHours(1)));
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH)).willReturn(aResponse().withStatus(500)));
+
+        metadataResolver = createMetadataResolver(snapshotStore);
+
+        assertThat(metadataResolver.getNextRefresh().isAfter(DateTime.now().plusSeconds(5))).isFalse();
+    }
+
+    @Test
+    public void shouldSaveASnapshotOfFetchedMetadata() throws Exception {
+        String metadata = metadata(MockMsaServer.MSA_ENTITY_ID);
+        msaServer.stubFor(get(urlEqualTo(METADATA_PATH)).willReturn(aResponse().withStatus(200).withBody(metadata)));
+        MetadataSnapshotStore snapshotStore = snapshotStore();
+
+        metadataResolver = createMetadataResolver(snapshotStore);
+
+        MetadataSnapshot snapshot = snapshotStore.load();
+        assertThat(snapshot.getMetadata()).isEqualTo(metadata.getBytes(UTF_8));
+        assertThat(snapshot.getValidUntil().getMillis()).isEqualTo(VALID_UNTIL.getMillis());
+    }
+
+    private JerseyMetadataResolver createMetadataResolver() throws Exception {
+        return initialize(new JerseyMetadataResolver(ClientBuilder.newClient(), URI.create(msaServer.getUri()), null, metricRegistry, "msa"));
+    }
+
+    private JerseyMetadataResolver createMetadataResolver(MetadataSnapshotStore snapshotStore) throws Exception {
+        JerseyMetadataResolver resolver = new JerseyMetadataResolver(ClientBuilder.newClient(), URI.create(msaServer.getUri()), snapshotStore, metricRegistry, "msa");
+        resolver.setFailFastInitialization(false);
+        return initialize(resolver);
+    }
+
+    private MetadataSnapshotStore snapshotStore() {
+        return new MetadataSnapshotStore(snapshotDirectory.getRoot().toPath(), "msa");
+    }
+
+    private static JerseyMetadataResolver initialize(JerseyMetadataResolver resolver) throws Exception {
+        resolver.setId("msa-metadata");
+        resolver.setParserPool(XMLObjectProviderRegistrySupport.getParserPool());
+        resolver.initialize();
+        return resolver;
+    }
+
+    private static String metadata(String... entityIds) throws Exception {
+        EntityDescriptorFactory entityDescriptorFactory = new EntityDescriptorFactory();
+        List<EntityDescriptor> entityDescriptors = new ArrayList<>();
+        for (String entityId : entityIds) {
+            entityDescriptors.add(entityDescriptorFactory.idpEntityDescriptor(entityId));
+        }
+        return new MetadataFactory().metadata(anEntitiesDescriptor()
+            .withEntityDescriptors(entityDescriptors)
+            .withValidUntil(VALID_UNTIL)
+            .build());
+    }
+
+    private static String metricName(String metric) {
+        return MetricRegistry.name(JerseyMetadataResolver.class, "msa", metric);
+    }
+}
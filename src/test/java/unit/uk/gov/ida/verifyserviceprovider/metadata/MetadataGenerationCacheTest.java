@@ -0,0 +1,53 @@
+package unit.uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import uk.gov.ida.verifyserviceprovider.metadata.MetadataGenerationCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetadataGenerationCacheTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, String> loader = key -> key + "-" + loads.incrementAndGet();
+
+    @Test
+    public void shouldReuseValuesWithinTheSameGeneration() {
+        RefreshableMetadataResolver metadataResolver = mock(RefreshableMetadataResolver.class);
+        when(metadataResolver.getLastUpdate()).thenReturn(new DateTime(1000));
+        MetadataGenerationCache<String, String> cache = new MetadataGenerationCache<>(metadataResolver, metricRegistry, "test");
+
+        assertThat(cache.get("key", loader)).isEqualTo("key-1");
+        assertThat(cache.get("key", loader)).isEqualTo("key-1");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.metadata.MetadataGenerationCache.test.hits").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReloadValuesWhenMetadataIsRefreshed() {
+        RefreshableMetadataResolver metadataResolver = mock(RefreshableMetadataResolver.class);
+        when(metadataResolver.getLastUpdate()).thenReturn(new DateTime(1000), new DateTime(2000));
+        MetadataGenerationCache<String, String> cache = new MetadataGenerationCache<>(metadataResolver, metricRegistry, "test");
+
+        assertThat(cache.get("key", loader)).isEqualTo("key-1");
+        assertThat(cache.get("key", loader)).isEqualTo("key-2");
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.metadata.MetadataGenerationCache.test.rebuilds").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotCacheValuesForNonRefreshableResolvers() {
+        MetadataGenerationCache<String, String> cache = new MetadataGenerationCache<>(mock(MetadataResolver.class), metricRegistry, "test");
+
+        assertThat(cache.get("key", loader)).isEqualTo("key-1");
+        assertThat(cache.get("key", loader)).isEqualTo("key-2");
+    }
+}
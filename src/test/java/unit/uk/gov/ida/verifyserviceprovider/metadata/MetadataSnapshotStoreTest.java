@@ -0,0 +1,70 @@
+package unit.uk.gov.ida.verifyserviceprovider.metadata;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.gov.ida.verifyserviceprovider.metadata.MetadataSnapshot;
+import uk.gov.ida.verifyserviceprovider.metadata.MetadataSnapshotStore;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetadataSnapshotStoreTest {
+
+    private static final byte[] METADATA = "<md:EntitiesDescriptor/>".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldLoadASavedSnapshot() throws Exception {
+        MetadataSnapshotStore store = new MetadataSnapshotStore(temporaryFolder.getRoot().toPath(), "hub");
+        DateTime validUntil = new DateTime(2000);
+        DateTime fetchedAt = new DateTime(1000);
+
+        store.save(new MetadataSnapshot(METADATA, validUntil, fetchedAt));
+        MetadataSnapshot snapshot = store.load();
+
+        assertThat(snapshot.getMetadata()).isEqualTo(METADATA);
+        assertThat(snapshot.getValidUntil().getMillis()).isEqualTo(2000);
+        assertThat(snapshot.getFetchedAt().getMillis()).isEqualTo(1000);
+        assertThat(snapshot.getDigest()).isEqualTo(MetadataSnapshot.sha256(METADATA));
+    }
+
+    @Test
+    public void shouldReturnNullWhenThereIsNoSnapshot() throws Exception {
+        MetadataSnapshotStore store = new MetadataSnapshotStore(temporaryFolder.getRoot().toPath(), "hub");
+
+        assertThat(store.load()).isNull();
+    }
+
+    @Test
+    public void shouldIgnoreASnapshotWhichDoesNotMatchItsDigest() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        MetadataSnapshotStore store = new MetadataSnapshotStore(directory, "hub");
+        store.save(new MetadataSnapshot(METADATA, null, DateTime.now()));
+
+        Files.write(directory.resolve("hub-metadata.xml"), "<md:EntitiesDescriptor></md:EntitiesDescriptor>".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(store.load()).isNull();
+    }
+
+    @Test
+    public void shouldKeepSnapshotsForEachResolverSeparately() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        new MetadataSnapshotStore(directory, "hub").save(new MetadataSnapshot(METADATA, null, DateTime.now()));
+
+        assertThat(new MetadataSnapshotStore(directory, "msa").load()).isNull();
+    }
+
+    @Test
+    public void shouldTreatASnapshotPastItsValidUntilAsExpired() {
+        assertThat(new MetadataSnapshot(METADATA, DateTime.now().minusMinutes(1), DateTime.now()).hasExpired()).isTrue();
+        assertThat(new MetadataSnapshot(METADATA, DateTime.now().plusMinutes(1), DateTime.now()).hasExpired()).isFalse();
+        assertThat(new MetadataSnapshot(METADATA, null, DateTime.now()).hasExpired()).isFalse();
+    }
+}
@@ -0,0 +1,63 @@
+package unit.uk.gov.ida.verifyserviceprovider.metadata;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.metadata.test.factories.metadata.EntityDescriptorFactory;
+import uk.gov.ida.verifyserviceprovider.metadata.RetainedEntitiesMetadataFilter;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.saml.core.test.TestEntityIds.HUB_ENTITY_ID;
+import static uk.gov.ida.saml.core.test.TestEntityIds.TEST_RP_MS;
+import static uk.gov.ida.saml.core.test.builders.metadata.EntitiesDescriptorBuilder.anEntitiesDescriptor;
+
+public class RetainedEntitiesMetadataFilterTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final RetainedEntitiesMetadataFilter filter = new RetainedEntitiesMetadataFilter(singleton(HUB_ENTITY_ID), metricRegistry, "hub");
+
+    @BeforeClass
+    public static void bootStrapOpenSaml() {
+        IdaSamlBootstrap.bootstrap();
+    }
+
+    @Test
+    public void shouldKeepOnlyTheRetainedEntities() throws Exception {
+        EntityDescriptorFactory entityDescriptorFactory = new EntityDescriptorFactory();
+        EntitiesDescriptor metadata = anEntitiesDescriptor()
+            .withEntityDescriptors(ImmutableList.of(
+                entityDescriptorFactory.idpEntityDescriptor(HUB_ENTITY_ID),
+                entityDescriptorFactory.idpEntityDescriptor(TEST_RP_MS)
+            ))
+            .build();
+
+        EntitiesDescriptor filtered = (EntitiesDescriptor) filter.filter(metadata);
+
+        assertThat(filtered.getEntityDescriptors()).extracting(EntityDescriptor::getEntityID).containsExactly(HUB_ENTITY_ID);
+        assertThat(filtered.getDOM()).isNull();
+        assertThat(gauge("retained-entities")).isEqualTo(1);
+        assertThat(gauge("dropped-entities")).isEqualTo(1);
+        assertThat(gauge("retained-xml-objects")).isGreaterThan(1);
+    }
+
+    @Test
+    public void shouldReturnNullWhenNoEntitiesAreRetained() throws Exception {
+        XMLObject metadata = new EntityDescriptorFactory().idpEntityDescriptor(TEST_RP_MS);
+
+        assertThat(filter.filter(metadata)).isNull();
+        assertThat(gauge("retained-entities")).isEqualTo(0);
+        assertThat(gauge("dropped-entities")).isEqualTo(1);
+    }
+
+    private Object gauge(String metric) {
+        Gauge<?> gauge = metricRegistry.getGauges().get(MetricRegistry.name(RetainedEntitiesMetadataFilter.class, "hub", metric));
+        return gauge.getValue();
+    }
+}
@@ -1,6 +1,8 @@
 package unit.uk.gov.ida.verifyserviceprovider.resources;
 
+import io.dropwizard.jackson.Jackson;
 import io.dropwizard.jersey.errors.ErrorMessage;
+import io.dropwizard.jersey.validation.Validators;
 import io.dropwizard.testing.junit.ResourceTestRule;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
@@ -11,28 +13,46 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.opensaml.saml.saml2.core.impl.AuthnRequestBuilder;
 import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.core.test.PrivateKeyStoreFactory;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.verifyserviceprovider.dto.BatchItemResponseBody;
+import uk.gov.ida.verifyserviceprovider.dto.BatchRequestGenerationBody;
+import uk.gov.ida.verifyserviceprovider.dto.Binding;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.dto.RequestGenerationBody;
 import uk.gov.ida.verifyserviceprovider.dto.RequestResponseBody;
+import uk.gov.ida.verifyserviceprovider.exceptions.BatchTooLargeExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdException;
 import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.JerseyViolationExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.JsonProcessingExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.RedirectBindingEncoder;
 import uk.gov.ida.verifyserviceprovider.resources.GenerateAuthnRequestResource;
+import uk.gov.ida.verifyserviceprovider.services.BatchProcessor;
 import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
 
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static java.util.Arrays.asList;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -51,7 +71,14 @@ public class GenerateAuthnRequestResourceTest {
         .addProvider(JerseyViolationExceptionMapper.class)
         .addProvider(JsonProcessingExceptionMapper.class)
         .addProvider(InvalidEntityIdExceptionMapper.class)
-        .addResource(new GenerateAuthnRequestResource(authnRequestFactory, HUB_SSO_LOCATION, entityIdService))
+        .addProvider(BatchTooLargeExceptionMapper.class)
+        .addResource(new GenerateAuthnRequestResource(
+            authnRequestFactory,
+            HUB_SSO_LOCATION,
+            entityIdService,
+            new BatchProcessor(Executors.newFixedThreadPool(2), 5, Jackson.newObjectMapper(), Validators.newValidator()),
+            new RedirectBindingEncoder(new PrivateKeyStoreFactory().create(TestEntityIds.TEST_RP).getSigningPrivateKey())
+        ))
         .build();
 
     @Before
@@ -107,6 +134,27 @@ public class GenerateAuthnRequestResourceTest {
         }
     }
 
+    @Test
+    public void redirectBindingReturnsASignedRedirectUrl() {
+        when(authnRequestFactory.buildUnsigned(any(), eq(defaultEntityId))).thenReturn(authnRequest);
+        RequestGenerationBody requestGenerationBody = new RequestGenerationBody(LevelOfAssurance.LEVEL_2, null, Binding.REDIRECT);
+
+        Response response = resources.target("/generate-request").request().post(Entity.entity(requestGenerationBody, MediaType.APPLICATION_JSON_TYPE));
+        RequestResponseBody requestResponseBody = response.readEntity(RequestResponseBody.class);
+
+        assertThat(requestResponseBody.getRequestId()).isEqualTo("some-id");
+        assertThat(requestResponseBody.getRedirectUrl().toString())
+            .startsWith(HUB_SSO_LOCATION + "?SAMLRequest=")
+            .contains("&SigAlg=")
+            .contains("&Signature=");
+    }
+
+    @Test
+    public void postBindingDoesNotReturnARedirectUrl() {
+        when(authnRequestFactory.build(any(), eq(defaultEntityId))).thenReturn(authnRequest);
+        assertThat(generateRequest().getRedirectUrl()).isNull();
+    }
+
     @Test
     public void returns422ForBadJson() {
         Response response = resources.target("/generate-request")
@@ -144,6 +192,88 @@ public class GenerateAuthnRequestResourceTest {
         assertThat(responseEntity.getDetails()).isNullOrEmpty();
     }
 
+    @Test
+    public void batchReturnsOneResultPerRequestedAuthnRequest() {
+        clearInvocations(entityIdService);
+        when(authnRequestFactory.build(any(), eq(defaultEntityId))).thenReturn(authnRequest);
+        List<BatchRequestGenerationBody> batch = asList(
+            new BatchRequestGenerationBody(LevelOfAssurance.LEVEL_2, null, 2),
+            new BatchRequestGenerationBody(LevelOfAssurance.LEVEL_1, null, null)
+        );
+
+        Response response = resources.target("/generate-request/batch").request().post(Entity.entity(batch, MediaType.APPLICATION_JSON_TYPE));
+        List<BatchItemResponseBody<RequestResponseBody>> results = response.readEntity(new GenericType<List<BatchItemResponseBody<RequestResponseBody>>>() {});
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(results).extracting(BatchItemResponseBody::getIndex).containsExactly(0, 1, 2);
+        assertThat(results).extracting(result -> result.getResult().getSsoLocation()).containsOnly(HUB_SSO_LOCATION);
+        verify(entityIdService, times(1)).getEntityId(any(RequestGenerationBody.class));
+    }
+
+    @Test
+    public void batchReportsErrorsPerItem() {
+        when(authnRequestFactory.build(any(), eq(defaultEntityId))).thenReturn(authnRequest);
+        when(entityIdService.getEntityId(argThat((RequestGenerationBody body) -> body != null && body.getEntityId() != null)))
+            .thenThrow(new InvalidEntityIdException("Provided entityId: http://unknown-entity-id is not listed in config"));
+        List<BatchRequestGenerationBody> batch = asList(
+            new BatchRequestGenerationBody(LevelOfAssurance.LEVEL_2, "http://unknown-entity-id", 1),
+            new BatchRequestGenerationBody(LevelOfAssurance.LEVEL_2, null, 1)
+        );
+
+        Response response = resources.target("/generate-request/batch").request().post(Entity.entity(batch, MediaType.APPLICATION_JSON_TYPE));
+        List<BatchItemResponseBody<RequestResponseBody>> results = response.readEntity(new GenericType<List<BatchItemResponseBody<RequestResponseBody>>>() {});
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(results.get(0).getError()).isEqualTo(new ErrorMessage(400, "Provided entityId: http://unknown-entity-id is not listed in config"));
+        assertThat(results.get(0).getResult()).isNull();
+        assertThat(results.get(1).getError()).isNull();
+        assertThat(results.get(1).getResult().getRequestId()).isEqualTo("some-id");
+    }
+
+    @Test
+    public void batchStreamsNewlineDelimitedJsonWhenRequested() {
+        when(authnRequestFactory.build(any(), eq(defaultEntityId))).thenReturn(authnRequest);
+        List<BatchRequestGenerationBody> batch = asList(new BatchRequestGenerationBody(LevelOfAssurance.LEVEL_2, null, 3));
+
+        Response response = resources.target("/generate-request/batch")
+            .request(BatchProcessor.APPLICATION_NDJSON)
+            .post(Entity.entity(batch, MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(response.readEntity(String.class).split("\n")).hasSize(3);
+    }
+
+    @Test
+    public void batchReturns422WhenTooLarge() {
+        List<BatchRequestGenerationBody> batch = asList(new BatchRequestGenerationBody(LevelOfAssurance.LEVEL_2, null, 6));
+
+        Response response = resources.target("/generate-request/batch").request().post(Entity.entity(batch, MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.readEntity(ErrorMessage.class)).isEqualTo(new ErrorMessage(
+            422,
+            "Batch of 6 items exceeds the maximum batch size of 5")
+        );
+    }
+
+    @Test
+    public void batchReturns422WithoutBuildingAnyRequestsWhenTheCountIsHuge() {
+        List<BatchRequestGenerationBody> batch = asList(
+            new BatchRequestGenerationBody(LevelOfAssurance.LEVEL_2, null, 2000000000),
+            new BatchRequestGenerationBody(LevelOfAssurance.LEVEL_2, null, 2000000000)
+        );
+
+        Response response = resources.target("/generate-request/batch").request().post(Entity.entity(batch, MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.readEntity(ErrorMessage.class)).isEqualTo(new ErrorMessage(
+            422,
+            "Batch of 4000000000 items exceeds the maximum batch size of 5")
+        );
+        verify(authnRequestFactory, never()).build(any(), any());
+        verify(entityIdService, never()).getEntityId(any(RequestGenerationBody.class));
+    }
+
     private RequestResponseBody generateRequest() {
         RequestGenerationBody requestGenerationBody = new RequestGenerationBody(LevelOfAssurance.LEVEL_2, null);
         Response response = resources.target("/generate-request").request().post(Entity.entity(requestGenerationBody, MediaType.APPLICATION_JSON_TYPE));
@@ -1,9 +1,15 @@
 package unit.uk.gov.ida.verifyserviceprovider.resources;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import io.dropwizard.jackson.Jackson;
 import io.dropwizard.jersey.errors.ErrorMessage;
+import io.dropwizard.jersey.validation.Validators;
 import io.dropwizard.testing.junit.ResourceTestRule;
 import org.apache.http.HttpStatus;
+import org.joda.time.Duration;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
@@ -13,20 +19,41 @@ import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.slf4j.event.Level;
 import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
+import uk.gov.ida.verifyserviceprovider.configuration.RequestSizeLimitsConfiguration;
+import uk.gov.ida.verifyserviceprovider.dto.BatchItemResponseBody;
 import uk.gov.ida.verifyserviceprovider.dto.Scenario;
 import uk.gov.ida.verifyserviceprovider.dto.TranslateSamlResponseBody;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
+import uk.gov.ida.verifyserviceprovider.exceptions.BatchTooLargeExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.JerseyViolationExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.JsonProcessingExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.RequestTooLargeExceptionMapper;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.resources.RequestSizeLimitFeature;
 import uk.gov.ida.verifyserviceprovider.resources.TranslateSamlResponseResource;
+import uk.gov.ida.verifyserviceprovider.services.BatchProcessor;
 import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
 import uk.gov.ida.verifyserviceprovider.services.ResponseService;
+import uk.gov.ida.verifyserviceprovider.services.SheddingExecutor;
 
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static javax.ws.rs.client.Entity.json;
@@ -47,13 +74,29 @@ public class TranslateSamlResponseResourceTest {
     private static ResponseService responseService = mock(ResponseService.class);
     private static EntityIdService entityIdService = mock(EntityIdService.class);
     private static final String defaultEntityId = "http://default-entity-id";
+    private static final ThreadPoolExecutor translationExecutor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(10));
 
     @ClassRule
     public static final ResourceTestRule resources = ResourceTestRule.builder()
         .addProvider(JerseyViolationExceptionMapper.class)
         .addProvider(JsonProcessingExceptionMapper.class)
         .addProvider(InvalidEntityIdExceptionMapper.class)
-        .addResource(new TranslateSamlResponseResource(responseService, entityIdService))
+        .addProvider(BatchTooLargeExceptionMapper.class)
+        .addProvider(RequestTooLargeExceptionMapper.class)
+        .addProvider(new RequestSizeLimitFeature(new RequestSizeLimitsConfiguration(), new MetricRegistry()))
+        .addResource(new TranslateSamlResponseResource(
+            responseService,
+            entityIdService,
+            new BatchProcessor(Executors.newFixedThreadPool(2), 3, Jackson.newObjectMapper(), Validators.newValidator()),
+            new SheddingExecutor(
+                "translate-response",
+                translationExecutor,
+                translationExecutor.getQueue(),
+                Duration.standardSeconds(5),
+                Duration.standardSeconds(1),
+                new MetricRegistry()
+            )
+        ))
         .build();
 
     @Before
@@ -145,4 +188,183 @@ public class TranslateSamlResponseResourceTest {
         assertThat(actualErrors).isEqualTo(expectedErrors);
     }
 
+    @Test
+    public void shouldTranslateSamlXmlPostedAsAnOctetStream() throws Exception {
+        AtomicReference<String> parsedXml = captureParsedXml();
+
+        Response response = resources.client()
+            .target("/translate-response")
+            .request()
+            .header(TranslateSamlResponseResource.REQUEST_ID_HEADER, "some-request-id")
+            .header(TranslateSamlResponseResource.LEVEL_OF_ASSURANCE_HEADER, LEVEL_2.name())
+            .post(Entity.entity("<saml2p:Response/>", MediaType.APPLICATION_OCTET_STREAM_TYPE));
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(response.readEntity(TranslatedResponseBody.class).getPid()).isEqualTo("some-pid");
+        assertThat(parsedXml.get()).isEqualTo("<saml2p:Response/>");
+    }
+
+    @Test
+    public void shouldReturn413WhenSamlXmlPostedAsAnOctetStreamIsTooLarge() throws Exception {
+        Response response = resources.client()
+            .target("/translate-response")
+            .request()
+            .header(TranslateSamlResponseResource.REQUEST_ID_HEADER, "some-request-id")
+            .header(TranslateSamlResponseResource.LEVEL_OF_ASSURANCE_HEADER, LEVEL_2.name())
+            .post(Entity.entity(String.join("", Collections.nCopies(70_000, "a")), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SC_REQUEST_TOO_LONG);
+        assertThat(response.readEntity(ErrorMessage.class).getMessage()).isEqualTo("Request body for translate-response is larger than 65536 bytes");
+        verify(responseService, times(0)).convertTranslatedResponseXml(any(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldTranslateSamlResponsePostedAsAForm() throws Exception {
+        AtomicReference<String> parsedXml = captureParsedXml();
+        String samlResponse = Base64.getEncoder().encodeToString("<saml2p:Response ID=\"a+b/c\"/>".getBytes(StandardCharsets.UTF_8));
+
+        Response response = postForm(new Form("RelayState", "some-relay-state").param("SAMLResponse", samlResponse));
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(parsedXml.get()).isEqualTo("<saml2p:Response ID=\"a+b/c\"/>");
+    }
+
+    @Test
+    public void shouldIgnoreLineBreaksInASamlResponsePostedAsAForm() throws Exception {
+        AtomicReference<String> parsedXml = captureParsedXml();
+        String xml = "<saml2p:Response ID=\"" + String.join("", Collections.nCopies(100, "a")) + "\"/>";
+        String samlResponse = Base64.getMimeEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8)) + "\r\n";
+        assertThat(samlResponse).contains("\r\n");
+
+        Response response = postForm(new Form("SAMLResponse", samlResponse));
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(parsedXml.get()).isEqualTo(xml);
+    }
+
+    @Test
+    public void shouldReturn422WhenTheFormHasNoSamlResponse() throws Exception {
+        Response response = postForm(new Form("RelayState", "some-relay-state"));
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SC_UNPROCESSABLE_ENTITY);
+        assertThat(response.readEntity(ErrorMessage.class).getMessage()).isEqualTo("form field SAMLResponse may not be null");
+        verify(responseService, times(0)).convertTranslatedResponseXml(any(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldReturn413WhenRequestBodyIsTooLarge() throws Exception {
+        JSONObject translateResponseRequest = new JSONObject().put("samlResponse", String.join("", Collections.nCopies(70_000, "a")))
+            .put("requestId", "some-request-id")
+            .put("levelOfAssurance", LEVEL_2.name());
+
+        Response response = resources.client()
+            .target("/translate-response")
+            .request()
+            .post(json(translateResponseRequest.toString()));
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SC_REQUEST_TOO_LONG);
+
+        ErrorMessage actualError = response.readEntity(ErrorMessage.class);
+        assertThat(actualError.getMessage()).isEqualTo("Request body for translate-response is larger than 65536 bytes");
+        verify(responseService, times(0)).convertTranslatedResponseBody(any(), any(), any(), any());
+    }
+
+    @Test
+    public void batchReturnsResultsAndErrorsInInputOrder() throws Exception {
+        when(responseService.convertTranslatedResponseBody(eq("good-saml-response"), any(), eq(LEVEL_2), eq(defaultEntityId)))
+            .thenReturn(new TranslatedResponseBody(Scenario.SUCCESS_MATCH, "some-pid", LEVEL_2, null));
+        when(responseService.convertTranslatedResponseBody(eq("bad-saml-response"), any(), eq(LEVEL_2), eq(defaultEntityId)))
+            .thenThrow(new SamlResponseValidationException("Some error."));
+        JSONArray batch = new JSONArray()
+            .put(aTranslateResponseRequest("bad-saml-response"))
+            .put(aTranslateResponseRequest("good-saml-response"));
+
+        Response response = resources.client()
+            .target("/translate-response/batch")
+            .request()
+            .post(json(batch.toString()));
+        List<BatchItemResponseBody<TranslatedResponseBody>> results = response.readEntity(new GenericType<List<BatchItemResponseBody<TranslatedResponseBody>>>() {});
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(results).extracting(BatchItemResponseBody::getIndex).containsExactly(0, 1);
+        assertThat(results.get(0).getError()).isEqualTo(new ErrorMessage(400, "Some error."));
+        assertThat(results.get(1).getResult().getPid()).isEqualTo("some-pid");
+    }
+
+    @Test
+    public void batchAcceptsAndStreamsNewlineDelimitedJson() throws Exception {
+        when(responseService.convertTranslatedResponseBody(any(), any(), eq(LEVEL_2), eq(defaultEntityId)))
+            .thenReturn(new TranslatedResponseBody(Scenario.SUCCESS_MATCH, "some-pid", LEVEL_2, null));
+        String batch = aTranslateResponseRequest("some-saml-response") + "\n" + "{}" + "\n";
+
+        Response response = resources.client()
+            .target("/translate-response/batch")
+            .request(BatchProcessor.APPLICATION_NDJSON)
+            .post(Entity.entity(batch, BatchProcessor.APPLICATION_NDJSON));
+        String[] lines = response.readEntity(String.class).split("\n");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(lines).hasSize(2);
+        assertThat(new JSONObject(lines[0]).getJSONObject("result").getString("pid")).isEqualTo("some-pid");
+        assertThat(new JSONObject(lines[1]).getJSONObject("error").getInt("code")).isEqualTo(HttpStatus.SC_UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    public void batchReturns422WhenTooLarge() throws Exception {
+        String batch = String.join("\n", Collections.nCopies(4, aTranslateResponseRequest("some-saml-response").toString()));
+
+        Response response = resources.client()
+            .target("/translate-response/batch")
+            .request()
+            .post(Entity.entity(batch, BatchProcessor.APPLICATION_NDJSON));
+
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.readEntity(ErrorMessage.class)).isEqualTo(new ErrorMessage(
+            422,
+            "Batch exceeds the maximum batch size of 3")
+        );
+        verify(responseService, times(0)).convertTranslatedResponseBody(any(), any(), any(), any());
+    }
+
+    @Test
+    public void batchAcceptsExactlyTheMaximumBatchSize() throws Exception {
+        when(responseService.convertTranslatedResponseBody(any(), any(), eq(LEVEL_2), eq(defaultEntityId)))
+            .thenReturn(new TranslatedResponseBody(Scenario.SUCCESS_MATCH, "some-pid", LEVEL_2, null));
+        String batch = String.join("\n", Collections.nCopies(3, aTranslateResponseRequest("some-saml-response").toString()));
+
+        Response response = resources.client()
+            .target("/translate-response/batch")
+            .request()
+            .post(Entity.entity(batch, BatchProcessor.APPLICATION_NDJSON));
+        List<BatchItemResponseBody<TranslatedResponseBody>> results = response.readEntity(new GenericType<List<BatchItemResponseBody<TranslatedResponseBody>>>() {});
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(results).hasSize(3);
+        verify(responseService, times(3)).convertTranslatedResponseBody(any(), any(), any(), any());
+    }
+
+    private JSONObject aTranslateResponseRequest(String samlResponse) throws Exception {
+        return new JSONObject().put("samlResponse", samlResponse)
+            .put("requestId", "some-request-id")
+            .put("levelOfAssurance", LEVEL_2.name());
+    }
+
+    private AtomicReference<String> captureParsedXml() {
+        AtomicReference<String> parsedXml = new AtomicReference<>();
+        when(responseService.convertTranslatedResponseXml(any(), eq("some-request-id"), eq(LEVEL_2), eq(defaultEntityId)))
+            .thenAnswer(invocation -> {
+                parsedXml.set(new String(ByteStreams.toByteArray(invocation.<InputStream>getArgument(0)), StandardCharsets.UTF_8));
+                return new TranslatedResponseBody(Scenario.SUCCESS_MATCH, "some-pid", LEVEL_2, null);
+            });
+        return parsedXml;
+    }
+
+    private Response postForm(Form form) {
+        return resources.client()
+            .target("/translate-response")
+            .request()
+            .header(TranslateSamlResponseResource.REQUEST_ID_HEADER, "some-request-id")
+            .header(TranslateSamlResponseResource.LEVEL_OF_ASSURANCE_HEADER, LEVEL_2.name())
+            .post(Entity.form(form));
+    }
 }
@@ -0,0 +1,143 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.encryption.EncryptedKey;
+import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.opensaml.xmlsec.signature.impl.KeyInfoBuilder;
+import uk.gov.ida.common.shared.security.PrivateKeyFactory;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.core.test.PrivateKeyStoreFactory;
+import uk.gov.ida.saml.core.test.TestCredentialFactory;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.security.DecrypterFactory;
+import uk.gov.ida.saml.security.validators.ValidatedResponse;
+import uk.gov.ida.saml.security.validators.encryptedelementtype.EncryptionAlgorithmValidator;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.saml.KeyHintedAssertionDecrypter;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PRIVATE_ENCRYPTION_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_ENCRYPTION_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PUBLIC_ENCRYPTION_CERT;
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
+
+public class KeyHintedAssertionDecrypterTest {
+
+    private MetricRegistry metricRegistry;
+    private KeyPair otherKeyPair;
+    private KeyPair testRpKeyPair;
+
+    @Before
+    public void setUp() throws Exception {
+        IdaSamlBootstrap.bootstrap();
+        metricRegistry = new MetricRegistry();
+
+        PrivateKey otherPrivateKey = new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(HUB_TEST_PRIVATE_ENCRYPTION_KEY));
+        otherKeyPair = new KeyPair(KeySupport.derivePublicKey(otherPrivateKey), otherPrivateKey);
+        PrivateKey testRpPrivateKey = new PrivateKeyStoreFactory().create(TestEntityIds.TEST_RP).getEncryptionPrivateKeys().get(0);
+        testRpKeyPair = new KeyPair(KeySupport.derivePublicKey(testRpPrivateKey), testRpPrivateKey);
+    }
+
+    @Test
+    public void shouldDecryptWithTheKeyNamedInTheKeyInfo() throws Exception {
+        EncryptedAssertion encryptedAssertion = anEncryptedAssertion();
+        addKeyHint(encryptedAssertion, testRpKeyPair);
+
+        List<Assertion> assertions = createDecrypter(otherKeyPair, testRpKeyPair).decryptAssertions(responseWith(encryptedAssertion));
+
+        assertThat(assertions).hasSize(1);
+        assertThat(meter("secondary.successes")).isEqualTo(1);
+        assertThat(meter("primary.trial-misses")).isEqualTo(0);
+        assertThat(meter("primary.hint-misses")).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotTryOtherKeysWhenTheHintedKeyFails() throws Exception {
+        EncryptedAssertion encryptedAssertion = anEncryptedAssertion();
+        addKeyHint(encryptedAssertion, otherKeyPair);
+
+        try {
+            createDecrypter(otherKeyPair, testRpKeyPair).decryptAssertions(responseWith(encryptedAssertion));
+            fail("Expected SamlResponseValidationException");
+        } catch (SamlResponseValidationException e) {
+            assertThat(e.getMessage()).isEqualTo("Unable to decrypt assertion with any configured encryption key");
+        }
+
+        assertThat(meter("primary.hint-misses")).isEqualTo(1);
+        assertThat(meter("primary.trial-misses")).isEqualTo(0);
+        assertThat(meter("secondary.successes")).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCountTrialMissesWhenThereIsNoKeyHint() throws Exception {
+        EncryptedAssertion encryptedAssertion = anEncryptedAssertion();
+        encryptedKey(encryptedAssertion).setKeyInfo(null);
+
+        List<Assertion> assertions = createDecrypter(otherKeyPair, testRpKeyPair).decryptAssertions(responseWith(encryptedAssertion));
+
+        assertThat(assertions).hasSize(1);
+        assertThat(meter("primary.trial-misses")).isEqualTo(1);
+        assertThat(meter("primary.hint-misses")).isEqualTo(0);
+        assertThat(meter("secondary.successes")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDecryptWithASingleConfiguredKey() throws Exception {
+        List<Assertion> assertions = createDecrypter(testRpKeyPair).decryptAssertions(responseWith(anEncryptedAssertion()));
+
+        assertThat(assertions).hasSize(1);
+        assertThat(meter("primary.successes")).isEqualTo(1);
+    }
+
+    private KeyHintedAssertionDecrypter createDecrypter(KeyPair... keyPairs) {
+        return new KeyHintedAssertionDecrypter(
+            asList(keyPairs),
+            new EncryptionAlgorithmValidator(),
+            new DecrypterFactory(),
+            metricRegistry
+        );
+    }
+
+    private EncryptedAssertion anEncryptedAssertion() {
+        TestCredentialFactory credentialFactory = new TestCredentialFactory(TEST_RP_PUBLIC_ENCRYPTION_CERT, TEST_RP_PRIVATE_ENCRYPTION_KEY);
+        return anAssertion().buildWithEncrypterCredential(credentialFactory.getEncryptingCredential());
+    }
+
+    private void addKeyHint(EncryptedAssertion encryptedAssertion, KeyPair keyPair) {
+        KeyInfo keyInfo = new KeyInfoBuilder().buildObject();
+        KeyInfoSupport.addPublicKey(keyInfo, keyPair.getPublic());
+        encryptedKey(encryptedAssertion).setKeyInfo(keyInfo);
+    }
+
+    private EncryptedKey encryptedKey(EncryptedAssertion encryptedAssertion) {
+        return encryptedAssertion.getEncryptedKeys().isEmpty()
+            ? encryptedAssertion.getEncryptedData().getKeyInfo().getEncryptedKeys().get(0)
+            : encryptedAssertion.getEncryptedKeys().get(0);
+    }
+
+    private ValidatedResponse responseWith(EncryptedAssertion encryptedAssertion) {
+        ValidatedResponse validatedResponse = mock(ValidatedResponse.class);
+        when(validatedResponse.getEncryptedAssertions()).thenReturn(singletonList(encryptedAssertion));
+        return validatedResponse;
+    }
+
+    private long meter(String name) {
+        return metricRegistry.meter("uk.gov.ida.verifyserviceprovider.saml.KeyHintedAssertionDecrypter." + name).getCount();
+    }
+}
@@ -1,13 +1,18 @@
 package unit.uk.gov.ida.verifyserviceprovider.saml;
 
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.opensaml.saml.saml2.core.Response;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
 import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
 import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
+import uk.gov.ida.verifyserviceprovider.configuration.XmlParserPoolConfiguration;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.factories.saml.ResponseFactory;
+import uk.gov.ida.verifyserviceprovider.saml.XmlParserPool;
 
 import java.util.Base64;
 import java.util.Collections;
@@ -17,7 +22,15 @@ public class ResponseFactoryTest {
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
 
-    private StringToOpenSamlObjectTransformer<Response> stringToResponseTransformer = ResponseFactory.createStringToResponseTransformer();
+    private StringToOpenSamlObjectTransformer<Response> stringToResponseTransformer = new ResponseFactory(
+        Collections.emptyList(),
+        new XmlParserPool(new XmlParserPoolConfiguration(), new MetricRegistry())
+    ).createStringToResponseTransformer();
+
+    @Before
+    public void setUp() {
+        IdaSamlBootstrap.bootstrap();
+    }
 
     @Test
     public void shouldNotAllowNullSamlResponse() {
@@ -42,4 +55,20 @@ public class ResponseFactoryTest {
         stringToResponseTransformer.apply(longBase64EncodedString);
     }
 
+    @Test
+    public void shouldNotAllowDoctypeDeclarations() {
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE foo [<!ENTITY bar \"baz\">]><foo>&bar;</foo>";
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("Unable to parse SAML XML.");
+        stringToResponseTransformer.apply(Base64.getEncoder().encodeToString(xml.getBytes()));
+    }
+
+    @Test
+    public void shouldNotAllowMessagesWhichAreNotResponses() {
+        String xml = "<saml2p:AuthnRequest xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"_id\" Version=\"2.0\" IssueInstant=\"2017-01-01T00:00:00Z\"/>";
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("Expected a SAML Response but got: AuthnRequest");
+        stringToResponseTransformer.apply(Base64.getEncoder().encodeToString(xml.getBytes()));
+    }
+
 }
\ No newline at end of file
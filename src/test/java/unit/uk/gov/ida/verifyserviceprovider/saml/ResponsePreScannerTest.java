@@ -0,0 +1,93 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.saml.ResponsePreScanner;
+import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponsePreScannerTest {
+
+    private static final String HUB_ENTITY_ID = "http://hub-entity-id";
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final ResponsePreScanner preScanner = new ResponsePreScanner(
+        HUB_ENTITY_ID,
+        new InstantValidator(),
+        metricRegistry
+    );
+
+    @Test
+    public void shouldPassAPlausibleResponse() {
+        preScanner.scan(response("some-request-id", HUB_ENTITY_ID, DateTime.now()), validationContext("some-request-id"));
+
+        assertThat(meter("passed")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRejectMessagesWhichAreNotResponses() {
+        String authnRequest = "<saml2p:AuthnRequest xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"_id\"/>";
+
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("Expected a SAML Response but got: AuthnRequest");
+        preScanner.scan(encode(authnRequest), validationContext("some-request-id"));
+    }
+
+    @Test
+    public void shouldRejectResponsesToOtherRequests() {
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("Expected InResponseTo to be some-request-id, but was some-other-request-id");
+        preScanner.scan(response("some-other-request-id", HUB_ENTITY_ID, DateTime.now()), validationContext("some-request-id"));
+    }
+
+    @Test
+    public void shouldCountRejectedIssueInstants() {
+        try {
+            preScanner.scan(response("some-request-id", HUB_ENTITY_ID, DateTime.now().minusMinutes(10)), validationContext("some-request-id"));
+        } catch (SamlResponseValidationException e) {
+            assertThat(e.getMessage()).startsWith("Response IssueInstant is too far in the past ");
+        }
+
+        assertThat(meter("rejected.issue-instant")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDeferPayloadsItCannotRead() {
+        preScanner.scan("not-encoded-string", validationContext("some-request-id"));
+        preScanner.scan(null, validationContext("some-request-id"));
+
+        assertThat(meter("deferred")).isEqualTo(2);
+    }
+
+    private ValidationContext validationContext(String expectedInResponseTo) {
+        return new ValidationContext(DateTime.now().getMillis(), 5000, expectedInResponseTo, "some-entity-id");
+    }
+
+    private long meter(String name) {
+        return metricRegistry.meter("uk.gov.ida.verifyserviceprovider.saml.ResponsePreScanner." + name).getCount();
+    }
+
+    private String response(String inResponseTo, String issuer, DateTime issueInstant) {
+        return encode("<saml2p:Response xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\" "
+            + "xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" "
+            + "ID=\"_id\" InResponseTo=\"" + inResponseTo + "\" IssueInstant=\"" + issueInstant + "\" Version=\"2.0\">"
+            + "<saml2:Issuer>" + issuer + "</saml2:Issuer>"
+            + "</saml2p:Response>");
+    }
+
+    private String encode(String xml) {
+        return Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
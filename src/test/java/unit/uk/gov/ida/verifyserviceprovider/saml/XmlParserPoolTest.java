@@ -0,0 +1,84 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.w3c.dom.Document;
+import uk.gov.ida.verifyserviceprovider.configuration.XmlParserPoolConfiguration;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.saml.XmlParserPool;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class XmlParserPoolTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private final XmlParserPoolConfiguration configuration = mock(XmlParserPoolConfiguration.class);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private XmlParserPool xmlParserPool;
+
+    @Before
+    public void setUp() {
+        when(configuration.getSize()).thenReturn(1);
+        when(configuration.getMaxElementDepth()).thenReturn(3);
+        when(configuration.getMaxElementCount()).thenReturn(5);
+        xmlParserPool = new XmlParserPool(configuration, metricRegistry);
+    }
+
+    @Test
+    public void shouldReuseParsersBetweenCalls() {
+        Document first = parse("<a><b/></a>");
+        Document second = parse("<c/>");
+
+        assertThat(first.getDocumentElement().getLocalName()).isEqualTo("a");
+        assertThat(second.getDocumentElement().getLocalName()).isEqualTo("c");
+        assertThat(metricRegistry.getGauges().get("uk.gov.ida.verifyserviceprovider.saml.XmlParserPool.idle").getValue()).isEqualTo(1);
+        assertThat(metricRegistry.getGauges().get("uk.gov.ida.verifyserviceprovider.saml.XmlParserPool.in-use").getValue()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectDeeplyNestedXmlWhileParsing() {
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("exceeds the limit \"3\"");
+        parse("<a><b><c><d><e>");
+    }
+
+    @Test
+    public void shouldRejectElementsWithTooManyAttributes() {
+        StringBuilder attributes = new StringBuilder();
+        for (int i = 0; i <= 64; i++) {
+            attributes.append(String.format(" a%d='%d'", i, i));
+        }
+
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("Unable to parse SAML XML.");
+        parse("<a" + attributes + "/>");
+    }
+
+    @Test
+    public void shouldRejectXmlWithTooManyElements() {
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("SAML XML contains more than 5 elements.");
+        parse("<a><b/><b/><b/><b/><b/></a>");
+    }
+
+    @Test
+    public void shouldRejectMalformedXml() {
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("Unable to parse SAML XML.");
+        parse("<a>");
+    }
+
+    private Document parse(String xml) {
+        return xmlParserPool.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
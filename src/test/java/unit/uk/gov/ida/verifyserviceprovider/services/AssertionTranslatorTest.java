@@ -1,5 +1,6 @@
 package unit.uk.gov.ida.verifyserviceprovider.services;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -21,11 +22,16 @@ import uk.gov.ida.saml.core.test.builders.AssertionBuilder;
 import uk.gov.ida.saml.core.test.builders.ConditionsBuilder;
 import uk.gov.ida.saml.core.test.builders.SubjectBuilder;
 import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
+import uk.gov.ida.verifyserviceprovider.configuration.XmlParserPoolConfiguration;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.factories.saml.ResponseFactory;
+import uk.gov.ida.verifyserviceprovider.saml.XmlParserPool;
 import uk.gov.ida.verifyserviceprovider.services.AssertionTranslator;
+import uk.gov.ida.verifyserviceprovider.services.AttributeTranslationService;
+import uk.gov.ida.verifyserviceprovider.services.ReplayCache;
 import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
 import java.security.KeyPair;
 import java.security.PrivateKey;
@@ -65,6 +71,9 @@ public class AssertionTranslatorTest {
     private static final String IN_RESPONSE_TO = "_some-request-id";
     private static final String VERIFY_SERVICE_PROVIDER_ENTITY_ID = "default-entity-id";
     private AssertionTranslator translator;
+    private ResponseFactory responseFactory;
+    private MetadataResolver msaMetadataResolver;
+    private DateTimeComparator dateTimeComparator;
     private Credential testRpMsaSigningCredential =
         new TestCredentialFactory(TEST_RP_MS_PUBLIC_SIGNING_CERT, TEST_RP_MS_PRIVATE_SIGNING_KEY).getSigningCredential();
 
@@ -73,7 +82,7 @@ public class AssertionTranslatorTest {
         PrivateKey privateKey = new PrivateKeyStoreFactory().create(TestEntityIds.TEST_RP).getEncryptionPrivateKeys().get(0);
         KeyPair keyPair = new KeyPair(KeySupport.derivePublicKey(privateKey), privateKey);
         List<KeyPair> keyPairs = asList(keyPair, keyPair);
-        ResponseFactory responseFactory = new ResponseFactory(keyPairs);
+        responseFactory = new ResponseFactory(keyPairs, new XmlParserPool(new XmlParserPoolConfiguration(), new MetricRegistry()));
 
         EntityDescriptor entityDescriptor = anEntityDescriptor()
             .withIdpSsoDescriptor(anIdpSsoDescriptor()
@@ -83,11 +92,16 @@ public class AssertionTranslatorTest {
                 .build())
             .build();
 
-        MetadataResolver msaMetadataResolver = mock(MetadataResolver.class);
-        DateTimeComparator dateTimeComparator = new DateTimeComparator(Duration.standardSeconds(5));
+        msaMetadataResolver = mock(MetadataResolver.class);
+        dateTimeComparator = new DateTimeComparator(Duration.standardSeconds(5));
         when(msaMetadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
 
-        translator = responseFactory.createAssertionTranslator(msaMetadataResolver, dateTimeComparator);
+        translator = responseFactory.createAssertionTranslator(
+            msaMetadataResolver,
+            null,
+            new AttributeTranslationService(emptyList()),
+            new MetricRegistry()
+        );
     }
 
     @Rule
@@ -102,7 +116,7 @@ public class AssertionTranslatorTest {
     public void shouldtranslateValidAssertion() {
         TranslatedResponseBody result = translator.translate(ImmutableList.of(
             anAssertionWith("some-pid", LEVEL_2_AUTHN_CTX).buildUnencrypted()
-        ), IN_RESPONSE_TO, LEVEL_2, VERIFY_SERVICE_PROVIDER_ENTITY_ID);
+        ), LEVEL_2, validationContext());
         assertThat(result).isEqualTo(new TranslatedResponseBody(
             SUCCESS_MATCH,
             "some-pid",
@@ -115,7 +129,7 @@ public class AssertionTranslatorTest {
     public void shouldAllowHigherLevelOfAssuranceThanRequested() throws Exception {
         TranslatedResponseBody result = translator.translate(ImmutableList.of(
             anAssertionWith("some-pid", LEVEL_2_AUTHN_CTX).buildUnencrypted()
-        ), IN_RESPONSE_TO, LEVEL_1, VERIFY_SERVICE_PROVIDER_ENTITY_ID);
+        ), LEVEL_1, validationContext());
         assertThat(result).isEqualTo(new TranslatedResponseBody(
             SUCCESS_MATCH,
             "some-pid",
@@ -124,12 +138,29 @@ public class AssertionTranslatorTest {
         ));
     }
 
+    @Test
+    public void shouldRejectAnAssertionWhichHasAlreadyBeenTranslated() throws Exception {
+        AssertionTranslator replayCheckingTranslator = responseFactory.createAssertionTranslator(
+            msaMetadataResolver,
+            new ReplayCache(Duration.standardSeconds(10), new MetricRegistry()),
+            new AttributeTranslationService(emptyList()),
+            new MetricRegistry()
+        );
+        Assertion assertion = anAssertionWith("some-pid", LEVEL_2_AUTHN_CTX).buildUnencrypted();
+        replayCheckingTranslator.translate(ImmutableList.of(assertion), LEVEL_2, validationContext());
+
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("Assertion " + assertion.getID() + " has already been used.");
+
+        replayCheckingTranslator.translate(ImmutableList.of(assertion), LEVEL_2, validationContext());
+    }
+
     @Test
     public void shouldThrowExceptionWhenAssertionsIsEmptyList() throws Exception {
         expectedException.expect(SamlResponseValidationException.class);
         expectedException.expectMessage("Exactly one assertion is expected.");
 
-        translator.translate(emptyList(), IN_RESPONSE_TO, LEVEL_2, VERIFY_SERVICE_PROVIDER_ENTITY_ID);
+        translator.translate(emptyList(), LEVEL_2, validationContext());
     }
 
     @Test
@@ -137,7 +168,7 @@ public class AssertionTranslatorTest {
         expectedException.expect(SamlResponseValidationException.class);
         expectedException.expectMessage("Exactly one assertion is expected.");
 
-        translator.translate(null, IN_RESPONSE_TO, LEVEL_2, VERIFY_SERVICE_PROVIDER_ENTITY_ID);
+        translator.translate(null, LEVEL_2, validationContext());
     }
 
     @Test
@@ -150,9 +181,8 @@ public class AssertionTranslatorTest {
                 anAssertion().buildUnencrypted(),
                 anAssertion().buildUnencrypted()
             ),
-            IN_RESPONSE_TO,
             LEVEL_2,
-            VERIFY_SERVICE_PROVIDER_ENTITY_ID);
+            validationContext());
     }
 
     @Test
@@ -162,9 +192,8 @@ public class AssertionTranslatorTest {
 
         translator.translate(Collections.singletonList(
             anAssertionWith("some-pid", LEVEL_2_AUTHN_CTX).withoutSigning().buildUnencrypted()),
-            IN_RESPONSE_TO,
             LEVEL_2,
-            VERIFY_SERVICE_PROVIDER_ENTITY_ID
+            validationContext()
         );
     }
 
@@ -178,9 +207,8 @@ public class AssertionTranslatorTest {
             anAssertionWith("some-pid", LEVEL_2_AUTHN_CTX)
                 .withSignature(aSignature().withSigningCredential(unknownSigningCredential).build())
                 .buildUnencrypted()),
-            IN_RESPONSE_TO,
             LEVEL_2,
-            VERIFY_SERVICE_PROVIDER_ENTITY_ID
+            validationContext()
         );
     }
 
@@ -196,7 +224,7 @@ public class AssertionTranslatorTest {
             .addAuthnStatement(authnStatement
             ).buildUnencrypted();
 
-        translator.translate(ImmutableList.of(assertion), IN_RESPONSE_TO, LEVEL_2, VERIFY_SERVICE_PROVIDER_ENTITY_ID);
+        translator.translate(ImmutableList.of(assertion), LEVEL_2, validationContext());
     }
 
     @Test
@@ -214,7 +242,11 @@ public class AssertionTranslatorTest {
                 .build())
             .buildUnencrypted();
 
-        translator.translate(ImmutableList.of(assertion), IN_RESPONSE_TO, LEVEL_2, VERIFY_SERVICE_PROVIDER_ENTITY_ID);
+        translator.translate(ImmutableList.of(assertion), LEVEL_2, validationContext());
+    }
+
+    private ValidationContext validationContext() {
+        return dateTimeComparator.createValidationContext(IN_RESPONSE_TO, VERIFY_SERVICE_PROVIDER_ENTITY_ID);
     }
 
     private AssertionBuilder aSignedAssertion() {
@@ -9,9 +9,12 @@ import uk.gov.ida.saml.core.IdaSamlBootstrap;
 import uk.gov.ida.saml.core.test.builders.AddressAttributeBuilder_1_1;
 import uk.gov.ida.saml.core.test.builders.AddressAttributeValueBuilder_1_1;
 import uk.gov.ida.saml.core.test.builders.SimpleStringAttributeBuilder;
+import uk.gov.ida.verifyserviceprovider.configuration.AttributeMappingConfiguration;
 import uk.gov.ida.verifyserviceprovider.dto.Attributes;
+import uk.gov.ida.verifyserviceprovider.dto.VerifiableAttribute;
 import uk.gov.ida.verifyserviceprovider.exceptions.FailedToRequestVerifiedException;
 import uk.gov.ida.verifyserviceprovider.exceptions.RequestedOnlyVerifiedException;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.services.AttributeTranslationService;
 
 import java.time.format.DateTimeFormatter;
@@ -20,6 +23,7 @@ import java.util.List;
 
 import static common.uk.gov.ida.verifyserviceprovider.utils.SamlResponseHelper.createVerifiedAttribute;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static uk.gov.ida.saml.core.test.builders.AttributeStatementBuilder.anAttributeStatement;
 
 public class AttributeTranslationServiceTests {
@@ -259,4 +263,90 @@ public class AttributeTranslationServiceTests {
 
         AttributeTranslationService.translateAttributes(attributeStatement);
     }
+
+    @Test
+    public void shouldUseTheFirstAttributeWithAGivenName() {
+        AttributeStatement attributeStatement = anAttributeStatement()
+            .addAttribute(new SimpleStringAttributeBuilder()
+                .withName("firstname")
+                .withSimpleStringValue("Joe")
+                .build())
+            .addAttribute(new SimpleStringAttributeBuilder()
+                .withName("firstname")
+                .withSimpleStringValue("Bob")
+                .build())
+            .addAttribute(createVerifiedAttribute("firstname_verified", true))
+            .build();
+
+        Attributes result = AttributeTranslationService.translateAttributes(attributeStatement);
+
+        assertThat(result.getFirstName()).isEqualTo(new VerifiableAttribute<>("Joe", true));
+    }
+
+    @Test
+    public void shouldReturnConfiguredAdditionalAttributes() {
+        AttributeTranslationService attributeTranslationService = new AttributeTranslationService(Arrays.asList(
+            new AttributeMappingConfiguration("gender", "gender_verified"),
+            new AttributeMappingConfiguration("nationality", "nationality_verified")
+        ));
+        AttributeStatement attributeStatement = anAttributeStatement()
+            .addAttribute(new SimpleStringAttributeBuilder()
+                .withName("gender")
+                .withSimpleStringValue("Not specified")
+                .build())
+            .addAttribute(createVerifiedAttribute("gender_verified", false))
+            .build();
+
+        Attributes result = attributeTranslationService.translate(attributeStatement);
+
+        assertThat(result.getAdditionalAttributes()).containsOnlyKeys("gender");
+        assertThat(result.getAdditionalAttributes().get("gender")).isEqualTo(new VerifiableAttribute<>("Not specified", false));
+    }
+
+    @Test
+    public void shouldRejectAConfiguredAdditionalAttributeWithAnUnexpectedValueType() {
+        AttributeTranslationService attributeTranslationService = new AttributeTranslationService(Arrays.asList(
+            new AttributeMappingConfiguration("gender", "gender_verified")
+        ));
+        AttributeStatement attributeStatement = anAttributeStatement()
+            .addAttribute(createVerifiedAttribute("gender", true))
+            .build();
+
+        assertThatThrownBy(() -> attributeTranslationService.translate(attributeStatement))
+            .isInstanceOf(SamlResponseValidationException.class)
+            .hasMessageStartingWith("Unexpected value type for attribute 'gender'. Expected StringValueSamlObject");
+    }
+
+    @Test
+    public void shouldRejectAVerifiedAttributeWithAnUnexpectedValueType() {
+        AttributeStatement attributeStatement = anAttributeStatement()
+            .addAttribute(new SimpleStringAttributeBuilder()
+                .withName("firstname_verified")
+                .withSimpleStringValue("true")
+                .build())
+            .build();
+
+        assertThatThrownBy(() -> AttributeTranslationService.translateAttributes(attributeStatement))
+            .isInstanceOf(SamlResponseValidationException.class)
+            .hasMessageStartingWith("Unexpected value type for attribute 'firstname_verified'. Expected Verified");
+    }
+
+    @Test
+    public void shouldRejectAnAddressAttributeWithAnUnexpectedValueType() {
+        AttributeStatement attributeStatement = anAttributeStatement()
+            .addAttribute(new SimpleStringAttributeBuilder()
+                .withName("currentaddress")
+                .withSimpleStringValue("1 Some Street")
+                .build())
+            .build();
+
+        assertThatThrownBy(() -> AttributeTranslationService.translateAttributes(attributeStatement))
+            .isInstanceOf(SamlResponseValidationException.class)
+            .hasMessageStartingWith("Unexpected value type for attribute 'currentaddress'. Expected AddressImpl");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowAdditionalAttributesToReplaceStandardAttributes() {
+        new AttributeTranslationService(Arrays.asList(new AttributeMappingConfiguration("firstname", "firstname_verified")));
+    }
 }
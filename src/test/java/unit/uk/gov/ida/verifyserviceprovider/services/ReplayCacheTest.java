@@ -0,0 +1,52 @@
+package unit.uk.gov.ida.verifyserviceprovider.services;
+
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import uk.gov.ida.verifyserviceprovider.services.ReplayCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplayCacheTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private ReplayCache replayCache;
+
+    @Before
+    public void setUp() {
+        replayCache = new ReplayCache(Duration.standardSeconds(10), metricRegistry);
+    }
+
+    @Test
+    public void shouldRejectAKeyWhichHasAlreadyBeenRecorded() {
+        long expiry = new DateTime(NOW).plusMinutes(5).getMillis();
+
+        assertThat(replayCache.checkAndRecord("issuer|assertion-id", expiry, NOW)).isTrue();
+        assertThat(replayCache.checkAndRecord("issuer|assertion-id", expiry, NOW)).isFalse();
+        assertThat(replayCache.checkAndRecord("issuer|other-assertion-id", expiry, NOW)).isTrue();
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.services.ReplayCache.rejections").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictKeysOnceTheyHaveExpired() {
+        replayCache.checkAndRecord("issuer|assertion-id", new DateTime(NOW).plusMinutes(5).getMillis(), NOW);
+        replayCache.checkAndRecord("issuer|later-assertion-id", new DateTime(NOW).plusMinutes(15).getMillis(), NOW);
+        assertThat(replayCache.size()).isEqualTo(2);
+
+        long later = new DateTime(NOW).plusMinutes(10).getMillis();
+
+        assertThat(replayCache.checkAndRecord("issuer|assertion-id", new DateTime(NOW).plusMinutes(20).getMillis(), later)).isTrue();
+        assertThat(replayCache.size()).isEqualTo(2);
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.services.ReplayCache.evictions").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotRecordKeysWhichHaveAlreadyExpired() {
+        assertThat(replayCache.checkAndRecord("issuer|assertion-id", new DateTime(NOW).minusSeconds(1).getMillis(), NOW)).isTrue();
+        assertThat(replayCache.size()).isEqualTo(0);
+    }
+}
@@ -1,5 +1,6 @@
 package unit.uk.gov.ida.verifyserviceprovider.services;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import org.joda.time.DateTime;
@@ -30,10 +31,12 @@ import uk.gov.ida.saml.core.test.builders.SimpleStringAttributeBuilder;
 import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
 import uk.gov.ida.saml.security.SamlAssertionsSignatureValidator;
 import uk.gov.ida.saml.serializers.XmlObjectToBase64EncodedStringTransformer;
+import uk.gov.ida.verifyserviceprovider.configuration.XmlParserPoolConfiguration;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.factories.saml.ResponseFactory;
+import uk.gov.ida.verifyserviceprovider.saml.XmlParserPool;
 import uk.gov.ida.verifyserviceprovider.services.AssertionTranslator;
 import uk.gov.ida.verifyserviceprovider.services.ResponseService;
 import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
@@ -44,22 +47,31 @@ import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
 import uk.gov.ida.verifyserviceprovider.validators.SubjectValidator;
 import uk.gov.ida.verifyserviceprovider.validators.TimeRestrictionValidator;
 
+import java.io.ByteArrayInputStream;
 import java.security.KeyException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static common.uk.gov.ida.verifyserviceprovider.utils.SamlResponseHelper.createVerifiedAttribute;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_PUBLIC_CERT;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_ENCRYPTION_KEY;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_SIGNING_KEY;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PUBLIC_ENCRYPTION_CERT;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PUBLIC_SIGNING_CERT;
+import static uk.gov.ida.saml.core.test.TestEntityIds.HUB_ENTITY_ID;
 import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
 import static uk.gov.ida.saml.core.test.builders.AttributeStatementBuilder.anAttributeStatement;
 import static uk.gov.ida.saml.core.test.builders.AudienceRestrictionBuilder.anAudienceRestriction;
@@ -67,6 +79,7 @@ import static uk.gov.ida.saml.core.test.builders.AuthnContextBuilder.anAuthnCont
 import static uk.gov.ida.saml.core.test.builders.AuthnContextClassRefBuilder.anAuthnContextClassRef;
 import static uk.gov.ida.saml.core.test.builders.AuthnStatementBuilder.anAuthnStatement;
 import static uk.gov.ida.saml.core.test.builders.ConditionsBuilder.aConditions;
+import static uk.gov.ida.saml.core.test.builders.IssuerBuilder.anIssuer;
 import static uk.gov.ida.saml.core.test.builders.NameIdBuilder.aNameId;
 import static uk.gov.ida.saml.core.test.builders.ResponseBuilder.aResponse;
 import static uk.gov.ida.saml.core.test.builders.StatusBuilder.aStatus;
@@ -96,6 +109,10 @@ public class ResponseServiceTest {
     public ExpectedException expectedException = ExpectedException.none();
     private TestCredentialFactory encryptionCredentialFactory;
     private Credential testRpSigningCredential;
+    private MetricRegistry metricRegistry;
+    private ResponseFactory responseFactory;
+    private AssertionTranslator assertionTranslator;
+    private DateTimeComparator dateTimeComparator;
 
     @Before
     public void setUp() throws ComponentInitializationException, KeyException {
@@ -107,23 +124,20 @@ public class ResponseServiceTest {
         testRpSigningCredential = new TestCredentialFactory(TEST_RP_PUBLIC_SIGNING_CERT, TEST_RP_PRIVATE_SIGNING_KEY).getSigningCredential();
 
         hubMetadataResolver = mock(MetadataResolver.class);
+        metricRegistry = new MetricRegistry();
 
-        ResponseFactory responseFactory = new ResponseFactory(keyPairs);
-        DateTimeComparator dateTimeComparator = new DateTimeComparator(Duration.standardSeconds(5));
-        TimeRestrictionValidator timeRestrictionValidator = new TimeRestrictionValidator(dateTimeComparator);
+        responseFactory = new ResponseFactory(keyPairs, new XmlParserPool(new XmlParserPoolConfiguration(), new MetricRegistry()));
+        dateTimeComparator = new DateTimeComparator(Duration.standardSeconds(5));
+        TimeRestrictionValidator timeRestrictionValidator = new TimeRestrictionValidator();
 
         SamlAssertionsSignatureValidator samlAssertionsSignatureValidator = mock(SamlAssertionsSignatureValidator.class);
-        InstantValidator instantValidator = new InstantValidator(dateTimeComparator);
+        InstantValidator instantValidator = new InstantValidator();
         SubjectValidator subjectValidator = new SubjectValidator(timeRestrictionValidator);
         ConditionsValidator conditionsValidator = new ConditionsValidator(timeRestrictionValidator, new AudienceRestrictionValidator());
         AssertionValidator assertionValidator = new AssertionValidator(instantValidator, subjectValidator, conditionsValidator);
-        AssertionTranslator assertionTranslator = new AssertionTranslator(samlAssertionsSignatureValidator, assertionValidator);
+        assertionTranslator = new AssertionTranslator(samlAssertionsSignatureValidator, assertionValidator);
 
-        responseService = responseFactory.createResponseService(
-            hubMetadataResolver,
-            assertionTranslator,
-            dateTimeComparator
-        );
+        responseService = createResponseService(null);
     }
 
     @Before
@@ -156,6 +170,32 @@ public class ResponseServiceTest {
         ));
     }
 
+    @Test
+    public void shouldHandleSuccessMatchSamlReadAsXmlFromAStream() throws Exception {
+        EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_RP_PUBLIC_SIGNING_CERT);
+        when(hubMetadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
+
+        Status successStatus = aStatus().
+            withStatusCode(aStatusCode().withValue(StatusCode.SUCCESS).build())
+            .build();
+        Response response = signResponse(createNoAttributeResponseBuilder(successStatus), testRpSigningCredential);
+        byte[] samlResponseXml = Base64.getDecoder().decode(responseToBase64StringTransformer.apply(response));
+
+        TranslatedResponseBody result = responseService.convertTranslatedResponseXml(
+            new ByteArrayInputStream(samlResponseXml),
+            response.getInResponseTo(),
+            LevelOfAssurance.LEVEL_2,
+            VERIFY_SERVICE_PROVIDER_ENTITY_ID
+        );
+
+        assertThat(result).isEqualTo(new TranslatedResponseBody(
+            SUCCESS_MATCH,
+            "some-pid",
+            LevelOfAssurance.LEVEL_2,
+            null
+        ));
+    }
+
     @Test
     public void shouldHandleAccountCreationSaml() throws Exception {
         EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_RP_PUBLIC_SIGNING_CERT);
@@ -385,6 +425,53 @@ public class ResponseServiceTest {
         );
     }
 
+    @Test
+    public void shouldRejectResponseFromUnexpectedIssuerBeforeValidatingSignature() throws Exception {
+        Response response = aResponse()
+            .withIssuer(anIssuer().withIssuerId("http://some-other-issuer").build())
+            .withSigningCredential(testRpSigningCredential)
+            .build();
+
+        try {
+            responseService.convertTranslatedResponseBody(
+                responseToBase64StringTransformer.apply(response),
+                response.getInResponseTo(),
+                LevelOfAssurance.LEVEL_2,
+                VERIFY_SERVICE_PROVIDER_ENTITY_ID
+            );
+            fail("Expected SamlResponseValidationException");
+        } catch (SamlResponseValidationException e) {
+            assertThat(e.getMessage()).isEqualTo(String.format("Expected Issuer to be %s, but was http://some-other-issuer", HUB_ENTITY_ID));
+        }
+
+        verify(hubMetadataResolver, never()).resolve(any());
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.saml.ResponsePreScanner.rejected.issuer").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRejectResponseReadFromAStreamFromUnexpectedIssuerBeforeValidatingSignature() throws Exception {
+        Response response = aResponse()
+            .withIssuer(anIssuer().withIssuerId("http://some-other-issuer").build())
+            .withSigningCredential(testRpSigningCredential)
+            .build();
+        byte[] samlResponseXml = Base64.getDecoder().decode(responseToBase64StringTransformer.apply(response));
+
+        try {
+            responseService.convertTranslatedResponseXml(
+                new ByteArrayInputStream(samlResponseXml),
+                response.getInResponseTo(),
+                LevelOfAssurance.LEVEL_2,
+                VERIFY_SERVICE_PROVIDER_ENTITY_ID
+            );
+            fail("Expected SamlResponseValidationException");
+        } catch (SamlResponseValidationException e) {
+            assertThat(e.getMessage()).isEqualTo(String.format("Expected Issuer to be %s, but was http://some-other-issuer", HUB_ENTITY_ID));
+        }
+
+        verify(hubMetadataResolver, never()).resolve(any());
+        assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.saml.ResponsePreScanner.rejected.issuer").getCount()).isEqualTo(1);
+    }
+
     @Test
     public void shouldFailWhenIssueInstantIsTooOld() throws Exception {
         expectedException.expect(SamlResponseValidationException.class);
@@ -393,7 +480,7 @@ public class ResponseServiceTest {
         EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_RP_PUBLIC_SIGNING_CERT);
         when(hubMetadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
 
-        ResponseBuilder responseBuilder = aResponse().withIssueInstant(DateTime.now().minusMinutes(10));
+        ResponseBuilder responseBuilder = aResponse().withIssuer(anIssuer().withIssuerId(HUB_ENTITY_ID).build()).withIssueInstant(DateTime.now().minusMinutes(10));
         Response response = signResponse(responseBuilder, testRpSigningCredential);
 
         responseService.convertTranslatedResponseBody(
@@ -412,7 +499,7 @@ public class ResponseServiceTest {
         EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_RP_PUBLIC_SIGNING_CERT);
         when(hubMetadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
 
-        ResponseBuilder responseBuilder = aResponse().withIssueInstant(DateTime.now().plusMinutes(1));
+        ResponseBuilder responseBuilder = aResponse().withIssuer(anIssuer().withIssuerId(HUB_ENTITY_ID).build()).withIssueInstant(DateTime.now().plusMinutes(1));
         Response response = signResponse(responseBuilder, testRpSigningCredential);
 
         responseService.convertTranslatedResponseBody(
@@ -423,6 +510,71 @@ public class ResponseServiceTest {
         );
     }
 
+    @Test
+    public void shouldUseSpeculativelyDecryptedAssertionsWhenSignatureIsValid() throws Exception {
+        EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_RP_PUBLIC_SIGNING_CERT);
+        when(hubMetadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
+        ExecutorService decryptionExecutor = Executors.newSingleThreadExecutor();
+        ResponseService speculativeResponseService = createResponseService(decryptionExecutor);
+
+        Status successStatus = aStatus().
+            withStatusCode(aStatusCode().withValue(StatusCode.SUCCESS).build())
+            .build();
+        Response response = signResponse(createNoAttributeResponseBuilder(successStatus), testRpSigningCredential);
+
+        try {
+            TranslatedResponseBody result = speculativeResponseService.convertTranslatedResponseBody(
+                responseToBase64StringTransformer.apply(response),
+                response.getInResponseTo(),
+                LevelOfAssurance.LEVEL_2,
+                VERIFY_SERVICE_PROVIDER_ENTITY_ID
+            );
+
+            assertThat(result).isEqualTo(new TranslatedResponseBody(SUCCESS_MATCH, "some-pid", LevelOfAssurance.LEVEL_2, null));
+            assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.saml.SpeculativeAssertionDecrypter.used").getCount()).isEqualTo(1);
+        } finally {
+            decryptionExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldDiscardSpeculativelyDecryptedAssertionsWhenSignatureIsInvalid() throws Exception {
+        EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_PUBLIC_CERT);
+        when(hubMetadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
+        ExecutorService decryptionExecutor = Executors.newSingleThreadExecutor();
+        ResponseService speculativeResponseService = createResponseService(decryptionExecutor);
+
+        Status successStatus = aStatus().
+            withStatusCode(aStatusCode().withValue(StatusCode.SUCCESS).build())
+            .build();
+        Response response = signResponse(createNoAttributeResponseBuilder(successStatus), testRpSigningCredential);
+
+        try {
+            assertThatThrownBy(() -> speculativeResponseService.convertTranslatedResponseBody(
+                responseToBase64StringTransformer.apply(response),
+                response.getInResponseTo(),
+                LevelOfAssurance.LEVEL_2,
+                VERIFY_SERVICE_PROVIDER_ENTITY_ID
+            )).isInstanceOf(SamlTransformationErrorException.class);
+
+            assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.saml.SpeculativeAssertionDecrypter.discarded").getCount()).isEqualTo(1);
+            assertThat(metricRegistry.meter("uk.gov.ida.verifyserviceprovider.saml.SpeculativeAssertionDecrypter.used").getCount()).isEqualTo(0);
+        } finally {
+            decryptionExecutor.shutdownNow();
+        }
+    }
+
+    private ResponseService createResponseService(ExecutorService speculativeDecryptionExecutor) throws ComponentInitializationException {
+        return responseFactory.createResponseService(
+            hubMetadataResolver,
+            assertionTranslator,
+            dateTimeComparator,
+            HUB_ENTITY_ID,
+            speculativeDecryptionExecutor,
+            metricRegistry
+        );
+    }
+
     private EntityDescriptor createEntityDescriptorWithSigningCertificate(String signingCert) throws MarshallingException, SignatureException {
         return anEntityDescriptor()
             .addSpServiceDescriptor(anSpServiceDescriptor()
@@ -439,7 +591,7 @@ public class ResponseServiceTest {
     }
 
     private ResponseBuilder createNoAttributeResponseBuilder(Status samlStatus) {
-        return aResponse()
+        return aResponse().withIssuer(anIssuer().withIssuerId(HUB_ENTITY_ID).build())
             .withStatus(samlStatus)
             .withNoDefaultAssertion()
             .addEncryptedAssertion(aDefaultAssertion()
@@ -448,7 +600,7 @@ public class ResponseServiceTest {
     }
 
     private ResponseBuilder createAttributeResponseBuilder(Status samlStatus) {
-        return aResponse()
+        return aResponse().withIssuer(anIssuer().withIssuerId(HUB_ENTITY_ID).build())
             .withStatus(samlStatus)
             .withNoDefaultAssertion()
             .addEncryptedAssertion(aDefaultAssertion()
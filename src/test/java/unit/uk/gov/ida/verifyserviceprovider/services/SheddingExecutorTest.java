@@ -0,0 +1,112 @@
+package unit.uk.gov.ida.verifyserviceprovider.services;
+
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import uk.gov.ida.verifyserviceprovider.exceptions.ServiceOverloadedException;
+import uk.gov.ida.verifyserviceprovider.exceptions.ServiceOverloadedExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.services.SheddingExecutor;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SheddingExecutorTest {
+
+    private static final String SHED_METER = "uk.gov.ida.verifyserviceprovider.services.SheddingExecutor.test.shed";
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+    @Test
+    public void shouldResumeWithTheResultOfTheTask() {
+        Response response = Response.ok().build();
+
+        createSheddingExecutor(Runnable::run, Duration.standardSeconds(5)).submit(asyncResponse, () -> response);
+
+        verify(asyncResponse).resume(response);
+    }
+
+    @Test
+    public void shouldResumeWithExceptionsThrownByTheTask() {
+        IllegalStateException exception = new IllegalStateException("some-error");
+
+        createSheddingExecutor(Runnable::run, Duration.standardSeconds(5)).submit(asyncResponse, () -> { throw exception; });
+
+        verify(asyncResponse).resume(exception);
+    }
+
+    @Test
+    public void shouldShedWhenTheQueueIsFull() {
+        Executor rejectingExecutor = command -> { throw new RejectedExecutionException(); };
+
+        createSheddingExecutor(rejectingExecutor, Duration.standardSeconds(5)).submit(asyncResponse, () -> Response.ok().build());
+
+        assertThat(captureShedException().getMessage()).isEqualTo("Too many requests are already queued");
+        assertThat(metricRegistry.meter(SHED_METER).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldShedWhenTheQueueDeadlineHasPassed() {
+        Executor slowExecutor = command -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            command.run();
+        };
+
+        createSheddingExecutor(slowExecutor, Duration.millis(1)).submit(asyncResponse, () -> Response.ok().build());
+
+        assertThat(captureShedException().getMessage()).startsWith("Request waited");
+        assertThat(metricRegistry.meter(SHED_METER).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldFailSubmittedWorkWhenTheQueueIsFull() {
+        Executor rejectingExecutor = command -> { throw new RejectedExecutionException(); };
+
+        CompletableFuture<String> result = createSheddingExecutor(rejectingExecutor, Duration.standardSeconds(5)).submit(() -> "some-result");
+
+        assertThat(result).isCompletedExceptionally();
+        assertThatThrownBy(result::join).hasCauseInstanceOf(ServiceOverloadedException.class);
+        assertThat(metricRegistry.meter(SHED_METER).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCompleteSubmittedWorkWithItsResult() {
+        CompletableFuture<String> result = createSheddingExecutor(Runnable::run, Duration.standardSeconds(5)).submit(() -> "some-result");
+
+        assertThat(result.join()).isEqualTo("some-result");
+    }
+
+    @Test
+    public void shouldMapShedRequestsTo503WithRetryAfter() {
+        Response response = new ServiceOverloadedExceptionMapper().toResponse(new ServiceOverloadedException("Overloaded", 2));
+
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeaderString(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+    }
+
+    private SheddingExecutor createSheddingExecutor(Executor executor, Duration queueDeadline) {
+        return new SheddingExecutor("test", executor, Collections.emptyList(), queueDeadline, Duration.standardSeconds(1), metricRegistry);
+    }
+
+    private ServiceOverloadedException captureShedException() {
+        ArgumentCaptor<Throwable> captor = ArgumentCaptor.forClass(Throwable.class);
+        verify(asyncResponse).resume(captor.capture());
+        assertThat(captor.getValue()).isInstanceOf(ServiceOverloadedException.class);
+        return (ServiceOverloadedException) captor.getValue();
+    }
+}
@@ -1,9 +1,11 @@
 package unit.uk.gov.ida.verifyserviceprovider.utils;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.Duration;
 import org.junit.Test;
 import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -13,72 +15,19 @@ public class DateTimeComparatorTest {
     private static final DateTimeComparator comparator = new DateTimeComparator(Duration.standardSeconds(5));
 
     @Test
-    public void isAfterReturnsTrueWhenAIsAfterB() throws Exception {
-        DateTime newTime = baseTime.plusMinutes(1);
+    public void createValidationContextReadsTheClockOnce() throws Exception {
+        DateTimeUtils.setCurrentMillisFixed(baseTime.getMillis());
+        try {
+            ValidationContext validationContext = comparator.createValidationContext("some-request-id", "some-entity-id");
+            DateTimeUtils.setCurrentMillisFixed(baseTime.plusMinutes(10).getMillis());
 
-        assertThat(comparator.isAfterFuzzy(newTime, baseTime)).isTrue();
+            assertThat(validationContext.getNowMillis()).isEqualTo(baseTime.getMillis());
+            assertThat(validationContext.hasExpired(baseTime.minusSeconds(5).getMillis())).isTrue();
+            assertThat(validationContext.hasExpired(baseTime.minusSeconds(4).getMillis())).isFalse();
+            assertThat(validationContext.isInTheFuture(baseTime.plusSeconds(5).getMillis())).isTrue();
+            assertThat(validationContext.isInTheFuture(baseTime.plusSeconds(4).getMillis())).isFalse();
+        } finally {
+            DateTimeUtils.setCurrentMillisSystem();
+        }
     }
-
-    @Test
-    public void isAfterReturnsFalseWhenAIsBeforeB() throws Exception {
-        DateTime newTime = baseTime.minusMinutes(1);
-
-        assertThat(comparator.isAfterFuzzy(newTime, baseTime)).isFalse();
-    }
-
-    @Test
-    public void isAfterReturnsTrueWhenAIsWithinSkewOfB() throws Exception {
-        DateTime newTime = baseTime.minusSeconds(4);
-
-        assertThat(comparator.isAfterFuzzy(newTime, baseTime)).isTrue();
-    }
-
-    @Test
-    public void isBeforeReturnsTrueWhenAIsBeforeB() throws Exception {
-        DateTime newTime = baseTime.minusMinutes(1);
-
-        assertThat(comparator.isBeforeFuzzy(newTime, baseTime)).isTrue();
-    }
-
-    @Test
-    public void isBeforeReturnsFalseWhenAIsAfterB() throws Exception {
-        DateTime newTime = baseTime.plusMinutes(1);
-
-        assertThat(comparator.isBeforeFuzzy(newTime, baseTime)).isFalse();
-    }
-
-    @Test
-    public void isBeforeReturnsTrueWhenAIsWithinSkewOfB() throws Exception {
-        DateTime newTime = baseTime.plusSeconds(4);
-
-        assertThat(comparator.isBeforeFuzzy(newTime, baseTime)).isTrue();
-    }
-
-    @Test
-    public void isBeforeNowReturnsTrueWhenInThePast() {
-        DateTime pastDateTime = new DateTime().minusMinutes(1);
-
-        assertThat(comparator.isBeforeNow(pastDateTime)).isTrue();
-    }
-
-    @Test
-    public void isBeforeNowReturnsFalseWhenInThePast() {
-        DateTime dateTime = new DateTime().plusMillis(1);
-
-        assertThat(comparator.isBeforeNow(dateTime)).isFalse();
-    }
-
-    @Test
-    public void isAfterNowReturnsTrueWhenInTheFuture() {
-        DateTime futureDateTime = new DateTime().plusMinutes(1);
-
-        assertThat(comparator.isAfterNow(futureDateTime)).isTrue();
-    }
-
-    @Test
-    public void isAfterNowReturnsFalseWhenInThePast() {
-        DateTime pastDateTime = new DateTime().minusMillis(1);
-
-        assertThat(comparator.isAfterNow(pastDateTime)).isFalse();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package unit.uk.gov.ida.verifyserviceprovider.utils;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import uk.gov.ida.verifyserviceprovider.utils.FormFieldInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FormFieldInputStreamTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void shouldUrlDecodeTheValueOfTheNamedField() throws IOException {
+        assertThat(read("RelayState=abc&SAMLResponse=a%2Bb%2F%3D+c%0D%0A&other=x", "SAMLResponse")).isEqualTo("a+b/= c\r\n");
+    }
+
+    @Test
+    public void shouldReadAFieldAtTheEndOfTheForm() throws IOException {
+        assertThat(read("SAMLResponse=abc", "SAMLResponse")).isEqualTo("abc");
+        assertThat(read("SAMLResponse=", "SAMLResponse")).isEqualTo("");
+    }
+
+    @Test
+    public void shouldNotMatchFieldsWhoseNameOnlyStartsWithTheName() throws IOException {
+        assertThat(read("SAMLResponseX=abc&SAMLResponse=def", "SAMLResponse")).isEqualTo("def");
+    }
+
+    @Test
+    public void shouldReturnNullWhenThereIsNoSuchField() {
+        assertThat(FormFieldInputStream.open(bytes("RelayState=abc&SAMLResponseX=def"), "SAMLResponse")).isNull();
+    }
+
+    @Test
+    public void shouldRejectInvalidPercentEncoding() throws IOException {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("percent-encoding");
+
+        read("SAMLResponse=a%G1", "SAMLResponse");
+    }
+
+    @Test
+    public void shouldRejectTruncatedPercentEncoding() throws IOException {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("percent-encoding");
+
+        read("SAMLResponse=a%2&b=c", "SAMLResponse");
+    }
+
+    private String read(String form, String name) throws IOException {
+        InputStream inputStream = FormFieldInputStream.open(bytes(form), name);
+        return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.US_ASCII);
+    }
+
+    private byte[] bytes(String form) {
+        return form.getBytes(StandardCharsets.US_ASCII);
+    }
+}
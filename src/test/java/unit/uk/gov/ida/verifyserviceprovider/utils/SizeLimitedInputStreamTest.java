@@ -0,0 +1,55 @@
+package unit.uk.gov.ida.verifyserviceprovider.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import uk.gov.ida.verifyserviceprovider.exceptions.RequestTooLargeException;
+import uk.gov.ida.verifyserviceprovider.utils.SizeLimitedInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SizeLimitedInputStreamTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void shouldReadABodyUpToTheLimit() throws IOException {
+        SizeLimitedInputStream inputStream = limitedStream(10, 10);
+
+        assertThat(inputStream.read(new byte[20], 0, 20)).isEqualTo(10);
+        assertThat(inputStream.read()).isEqualTo(-1);
+        assertThat(inputStream.getBytesRead()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldThrowAsSoonAsTheLimitIsCrossed() throws IOException {
+        SizeLimitedInputStream inputStream = limitedStream(11, 10);
+        inputStream.read(new byte[10], 0, 10);
+
+        expectedException.expect(RequestTooLargeException.class);
+        expectedException.expectMessage("too large");
+
+        inputStream.read();
+    }
+
+    @Test
+    public void shouldCountSkippedBytes() throws IOException {
+        SizeLimitedInputStream inputStream = limitedStream(20, 10);
+
+        expectedException.expect(RequestTooLargeException.class);
+
+        inputStream.skip(11);
+    }
+
+    private SizeLimitedInputStream limitedStream(int bodyLength, long maxBytes) {
+        return new SizeLimitedInputStream(
+            new ByteArrayInputStream(new byte[bodyLength]),
+            maxBytes,
+            () -> new RequestTooLargeException("too large")
+        );
+    }
+}
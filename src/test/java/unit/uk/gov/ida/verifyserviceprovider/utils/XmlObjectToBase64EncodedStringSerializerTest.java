@@ -0,0 +1,55 @@
+package unit.uk.gov.ida.verifyserviceprovider.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.impl.AuthnRequestBuilder;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.deserializers.OpenSamlXMLObjectUnmarshaller;
+import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
+import uk.gov.ida.saml.deserializers.parser.SamlObjectParser;
+import uk.gov.ida.saml.deserializers.validators.Base64StringDecoder;
+import uk.gov.ida.saml.deserializers.validators.NotNullSamlStringValidator;
+import uk.gov.ida.verifyserviceprovider.utils.XmlObjectToBase64EncodedStringSerializer;
+import uk.gov.ida.verifyserviceprovider.validators.ResponseSizeValidator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XmlObjectToBase64EncodedStringSerializerTest {
+
+    private final XmlObjectToBase64EncodedStringSerializer serializer = new XmlObjectToBase64EncodedStringSerializer();
+
+    @Before
+    public void setUp() {
+        IdaSamlBootstrap.bootstrap();
+    }
+
+    @Test
+    public void shouldProduceBase64EncodedXmlWhichCanBeReadBack() {
+        AuthnRequest authnRequest = new AuthnRequestBuilder().buildObject();
+        authnRequest.setID("_some-request-id");
+
+        String samlRequest = serializer.serialize(authnRequest);
+        AuthnRequest readBack = new StringToOpenSamlObjectTransformer<AuthnRequest>(
+            new NotNullSamlStringValidator(),
+            new Base64StringDecoder(),
+            new ResponseSizeValidator(),
+            new OpenSamlXMLObjectUnmarshaller<>(new SamlObjectParser())
+        ).apply(samlRequest);
+
+        assertThat(readBack.getID()).isEqualTo("_some-request-id");
+    }
+
+    @Test
+    public void shouldNotLeakContentBetweenCalls() {
+        AuthnRequest first = new AuthnRequestBuilder().buildObject();
+        first.setID("_a-much-longer-first-request-id-to-fill-the-buffer");
+        AuthnRequest second = new AuthnRequestBuilder().buildObject();
+        second.setID("_second");
+
+        serializer.serialize(first);
+        String secondSamlRequest = serializer.serialize(second);
+
+        assertThat(secondSamlRequest).isEqualTo(new XmlObjectToBase64EncodedStringSerializer().serialize(second));
+    }
+}
@@ -17,6 +17,7 @@ import uk.gov.ida.verifyserviceprovider.validators.AssertionValidator;
 import uk.gov.ida.verifyserviceprovider.validators.ConditionsValidator;
 import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
 import uk.gov.ida.verifyserviceprovider.validators.SubjectValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
 import java.util.Collections;
 
@@ -33,6 +34,7 @@ public class AssertionValidatorTest {
     private SubjectValidator subjectValidator;
     private ConditionsValidator conditionsValidator;
     private Assertion assertion;
+    private ValidationContext validationContext;
 
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
@@ -43,6 +45,7 @@ public class AssertionValidatorTest {
         subjectValidator = mock(SubjectValidator.class);
         conditionsValidator = mock(ConditionsValidator.class);
         assertion = mock(Assertion.class);
+        validationContext = new ValidationContext(0, 0, "some-expected-in-response-to", "some-entity-id");
         AuthnStatement authnStatement = mock(AuthnStatement.class);
 
         validator = new AssertionValidator(
@@ -61,9 +64,9 @@ public class AssertionValidatorTest {
         DateTime issueInstant = new DateTime();
         when(assertion.getIssueInstant()).thenReturn(issueInstant);
 
-        validator.validate(assertion, "any-expected-in-response-to", "any-entity-id");
+        validator.validate(assertion, validationContext);
 
-        verify(instantValidator).validate(issueInstant, "Assertion IssueInstant");
+        verify(instantValidator).validate(issueInstant, "Assertion IssueInstant", validationContext);
     }
 
     @Test
@@ -72,9 +75,9 @@ public class AssertionValidatorTest {
         when(assertion.getSubject()).thenReturn(subject);
         when(subject.getNameID().getValue()).thenReturn("any-value");
 
-        validator.validate(assertion, "some-expected-in-response-to", "any-entity-id");
+        validator.validate(assertion, validationContext);
 
-        verify(subjectValidator).validate(subject, "some-expected-in-response-to");
+        verify(subjectValidator).validate(subject, validationContext);
     }
 
     @Test
@@ -82,9 +85,9 @@ public class AssertionValidatorTest {
         Conditions conditions = mock(Conditions.class);
         when(assertion.getConditions()).thenReturn(conditions);
 
-        validator.validate(assertion, "any-expected-in-response-to", "some-entity-id");
+        validator.validate(assertion, validationContext);
 
-        verify(conditionsValidator).validate(conditions, "some-entity-id");
+        verify(conditionsValidator).validate(conditions, validationContext);
     }
 
     @Test
@@ -94,7 +97,7 @@ public class AssertionValidatorTest {
 
         when(assertion.getAuthnStatements()).thenReturn(null);
 
-        validator.validate(assertion, "some-expected-in-response-to", "any-entity-id");
+        validator.validate(assertion, validationContext);
     }
 
     @Test
@@ -104,7 +107,7 @@ public class AssertionValidatorTest {
 
         when(assertion.getAuthnStatements()).thenReturn(Collections.emptyList());
 
-        validator.validate(assertion, "some-expected-in-response-to", "any-entity-id");
+        validator.validate(assertion, validationContext);
     }
 
     @Test
@@ -117,7 +120,7 @@ public class AssertionValidatorTest {
             anAuthnStatement().build()
         ));
 
-        validator.validate(assertion, "some-expected-in-response-to", "any-entity-id");
+        validator.validate(assertion, validationContext);
     }
 
     @Test
@@ -125,8 +128,8 @@ public class AssertionValidatorTest {
         DateTime issueInstant = new DateTime();
         when(assertion.getAuthnStatements().get(0).getAuthnInstant()).thenReturn(issueInstant);
 
-        validator.validate(assertion, "any-expected-in-response-to", "any-entity-id");
+        validator.validate(assertion, validationContext);
 
-        verify(instantValidator).validate(issueInstant, "Assertion AuthnInstant");
+        verify(instantValidator).validate(issueInstant, "Assertion AuthnInstant", validationContext);
     }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationExcepti
 import uk.gov.ida.verifyserviceprovider.validators.AudienceRestrictionValidator;
 import uk.gov.ida.verifyserviceprovider.validators.ConditionsValidator;
 import uk.gov.ida.verifyserviceprovider.validators.TimeRestrictionValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
 import java.util.List;
 
@@ -28,6 +29,7 @@ public class ConditionsValidatorTest {
     private TimeRestrictionValidator timeRestrictionValidator;
     private AudienceRestrictionValidator audienceRestrictionValidator;
     private Conditions conditions;
+    private ValidationContext validationContext;
 
     private ConditionsValidator validator;
 
@@ -39,6 +41,7 @@ public class ConditionsValidatorTest {
         timeRestrictionValidator = mock(TimeRestrictionValidator.class);
         audienceRestrictionValidator = mock(AudienceRestrictionValidator.class);
         conditions = mock(Conditions.class);
+        validationContext = new ValidationContext(0, 0, "any-in-response-to", "some-entity-id");
 
         validator = new ConditionsValidator(timeRestrictionValidator, audienceRestrictionValidator);
 
@@ -50,7 +53,7 @@ public class ConditionsValidatorTest {
         expectedException.expect(SamlResponseValidationException.class);
         expectedException.expectMessage("Conditions is missing from the assertion.");
 
-        validator.validate(null, "any-entity-id");
+        validator.validate(null, validationContext);
     }
 
     @Test
@@ -60,7 +63,7 @@ public class ConditionsValidatorTest {
 
         when(conditions.getProxyRestriction()).thenReturn(mock(ProxyRestriction.class));
 
-        validator.validate(conditions, "any-entity-id");
+        validator.validate(conditions, validationContext);
     }
 
     @Test
@@ -70,7 +73,7 @@ public class ConditionsValidatorTest {
 
         when(conditions.getOneTimeUse()).thenReturn(mock(OneTimeUse.class));
 
-        validator.validate(conditions, "any-entity-id");
+        validator.validate(conditions, validationContext);
     }
 
     @Test
@@ -78,9 +81,9 @@ public class ConditionsValidatorTest {
         DateTime notOnOrAfter = new DateTime();
         when(conditions.getNotOnOrAfter()).thenReturn(notOnOrAfter);
 
-        validator.validate(conditions, "any-entity-id");
+        validator.validate(conditions, validationContext);
 
-        verify(timeRestrictionValidator).validateNotOnOrAfter(notOnOrAfter);
+        verify(timeRestrictionValidator).validateNotOnOrAfter(notOnOrAfter, validationContext);
     }
 
     @Test
@@ -88,7 +91,7 @@ public class ConditionsValidatorTest {
         DateTime notOnOrAfter = null;
         when(conditions.getNotOnOrAfter()).thenReturn(notOnOrAfter);
 
-        validator.validate(conditions, "any-entity-id");
+        validator.validate(conditions, validationContext);
     }
 
     @Test
@@ -96,9 +99,9 @@ public class ConditionsValidatorTest {
         DateTime notBefore = new DateTime();
         when(conditions.getNotBefore()).thenReturn(notBefore);
 
-        validator.validate(conditions, "any-entity-id");
+        validator.validate(conditions, validationContext);
 
-        verify(timeRestrictionValidator).validateNotBefore(notBefore);
+        verify(timeRestrictionValidator).validateNotBefore(notBefore, validationContext);
     }
 
     @Test
@@ -106,7 +109,7 @@ public class ConditionsValidatorTest {
         List<AudienceRestriction> audienceRestrictions = ImmutableList.of(anAudienceRestriction().build());
         when(conditions.getAudienceRestrictions()).thenReturn(audienceRestrictions);
 
-        validator.validate(conditions, "some-entity-id");
+        validator.validate(conditions, validationContext);
 
         verify(audienceRestrictionValidator).validate(audienceRestrictions, "some-entity-id");
     }
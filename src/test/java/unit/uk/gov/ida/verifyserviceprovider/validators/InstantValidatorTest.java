@@ -6,17 +6,17 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
-import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
 import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
 import static org.joda.time.DateTimeZone.UTC;
 import static org.joda.time.format.ISODateTimeFormat.dateHourMinuteSecond;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 public class InstantValidatorTest {
 
-    private DateTimeComparator dateTimeComparator;
+    private static final DateTime NOW = new DateTime(2017, 9, 1, 12, 0, UTC);
+
+    private ValidationContext validationContext;
 
     private InstantValidator validator;
 
@@ -25,39 +25,44 @@ public class InstantValidatorTest {
 
     @Before
     public void setUp() {
-        dateTimeComparator = mock(DateTimeComparator.class);
+        validationContext = new ValidationContext(NOW.getMillis(), 30_000, "some-request-id", "some-entity-id");
 
-        validator = new InstantValidator(dateTimeComparator);
+        validator = new InstantValidator();
     }
 
     @Test
     public void shouldValidateInstantIsInExpectedRange() {
-        DateTime instant = new DateTime().minusMinutes(1);
+        DateTime instant = NOW.minusMinutes(1);
 
-        validator.validate(instant, "any-instant-name");
+        validator.validate(instant, "any-instant-name", validationContext);
     }
 
     @Test
     public void shouldThrowExceptionIfInstantOldenThanFiveMinutes() {
-        DateTime instant = new DateTime().minusMinutes(6);
+        DateTime instant = NOW.minusMinutes(6);
         expectedException.expect(SamlResponseValidationException.class);
         expectedException.expectMessage("some-instant-name is too far in the past ");
 
-        validator.validate(instant, "some-instant-name");
+        validator.validate(instant, "some-instant-name", validationContext);
+    }
+
+    @Test
+    public void shouldAllowInstantInTheFutureWithinClockSkew() {
+        DateTime instant = NOW.plusSeconds(29);
+
+        validator.validate(instant, "any-instant-name", validationContext);
     }
 
     @Test
     public void shouldThrowExceptionWhenInstantIsInTheFuture() {
-        DateTime instant = new DateTime().plusMinutes(1);
+        DateTime instant = NOW.plusMinutes(1);
         String errorMessage = String.format("%s is in the future %s",
             "some-instant-name",
             instant.withZone(UTC).toString(dateHourMinuteSecond()));
 
-        when(dateTimeComparator.isAfterNow(instant)).thenReturn(true);
-
         expectedException.expect(SamlResponseValidationException.class);
         expectedException.expectMessage(errorMessage);
 
-        validator.validate(instant, "some-instant-name");
+        validator.validate(instant, "some-instant-name", validationContext);
     }
-}
\ No newline at end of file
+}
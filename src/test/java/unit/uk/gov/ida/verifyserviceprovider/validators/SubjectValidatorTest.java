@@ -14,6 +14,7 @@ import uk.gov.ida.saml.core.IdaSamlBootstrap;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.validators.SubjectValidator;
 import uk.gov.ida.verifyserviceprovider.validators.TimeRestrictionValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
 import static uk.gov.ida.saml.core.test.builders.SubjectBuilder.aSubject;
 import static uk.gov.ida.saml.core.test.builders.SubjectConfirmationBuilder.aSubjectConfirmation;
@@ -22,6 +23,7 @@ import static uk.gov.ida.saml.core.test.builders.SubjectConfirmationDataBuilder.
 @RunWith(MockitoJUnitRunner.class)
 public class SubjectValidatorTest {
     private static final String IN_RESPONSE_TO = "_some-request-id";
+    private static final ValidationContext VALIDATION_CONTEXT = new ValidationContext(0, 0, IN_RESPONSE_TO, "any-entity-id");
     private SubjectValidator subjectValidator;
 
     @Rule
@@ -41,7 +43,7 @@ public class SubjectValidatorTest {
         expectedException.expect(SamlResponseValidationException.class);
         expectedException.expectMessage("Subject is missing from the assertion.");
 
-        subjectValidator.validate(null, IN_RESPONSE_TO);
+        subjectValidator.validate(null, VALIDATION_CONTEXT);
     }
 
     @Test
@@ -53,7 +55,7 @@ public class SubjectValidatorTest {
         SubjectConfirmation subjectConfirmation = aSubjectConfirmation().build();
         subject.getSubjectConfirmations().addAll(ImmutableList.of(subjectConfirmation, subjectConfirmation));
 
-        subjectValidator.validate(subject, IN_RESPONSE_TO);
+        subjectValidator.validate(subject, VALIDATION_CONTEXT);
     }
 
     @Test
@@ -65,7 +67,7 @@ public class SubjectValidatorTest {
                 .withSubjectConfirmation(aSubjectConfirmation().withMethod("anything-but-not-bearer").build())
                 .build();
 
-        subjectValidator.validate(subject, IN_RESPONSE_TO);
+        subjectValidator.validate(subject, VALIDATION_CONTEXT);
     }
 
     @Test
@@ -77,7 +79,7 @@ public class SubjectValidatorTest {
                 .withSubjectConfirmation(aSubjectConfirmation().withSubjectConfirmationData(null).build())
                 .build();
 
-        subjectValidator.validate(subject, IN_RESPONSE_TO);
+        subjectValidator.validate(subject, VALIDATION_CONTEXT);
     }
 
     @Test
@@ -91,7 +93,7 @@ public class SubjectValidatorTest {
                 .withSubjectConfirmation(subjectConfirmation)
                 .build();
 
-        subjectValidator.validate(subject, IN_RESPONSE_TO);
+        subjectValidator.validate(subject, VALIDATION_CONTEXT);
     }
 
     @Test
@@ -107,7 +109,7 @@ public class SubjectValidatorTest {
                 .withSubjectConfirmation(subjectConfirmation)
                 .build();
 
-        subjectValidator.validate(subject, IN_RESPONSE_TO);
+        subjectValidator.validate(subject, VALIDATION_CONTEXT);
     }
 
     @Test
@@ -124,7 +126,7 @@ public class SubjectValidatorTest {
                 .withSubjectConfirmation(subjectConfirmation)
                 .build();
 
-        subjectValidator.validate(subject, expectedInResponseTo);
+        subjectValidator.validate(subject, new ValidationContext(0, 0, expectedInResponseTo, "any-entity-id"));
     }
 
     @Test
@@ -141,7 +143,7 @@ public class SubjectValidatorTest {
                 .withNameId(null)
                 .build();
 
-        subjectValidator.validate(subject, IN_RESPONSE_TO);
+        subjectValidator.validate(subject, VALIDATION_CONTEXT);
     }
 
 
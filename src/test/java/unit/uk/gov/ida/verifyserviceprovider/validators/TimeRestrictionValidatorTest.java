@@ -6,17 +6,17 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
-import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
 import uk.gov.ida.verifyserviceprovider.validators.TimeRestrictionValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ValidationContext;
 
 import static org.joda.time.DateTimeZone.UTC;
 import static org.joda.time.format.ISODateTimeFormat.dateHourMinuteSecond;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 public class TimeRestrictionValidatorTest {
 
-    private DateTimeComparator dateTimeComparator;
+    private static final DateTime NOW = new DateTime(2017, 9, 1, 12, 0, UTC);
+
+    private ValidationContext validationContext;
 
     private TimeRestrictionValidator validator;
 
@@ -25,36 +25,42 @@ public class TimeRestrictionValidatorTest {
 
     @Before
     public void setUp() {
-        dateTimeComparator = mock(DateTimeComparator.class);
+        validationContext = new ValidationContext(NOW.getMillis(), 30_000, "some-request-id", "some-entity-id");
 
-        validator = new TimeRestrictionValidator(dateTimeComparator);
+        validator = new TimeRestrictionValidator();
     }
 
     @Test
     public void validateNotOnOrAfterShouldThrowExceptionWhenNotOnOrAfterIsBeforeNow() {
-        DateTime notOnOrAfter = new DateTime();
+        DateTime notOnOrAfter = NOW.minusSeconds(30);
         exception.expect(SamlResponseValidationException.class);
         exception.expectMessage(String.format(
             "Assertion is not valid on or after %s",
             notOnOrAfter.withZone(UTC).toString(dateHourMinuteSecond())
         ));
 
-        when(dateTimeComparator.isBeforeNow(notOnOrAfter)).thenReturn(true);
+        validator.validateNotOnOrAfter(notOnOrAfter, validationContext);
+    }
 
-        validator.validateNotOnOrAfter(notOnOrAfter);
+    @Test
+    public void validateNotOnOrAfterShouldAllowNotOnOrAfterWithinClockSkew() {
+        validator.validateNotOnOrAfter(NOW.minusSeconds(29), validationContext);
     }
 
     @Test
     public void validateNotBeforeShouldThrowExceptionWhenNotBeforeIsAfterNow() {
-        DateTime notBefore = new DateTime();
+        DateTime notBefore = NOW.plusSeconds(30);
         exception.expect(SamlResponseValidationException.class);
         exception.expectMessage(String.format(
             "Assertion is not valid before %s",
             notBefore.withZone(UTC).toString(dateHourMinuteSecond())
         ));
 
-        when(dateTimeComparator.isAfterNow(notBefore)).thenReturn(true);
+        validator.validateNotBefore(notBefore, validationContext);
+    }
 
-        validator.validateNotBefore(notBefore);
+    @Test
+    public void validateNotBeforeShouldAllowMissingNotBefore() {
+        validator.validateNotBefore(null, validationContext);
     }
-}
\ No newline at end of file
+}